@@ -0,0 +1,222 @@
+package jorgecasariego.retrofit.adapter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jorgecasariego.retrofit.activity.ExampleListActivity;
+import jorgecasariego.retrofit.cache.RepoSnapshotReader;
+import jorgecasariego.retrofit.cache.RepoSnapshotWriter;
+import jorgecasariego.retrofit.model.GitHubRepo;
+import jorgecasariego.retrofit.repository.PagedList;
+import rx.Subscription;
+import rx.subscriptions.Subscriptions;
+
+import static org.junit.Assert.*;
+
+/**
+ * Shows a 5k repo snapshot, then swaps it for the PagedList being loaded the way GithubActivity
+ * does (setRepos() and notifyDataSetChanged() once the first page is in), and logs the longest
+ * frame the main thread took from the first page to a second after it.
+ *
+ * Only the rows on screen are bound again and the list arrives a page at a time, so no frame
+ * should come near MAX_FRAME_MILLIS, three frames at 60 Hz.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GithubAdapterBenchmark {
+
+    private static final String TAG = "GithubAdapterBenchmark";
+    private static final int REPOS = 5000;
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_PAGES = 7;
+    private static final long SETTLE_MILLIS = 1000;
+    private static final long MAX_FRAME_MILLIS = 50;
+
+    @Rule
+    public ActivityTestRule<ExampleListActivity> mActivityRule = new ActivityTestRule<>(ExampleListActivity.class);
+
+    @Test
+    public void swappingASnapshotForThePagedListKeepsFramesShort() throws Exception {
+        File file = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "benchmark.snapshot");
+        RepoSnapshotWriter.write(file, createRepos(), true, RepoSnapshotWriter.DEFAULT_ITEMS_PER_BLOCK,
+                System.currentTimeMillis());
+        final RepoSnapshotReader snapshot = RepoSnapshotReader.open(file);
+        final GithubAdapter adapter = showList(snapshot);
+        final PagedList<GitHubRepo> repos = new PagedList<>(new MainThreadLoader(), PAGE_SIZE, MAX_PAGES);
+
+        long longest = measureLongestFrame(new Runnable() {
+            @Override
+            public void run() {
+                repos.setListener(new SwappingListener(adapter, repos));
+                repos.loadInitial();
+            }
+        });
+        file.delete();
+
+        Log.i(TAG, "snapshot -> PagedList: longest frame " + TimeUnit.NANOSECONDS.toMicros(longest) + " us");
+        assertSame(repos, adapter.getRepos());
+        assertEquals(REPOS, adapter.getItemCount());
+        assertTrue("longest frame " + TimeUnit.NANOSECONDS.toMillis(longest) + " ms",
+                longest < TimeUnit.MILLISECONDS.toNanos(MAX_FRAME_MILLIS));
+    }
+
+    private GithubAdapter showList(final List<GitHubRepo> repos) {
+        final AtomicReference<GithubAdapter> adapter = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ExampleListActivity activity = mActivityRule.getActivity();
+                RecyclerView recyclerView = new RecyclerView(activity);
+                adapter.set(new GithubAdapter(activity, repos));
+                adapter.get().attachTo(recyclerView, new LinearLayoutManager(activity));
+                activity.setContentView(recyclerView);
+            }
+        });
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        return adapter.get();
+    }
+
+    private static long measureLongestFrame(final Runnable action) {
+        final FrameRecorder recorder = new FrameRecorder();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Choreographer.getInstance().postFrameCallback(recorder);
+                action.run();
+            }
+        });
+        SystemClock.sleep(SETTLE_MILLIS);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                recorder.stop();
+            }
+        });
+        return recorder.mLongest;
+    }
+
+    private static List<GitHubRepo> createRepos() {
+        List<GitHubRepo> repos = new ArrayList<>(REPOS);
+        for (int i = 0; i < REPOS; i++) {
+            GitHubRepo repo = new GitHubRepo();
+            repo.setId(i + 1);
+            repo.setName("repo-" + i);
+            repos.add(repo);
+        }
+        return repos;
+    }
+
+    /**
+     * Answers every page on the next main thread message, like Retrofit does, with no network.
+     */
+    private static final class MainThreadLoader implements PagedList.PageLoader<GitHubRepo> {
+
+        private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+        private final List<GitHubRepo> mRepos = createRepos();
+
+        @Override
+        public Subscription loadPage(final int page, final int pageSize, boolean prefetch,
+                                     final PagedList.PageCallback<GitHubRepo> callback) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    int from = page * pageSize;
+                    callback.onPageLoaded(mRepos.subList(from, Math.min(from + pageSize, REPOS)),
+                            (REPOS + pageSize - 1) / pageSize);
+                }
+            });
+            return Subscriptions.empty();
+        }
+    }
+
+    /**
+     * What GithubActivity does: the first change of the list swaps it in, the next ones are
+     * forwarded.
+     */
+    private static final class SwappingListener implements PagedList.Listener {
+
+        private final GithubAdapter mAdapter;
+        private final PagedList<GitHubRepo> mRepos;
+
+        SwappingListener(GithubAdapter adapter, PagedList<GitHubRepo> repos) {
+            mAdapter = adapter;
+            mRepos = repos;
+        }
+
+        private boolean swap() {
+            if (mAdapter.getRepos() == mRepos) {
+                return false;
+            }
+            mAdapter.setRepos(mRepos);
+            return true;
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            if (!swap()) {
+                mAdapter.notifyItemRangeInserted(positionStart, itemCount);
+            }
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            if (!swap()) {
+                mAdapter.notifyItemRangeRemoved(positionStart, itemCount);
+            }
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            if (!swap()) {
+                mAdapter.notifyItemRangeChanged(positionStart, itemCount);
+            }
+        }
+
+        @Override
+        public void onLoadError(int page, Throwable t) {
+            // MainThreadLoader never fails.
+        }
+    }
+
+    /**
+     * Records the longest time between two consecutive frames, on the main thread.
+     */
+    private static final class FrameRecorder implements Choreographer.FrameCallback {
+        private long mLastFrame;
+        private long mLongest;
+        private boolean mStopped;
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mStopped) {
+                return;
+            }
+            if (mLastFrame != 0) {
+                mLongest = Math.max(mLongest, frameTimeNanos - mLastFrame);
+            }
+            mLastFrame = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            mStopped = true;
+        }
+    }
+}
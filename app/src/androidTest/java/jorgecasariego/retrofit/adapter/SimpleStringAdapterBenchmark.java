@@ -0,0 +1,183 @@
+package jorgecasariego.retrofit.adapter;
+
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.util.Printer;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Updates a 10k-item list the way a search screen does (the new list shares most rows with the old
+ * one) and logs how much main thread time each update costs, with setStrings() and with
+ * submitStrings().
+ *
+ * Main thread time is the sum of the durations of every message the main Looper dispatched during
+ * the update, measured with a Looper Printer, so it includes the layout passes that follow. It is
+ * only logged, it depends on the device; the assertions check that both ways end up with the list.
+ * The update logic itself is tested in SimpleStringAdapterTest.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SimpleStringAdapterBenchmark {
+
+    private static final String TAG = "SimpleStringAdapterBenchmark";
+    private static final int ITEMS = 10000;
+    private static final int UPDATES = 20;
+
+    @Test
+    public void logsMainThreadTimePerUpdate() throws Exception {
+        final RecyclerView recyclerView = createRecyclerView();
+        final SimpleStringAdapter adapter = (SimpleStringAdapter) recyclerView.getAdapter();
+        MainThreadTimer timer = new MainThreadTimer();
+
+        long syncNanos = 0;
+        for (int i = 0; i < UPDATES; i++) {
+            final List<String> strings = createStrings(i);
+            timer.start();
+            runOnMainAndLayout(recyclerView, new Runnable() {
+                @Override
+                public void run() {
+                    adapter.setStrings(strings);
+                }
+            });
+            syncNanos += timer.stop();
+            assertEquals(ITEMS, adapter.getItemCount());
+        }
+
+        long asyncNanos = 0;
+        for (int i = 0; i < UPDATES; i++) {
+            final List<String> strings = createStrings(i);
+            final CountDownLatch applied = new CountDownLatch(1);
+            final RecyclerView.AdapterDataObserver observer = new CountingObserver(applied);
+            adapter.registerAdapterDataObserver(observer);
+            timer.start();
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    adapter.submitStrings(strings);
+                }
+            });
+            assertTrue(applied.await(10, TimeUnit.SECONDS));
+            runOnMainAndLayout(recyclerView, null);
+            asyncNanos += timer.stop();
+            adapter.unregisterAdapterDataObserver(observer);
+            assertEquals(ITEMS, adapter.getItemCount());
+        }
+
+        Log.i(TAG, "setStrings(): " + TimeUnit.NANOSECONDS.toMicros(syncNanos / UPDATES)
+                + " us of main thread per update");
+        Log.i(TAG, "submitStrings(): " + TimeUnit.NANOSECONDS.toMicros(asyncNanos / UPDATES)
+                + " us of main thread per update");
+    }
+
+    private static RecyclerView createRecyclerView() {
+        final List<RecyclerView> holder = new ArrayList<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                RecyclerView recyclerView = new RecyclerView(InstrumentationRegistry.getTargetContext());
+                recyclerView.setLayoutManager(new LinearLayoutManager(recyclerView.getContext()));
+                recyclerView.setAdapter(new SimpleStringAdapter(recyclerView.getContext()));
+                holder.add(recyclerView);
+            }
+        });
+        return holder.get(0);
+    }
+
+    private static void runOnMainAndLayout(final RecyclerView recyclerView, final Runnable action) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                if (action != null) {
+                    action.run();
+                }
+                recyclerView.measure(
+                        View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.EXACTLY));
+                recyclerView.layout(0, 0, 1080, 1920);
+            }
+        });
+    }
+
+    // Every update drops a few rows and inserts a few new ones, like typing one more character.
+    private static List<String> createStrings(int update) {
+        List<String> strings = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            strings.add(i % 50 == update % 50 ? "New " + update + "-" + i : "City " + i);
+        }
+        return strings;
+    }
+
+    private static final class CountingObserver extends RecyclerView.AdapterDataObserver {
+        private final CountDownLatch mApplied;
+
+        CountingObserver(CountDownLatch applied) {
+            mApplied = applied;
+        }
+
+        @Override
+        public void onChanged() {
+            mApplied.countDown();
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            mApplied.countDown();
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mApplied.countDown();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mApplied.countDown();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            mApplied.countDown();
+        }
+    }
+
+    /**
+     * Sums the time the main Looper spends dispatching messages between start() and stop().
+     */
+    private static final class MainThreadTimer implements Printer {
+        private long mDispatchStart;
+        private volatile long mTotal;
+
+        void start() {
+            mTotal = 0;
+            Looper.getMainLooper().setMessageLogging(this);
+        }
+
+        long stop() {
+            Looper.getMainLooper().setMessageLogging(null);
+            return mTotal;
+        }
+
+        @Override
+        public void println(String message) {
+            if (message.startsWith(">>>>> Dispatching")) {
+                mDispatchStart = System.nanoTime();
+            } else if (message.startsWith("<<<<< Finished") && mDispatchStart != 0) {
+                mTotal += System.nanoTime() - mDispatchStart;
+                mDispatchStart = 0;
+            }
+        }
+    }
+}
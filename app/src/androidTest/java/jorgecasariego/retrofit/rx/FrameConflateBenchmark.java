@@ -0,0 +1,128 @@
+package jorgecasariego.retrofit.rx;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.widget.TextView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import rx.Subscriber;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.subjects.PublishSubject;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pushes a 10 kHz counter into a TextView for one second, once straight through
+ * observeOn(mainThread()) and once through FrameConflate, and logs the UI thread time each costs.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FrameConflateBenchmark {
+
+    private static final String TAG = "FrameConflateBenchmark";
+    private static final int RATE_HZ = 10000;
+    private static final long DURATION_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void conflatedEmitterUsesLessUiThreadTime() throws Exception {
+        final TextView textView = createTextView();
+
+        final AtomicLong directNanos = new AtomicLong();
+        final AtomicLong directDelivered = new AtomicLong();
+        PublishSubject<Integer> direct = PublishSubject.create();
+        Subscription directSubscription = direct
+                .onBackpressureDrop()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(timedSetText(textView, directNanos, directDelivered));
+        emitAtRate(direct);
+        drainMainThread();
+        directSubscription.unsubscribe();
+
+        final AtomicReference<FrameConflate<Integer>> conflate = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                conflate.set(FrameConflate.<Integer>create());
+            }
+        });
+        PublishSubject<Integer> conflated = PublishSubject.create();
+        Subscription conflatedSubscription = conflated
+                .lift(conflate.get())
+                .subscribe(timedSetText(textView, new AtomicLong(), new AtomicLong()));
+        emitAtRate(conflated);
+        drainMainThread();
+        conflatedSubscription.unsubscribe();
+
+        long directMillisPerSecond = TimeUnit.NANOSECONDS.toMillis(directNanos.get());
+        long conflatedMillisPerSecond = TimeUnit.NANOSECONDS.toMillis(conflate.get().getDeliveryNanos());
+        Log.i(TAG, "observeOn(mainThread): " + directDelivered.get() + " setText, "
+                + directMillisPerSecond + " ms of UI thread per second");
+        Log.i(TAG, "FrameConflate: " + conflate.get().getDeliveredCount() + " setText ("
+                + conflate.get().getDroppedCount() + " dropped), "
+                + conflatedMillisPerSecond + " ms of UI thread per second");
+
+        // Even a 120 Hz display can't ask for more than ~120 values per second.
+        assertTrue(conflate.get().getDeliveredCount() <= 130);
+        assertTrue(conflate.get().getDroppedCount() > 0);
+    }
+
+    private static TextView createTextView() {
+        final AtomicReference<TextView> textView = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                textView.set(new TextView(InstrumentationRegistry.getTargetContext()));
+            }
+        });
+        return textView.get();
+    }
+
+    private static Subscriber<Integer> timedSetText(final TextView textView,
+                                                    final AtomicLong nanos,
+                                                    final AtomicLong delivered) {
+        return new Subscriber<Integer>() {
+            @Override
+            public void onCompleted() {
+
+            }
+
+            @Override
+            public void onError(Throwable e) {
+
+            }
+
+            @Override
+            public void onNext(Integer value) {
+                long start = System.nanoTime();
+                textView.setText(String.valueOf(value));
+                nanos.addAndGet(System.nanoTime() - start);
+                delivered.incrementAndGet();
+            }
+        };
+    }
+
+    private static void emitAtRate(PublishSubject<Integer> subject) {
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / RATE_HZ;
+        long start = System.nanoTime();
+        long next = start;
+        int value = 0;
+        while (System.nanoTime() - start < DURATION_NANOS) {
+            subject.onNext(value++);
+            next += periodNanos;
+            while (System.nanoTime() < next) {
+                // Busy wait, Thread.sleep can't do 100us.
+            }
+        }
+    }
+
+    private static void drainMainThread() {
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+    }
+}
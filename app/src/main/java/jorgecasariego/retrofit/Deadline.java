@@ -0,0 +1,126 @@
+package jorgecasariego.retrofit;
+
+import java.util.concurrent.TimeUnit;
+
+import jorgecasariego.retrofit.rx.AppSchedulers;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * The moment an operation has to be finished by, set once by whoever starts it.
+ *
+ * Instead of giving every step its own timeout (which add up to much more than the user is willing
+ * to wait) the caller says how long the whole operation may take, and every step gets what is
+ * left of it:
+ *
+ *  - Rx pipelines: compose(deadline.<T>bound()) ends the stream with a
+ *    {@link DeadlineExceededException} when the time is up and unsubscribes from everything above.
+ *  - Retrofit calls: a GitHubClient parameter annotated with @Header(Deadline.HEADER) sends it
+ *    along with the request. {@link DeadlineCallFactory} cancels the call when the time is up,
+ *    {@link DeadlineInterceptor} doesn't start another attempt (a retry, a redirect) after it, and
+ *    both fail with the same DeadlineExceededException.
+ *
+ * The header holds the deadline as wall clock millis, it never leaves the app.
+ */
+public final class Deadline {
+
+    public static final String HEADER = "X-Deadline";
+
+    private final long mDeadlineMillis;
+    private final Scheduler mScheduler;
+
+    private Deadline(long deadlineMillis, Scheduler scheduler) {
+        mDeadlineMillis = deadlineMillis;
+        mScheduler = scheduler;
+    }
+
+    public static Deadline after(long duration, TimeUnit unit) {
+        return after(duration, unit, AppSchedulers.cpu());
+    }
+
+    /**
+     * @param scheduler gives the time, through now(), and runs the timers.
+     */
+    public static Deadline after(long duration, TimeUnit unit, Scheduler scheduler) {
+        return new Deadline(scheduler.now() + unit.toMillis(duration), scheduler);
+    }
+
+    /**
+     * @return the deadline sent in a {@link #HEADER}, or null if there is none.
+     */
+    public static Deadline fromHeader(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return new Deadline(Long.parseLong(value), AppSchedulers.cpu());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + HEADER + " header: " + value, e);
+        }
+    }
+
+    public long remainingMillis() {
+        return Math.max(0, mDeadlineMillis - mScheduler.now());
+    }
+
+    public boolean isExpired() {
+        return mScheduler.now() >= mDeadlineMillis;
+    }
+
+    public Scheduler getScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * Ends the stream with a DeadlineExceededException at the deadline, however many items it
+     * already emitted. Subscribing after the deadline fails right away, without subscribing to
+     * the source.
+     */
+    public <T> Observable.Transformer<T, T> bound() {
+        return new Observable.Transformer<T, T>() {
+            @Override
+            public Observable<T> call(final Observable<T> source) {
+                return Observable.defer(new Func0<Observable<T>>() {
+                    @Override
+                    public Observable<T> call() {
+                        if (isExpired()) {
+                            return Observable.error(new DeadlineExceededException());
+                        }
+                        return source.timeout(
+                                new Func0<Observable<Long>>() {
+                                    @Override
+                                    public Observable<Long> call() {
+                                        return expiry();
+                                    }
+                                },
+                                // timeout() restarts the timer with every item, with what is left.
+                                new Func1<T, Observable<Long>>() {
+                                    @Override
+                                    public Observable<Long> call(T item) {
+                                        return expiry();
+                                    }
+                                },
+                                Observable.defer(new Func0<Observable<T>>() {
+                                    @Override
+                                    public Observable<T> call() {
+                                        return Observable.error(new DeadlineExceededException());
+                                    }
+                                }));
+                    }
+                });
+            }
+        };
+    }
+
+    private Observable<Long> expiry() {
+        return Observable.timer(remainingMillis(), TimeUnit.MILLISECONDS, mScheduler);
+    }
+
+    // The header value, so a Deadline can be a Retrofit @Header parameter.
+    @Override
+    public String toString() {
+        return String.valueOf(mDeadlineMillis);
+    }
+}
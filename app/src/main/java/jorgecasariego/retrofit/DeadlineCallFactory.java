@@ -0,0 +1,141 @@
+package jorgecasariego.retrofit;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+import rx.Scheduler;
+import rx.functions.Action0;
+
+/**
+ * Cancels the calls that carry a {@link Deadline#HEADER} when their deadline passes, and fails
+ * them with a {@link DeadlineExceededException} instead of the IOException the cancel causes.
+ *
+ * It wraps the other factories, so the time a call waits in the PriorityCallFactory queue counts
+ * too, and so does the hedge of a hedged call.
+ *
+ * OkHttp 3.6 can't give a single call its own timeouts (the client's apply to every call), so the
+ * remaining budget of an attempt is enforced by canceling it rather than by shrinking its socket
+ * timeouts. The deadline covers waiting for the response; once it arrived, the body is read under
+ * the client's read timeout.
+ */
+public class DeadlineCallFactory implements Call.Factory {
+
+    private final Call.Factory mDelegate;
+
+    public DeadlineCallFactory(Call.Factory delegate) {
+        mDelegate = delegate;
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        Call call = mDelegate.newCall(request);
+        Deadline deadline = Deadline.fromHeader(request.header(Deadline.HEADER));
+        return deadline == null ? call : new DeadlineCall(call, deadline);
+    }
+
+    private static final class DeadlineCall implements Call {
+
+        private final Call mDelegate;
+        private final Deadline mDeadline;
+        private Scheduler.Worker mTimer;
+        private volatile boolean mExpired;
+
+        DeadlineCall(Call delegate, Deadline deadline) {
+            mDelegate = delegate;
+            mDeadline = deadline;
+        }
+
+        @Override
+        public Request request() {
+            return mDelegate.request();
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            if (mDeadline.isExpired()) {
+                mDelegate.cancel();
+                throw new DeadlineExceededException();
+            }
+            startTimer();
+            try {
+                return mDelegate.execute();
+            } catch (IOException e) {
+                throw translate(e);
+            } finally {
+                stopTimer();
+            }
+        }
+
+        @Override
+        public void enqueue(final Callback callback) {
+            if (mDeadline.isExpired()) {
+                mDelegate.cancel();
+                callback.onFailure(this, new DeadlineExceededException());
+                return;
+            }
+            startTimer();
+            mDelegate.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    stopTimer();
+                    callback.onFailure(DeadlineCall.this, translate(e));
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    stopTimer();
+                    callback.onResponse(DeadlineCall.this, response);
+                }
+            });
+        }
+
+        private synchronized void startTimer() {
+            mTimer = mDeadline.getScheduler().createWorker();
+            mTimer.schedule(new Action0() {
+                @Override
+                public void call() {
+                    mExpired = true;
+                    mDelegate.cancel();
+                }
+            }, mDeadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        private synchronized void stopTimer() {
+            if (mTimer != null) {
+                mTimer.unsubscribe();
+            }
+        }
+
+        private IOException translate(IOException e) {
+            if (e instanceof DeadlineExceededException || !(mExpired || mDeadline.isExpired())) {
+                return e;
+            }
+            return new DeadlineExceededException(e);
+        }
+
+        @Override
+        public void cancel() {
+            mDelegate.cancel();
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return mDelegate.isExecuted();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mDelegate.isCanceled();
+        }
+
+        @Override
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        public Call clone() {
+            return new DeadlineCall(mDelegate.clone(), mDeadline);
+        }
+    }
+}
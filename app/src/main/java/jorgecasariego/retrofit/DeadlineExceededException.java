@@ -0,0 +1,21 @@
+package jorgecasariego.retrofit;
+
+import java.io.InterruptedIOException;
+
+/**
+ * The {@link Deadline} of an operation passed before it finished. Whatever step was running when
+ * it happened (a timer, a queued call, a socket read) was canceled.
+ *
+ * An IOException, like a SocketTimeoutException, so OkHttp and Retrofit callbacks can get it too.
+ */
+public class DeadlineExceededException extends InterruptedIOException {
+
+    public DeadlineExceededException() {
+        super("Deadline exceeded");
+    }
+
+    public DeadlineExceededException(Throwable cause) {
+        this();
+        initCause(cause);
+    }
+}
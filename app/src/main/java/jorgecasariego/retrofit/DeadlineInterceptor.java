@@ -0,0 +1,29 @@
+package jorgecasariego.retrofit;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * A network interceptor, so it runs before every attempt of a call: the first request, retries
+ * after a failed connection, redirects, authentication follow-ups. None of them starts after the
+ * {@link Deadline} of the call, and the {@link Deadline#HEADER} is removed before the request goes
+ * out.
+ */
+public class DeadlineInterceptor implements Interceptor {
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Deadline deadline = Deadline.fromHeader(request.header(Deadline.HEADER));
+        if (deadline == null) {
+            return chain.proceed(request);
+        }
+        if (deadline.isExpired()) {
+            throw new DeadlineExceededException();
+        }
+        return chain.proceed(request.newBuilder().removeHeader(Deadline.HEADER).build());
+    }
+}
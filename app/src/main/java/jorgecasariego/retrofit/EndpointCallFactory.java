@@ -0,0 +1,203 @@
+package jorgecasariego.retrofit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Sends each call to the endpoint an {@link EndpointSelector} picks, and measures how it went.
+ *
+ * When an attempt fails (an IOException, or a 5xx from the server) an idempotent call is sent
+ * again to the best endpoint it didn't try yet, so one replica going down costs the user a
+ * failover instead of an error. POSTs and PATCHs are never sent twice.
+ *
+ * The Retrofit instance doesn't change: its base URL only has to be one of the endpoints, every
+ * call is moved to the endpoint it goes to here. Canceled calls, and calls past their
+ * {@link Deadline}, don't count against the endpoint.
+ */
+public class EndpointCallFactory implements Call.Factory {
+
+    private final Call.Factory mDelegate;
+    private final EndpointSelector mSelector;
+
+    public EndpointCallFactory(Call.Factory delegate, EndpointSelector selector) {
+        mDelegate = delegate;
+        mSelector = selector;
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        if (!mSelector.handles(request.url())) {
+            return mDelegate.newCall(request);
+        }
+        return new EndpointCall(request);
+    }
+
+    static boolean isIdempotent(Request request) {
+        String method = request.method();
+        return method.equals("GET") || method.equals("HEAD") || method.equals("PUT")
+                || method.equals("DELETE") || method.equals("OPTIONS");
+    }
+
+    private final class EndpointCall implements Call {
+
+        private final Request mRequest;
+        private final List<EndpointSelector.Endpoint> mTried = new ArrayList<>();
+        private Call mAttempt;
+        private boolean mExecuted;
+        private volatile boolean mCanceled;
+
+        EndpointCall(Request request) {
+            mRequest = request;
+        }
+
+        @Override
+        public Request request() {
+            return mRequest;
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            markExecuted();
+            while (true) {
+                EndpointSelector.Endpoint endpoint = mSelector.select(mTried);
+                if (endpoint == null) {
+                    throw noEndpoint();
+                }
+                Call attempt = startAttempt(endpoint);
+                long start = mSelector.now();
+                Response response;
+                try {
+                    response = attempt.execute();
+                } catch (IOException e) {
+                    if (!failedOver(endpoint, e)) {
+                        throw e;
+                    }
+                    continue;
+                }
+                if (!failedOver(endpoint, response, start)) {
+                    return response;
+                }
+            }
+        }
+
+        @Override
+        public void enqueue(Callback callback) {
+            markExecuted();
+            enqueueAttempt(callback);
+        }
+
+        private void enqueueAttempt(final Callback callback) {
+            final EndpointSelector.Endpoint endpoint = mSelector.select(mTried);
+            if (endpoint == null) {
+                callback.onFailure(EndpointCall.this, noEndpoint());
+                return;
+            }
+            final long start = mSelector.now();
+            startAttempt(endpoint).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    if (failedOver(endpoint, e)) {
+                        enqueueAttempt(callback);
+                    } else {
+                        callback.onFailure(EndpointCall.this, e);
+                    }
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    if (failedOver(endpoint, response, start)) {
+                        enqueueAttempt(callback);
+                    } else {
+                        callback.onResponse(EndpointCall.this, response);
+                    }
+                }
+            });
+        }
+
+        private synchronized void markExecuted() {
+            if (mExecuted) {
+                throw new IllegalStateException("Already Executed");
+            }
+            mExecuted = true;
+        }
+
+        // The endpoints were replaced while the call was on its way, and none is left to try.
+        private IOException noEndpoint() {
+            return new IOException("No endpoint left for " + mRequest.url());
+        }
+
+        private synchronized Call startAttempt(EndpointSelector.Endpoint endpoint) {
+            mTried.add(endpoint);
+            mAttempt = mDelegate.newCall(mRequest.newBuilder().url(endpoint.rewrite(mRequest.url())).build());
+            if (mCanceled) {
+                mAttempt.cancel();
+            }
+            return mAttempt;
+        }
+
+        /**
+         * @return true if the call is sent to another endpoint.
+         */
+        private boolean failedOver(EndpointSelector.Endpoint endpoint, IOException e) {
+            if (mCanceled || e instanceof DeadlineExceededException) {
+                return false;
+            }
+            endpoint.recordFailure();
+            return canFailOver();
+        }
+
+        /**
+         * @return true if the call is sent to another endpoint, the response was closed then.
+         */
+        private boolean failedOver(EndpointSelector.Endpoint endpoint, Response response, long start) {
+            if (response.code() < 500) {
+                endpoint.recordSuccess(mSelector.now() - start);
+                return false;
+            }
+            endpoint.recordFailure();
+            if (mCanceled || !canFailOver()) {
+                return false;
+            }
+            response.close();
+            return true;
+        }
+
+        private synchronized boolean canFailOver() {
+            return isIdempotent(mRequest) && mSelector.hasUntried(mTried);
+        }
+
+        @Override
+        public void cancel() {
+            Call attempt;
+            synchronized (this) {
+                mCanceled = true;
+                attempt = mAttempt;
+            }
+            if (attempt != null) {
+                attempt.cancel();
+            }
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return mExecuted;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mCanceled;
+        }
+
+        @Override
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        public Call clone() {
+            return new EndpointCall(mRequest);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package jorgecasariego.retrofit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import jorgecasariego.retrofit.rx.AppSchedulers;
+import okhttp3.HttpUrl;
+import rx.Scheduler;
+
+/**
+ * Picks which of several replicas of the API (GitHub Enterprise mirrors, say) a request goes to.
+ *
+ * Every endpoint keeps an exponentially weighted moving average (EWMA) of its latency and of its
+ * error rate, so a few recent requests count more than everything it did an hour ago. Requests go
+ * to the endpoint with the lowest score:
+ *
+ *     score = latency + error rate * ERROR_PENALTY_MILLIS
+ *
+ * An endpoint that wasn't tried for probeIntervalMillis gets the next request, even if it isn't
+ * the best one. That is how a replica that got faster, or came back, is noticed. An endpoint
+ * that was never tried is probed first.
+ *
+ * Only requests to the host of one of the endpoints are moved, requests to anybody else are left
+ * alone. Moving a request changes its scheme, host and port, the path stays.
+ */
+public class EndpointSelector {
+
+    // Weight of the newest sample in the averages.
+    static final double ALPHA = 0.3;
+    static final long ERROR_PENALTY_MILLIS = 5000;
+    public static final long DEFAULT_PROBE_INTERVAL_MILLIS = 30000;
+
+    private final long mProbeIntervalMillis;
+    private final Scheduler mClock;
+    private volatile List<Endpoint> mEndpoints = Collections.emptyList();
+
+    public EndpointSelector() {
+        this(DEFAULT_PROBE_INTERVAL_MILLIS);
+    }
+
+    public EndpointSelector(long probeIntervalMillis) {
+        this(probeIntervalMillis, AppSchedulers.cpu());
+    }
+
+    /**
+     * @param clock gives the time, through now(), for the probes and the latencies. A
+     *              TestScheduler in tests.
+     */
+    public EndpointSelector(long probeIntervalMillis, Scheduler clock) {
+        mProbeIntervalMillis = probeIntervalMillis;
+        mClock = clock;
+    }
+
+    /**
+     * Replaces the endpoints. The ones that were there already keep what was learned about them.
+     */
+    public synchronized void setEndpoints(List<HttpUrl> baseUrls) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (HttpUrl baseUrl : baseUrls) {
+            Endpoint endpoint = find(baseUrl);
+            endpoints.add(endpoint != null ? endpoint : new Endpoint(baseUrl));
+        }
+        mEndpoints = Collections.unmodifiableList(endpoints);
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return mEndpoints;
+    }
+
+    /**
+     * @return true if requests to url are spread over the endpoints.
+     */
+    public boolean handles(HttpUrl url) {
+        return find(url) != null;
+    }
+
+    /**
+     * @param tried endpoints that already failed this request.
+     * @return where the request goes next, or null if every endpoint was tried (or there is none
+     *         left since setEndpoints()).
+     */
+    synchronized Endpoint select(Collection<Endpoint> tried) {
+        long now = now();
+        Endpoint best = null;
+        Endpoint stalest = null;
+        for (Endpoint endpoint : mEndpoints) {
+            if (tried.contains(endpoint)) {
+                continue;
+            }
+            if (best == null || endpoint.score() < best.score()) {
+                best = endpoint;
+            }
+            if (stalest == null || endpoint.mLastSelectedMillis < stalest.mLastSelectedMillis) {
+                stalest = endpoint;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        // A failover goes to the best endpoint left, only first attempts are used as probes.
+        Endpoint selected = tried.isEmpty() && stalest.isStale(now, mProbeIntervalMillis) ? stalest : best;
+        selected.mLastSelectedMillis = now;
+        return selected;
+    }
+
+    boolean hasUntried(Collection<Endpoint> tried) {
+        for (Endpoint endpoint : mEndpoints) {
+            if (!tried.contains(endpoint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Endpoint find(HttpUrl url) {
+        for (Endpoint endpoint : mEndpoints) {
+            if (endpoint.serves(url)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    long now() {
+        return mClock.now();
+    }
+
+    public static final class Endpoint {
+
+        private final HttpUrl mBaseUrl;
+        private double mLatencyMillis;
+        private double mErrorRate;
+        private boolean mTried;
+        private long mLastSelectedMillis = Long.MIN_VALUE;
+        private long mRequests;
+
+        Endpoint(HttpUrl baseUrl) {
+            mBaseUrl = baseUrl;
+        }
+
+        public HttpUrl getBaseUrl() {
+            return mBaseUrl;
+        }
+
+        public synchronized double getLatencyMillis() {
+            return mLatencyMillis;
+        }
+
+        public synchronized double getErrorRate() {
+            return mErrorRate;
+        }
+
+        public synchronized long getRequestCount() {
+            return mRequests;
+        }
+
+        synchronized double score() {
+            return mLatencyMillis + mErrorRate * ERROR_PENALTY_MILLIS;
+        }
+
+        // Holds the selector's lock.
+        private boolean isStale(long now, long probeIntervalMillis) {
+            return mLastSelectedMillis == Long.MIN_VALUE || now - mLastSelectedMillis >= probeIntervalMillis;
+        }
+
+        synchronized void recordSuccess(long latencyMillis) {
+            mLatencyMillis = mTried ? mLatencyMillis + ALPHA * (latencyMillis - mLatencyMillis) : latencyMillis;
+            mErrorRate = mErrorRate * (1 - ALPHA);
+            mTried = true;
+            mRequests++;
+        }
+
+        synchronized void recordFailure() {
+            mErrorRate = mErrorRate * (1 - ALPHA) + ALPHA;
+            mTried = true;
+            mRequests++;
+        }
+
+        boolean serves(HttpUrl url) {
+            return mBaseUrl.scheme().equals(url.scheme())
+                    && mBaseUrl.host().equals(url.host())
+                    && mBaseUrl.port() == url.port();
+        }
+
+        HttpUrl rewrite(HttpUrl url) {
+            return url.newBuilder()
+                    .scheme(mBaseUrl.scheme())
+                    .host(mBaseUrl.host())
+                    .port(mBaseUrl.port())
+                    .build();
+        }
+
+        @Override
+        public synchronized String toString() {
+            return mBaseUrl + " latency " + Math.round(mLatencyMillis) + "ms, errors "
+                    + Math.round(mErrorRate * 100) + "%, " + mRequests + " requests";
+        }
+    }
+}
@@ -5,7 +5,10 @@ import java.util.List;
 import jorgecasariego.retrofit.model.GitHubRepo;
 import retrofit2.Call;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.Headers;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
 
 /**
  * Created by jorgecasariego on 21/3/17.
@@ -175,11 +178,35 @@ import retrofit2.http.Path;
 
 public interface GitHubClient {
 
+    @Headers(RequestPriority.USER_HEADER)
     @GET("/users/{user}/repos")
     Call<List<GitHubRepo>> reposForUser(
             @Path("user") String user
     );
 
+    // One page of the repos, page starts at 1 and perPage can't be more than 100. The Link
+    // response header points to the next and last pages.
+    // A page the user waits for is sent again when it's slow, see HedgingCallFactory.
+    // The call fails with a DeadlineExceededException once the deadline passed (null: no deadline).
+    @Headers({RequestPriority.USER_HEADER, HedgingCallFactory.HEDGE_HEADER})
+    @GET("/users/{user}/repos")
+    Call<List<GitHubRepo>> reposForUser(
+            @Path("user") String user,
+            @Query("page") int page,
+            @Query("per_page") int perPage,
+            @Header(Deadline.HEADER) Deadline deadline
+    );
+
+    // The same page, for a screen that may never be shown: it waits behind the calls above.
+    @Headers(RequestPriority.BACKGROUND_HEADER)
+    @GET("/users/{user}/repos")
+    Call<List<GitHubRepo>> prefetchReposForUser(
+            @Path("user") String user,
+            @Query("page") int page,
+            @Query("per_page") int perPage,
+            @Header(Deadline.HEADER) Deadline deadline
+    );
+
     /**
         Query Parameters
         ----------------
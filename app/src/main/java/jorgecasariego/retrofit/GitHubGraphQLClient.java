@@ -0,0 +1,39 @@
+package jorgecasariego.retrofit;
+
+import com.google.gson.JsonObject;
+
+import retrofit2.Call;
+import retrofit2.http.Body;
+import retrofit2.http.POST;
+
+/**
+ * GitHub's v4 API: one endpoint, and the body says what to fetch.
+ *
+ * Where the REST API of GitHubClient needs a round trip per user, a GraphQL query can ask for
+ * several users at once, each under an alias of its own:
+ *
+ *     query {
+ *       u0: user(login: "octocat") { repositories(first: 100) { nodes { databaseId name } } }
+ *       u1: user(login: "jorgecasariego") { repositories(first: 100) { nodes { databaseId name } } }
+ *     }
+ *
+ * and the answer has a field per alias under "data". See UserReposBatcher. The v4 API doesn't
+ * answer anonymous calls, create it with ServiceGenerator.createService(Class, TokenManager).
+ */
+public interface GitHubGraphQLClient {
+
+    @POST("/graphql")
+    Call<JsonObject> query(@Body Query query);
+
+    /**
+     * The body of a query, Gson turns it into {"query": "..."}.
+     */
+    final class Query {
+
+        final String query;
+
+        public Query(String query) {
+            this.query = query;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package jorgecasariego.retrofit;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Sends a second copy of a slow GET instead of waiting for a straggler.
+ *
+ * Most GitHub responses arrive quickly, but now and then one sits behind a slow server or a
+ * stalled connection and the user waits for it. For the methods that opt in with
+ *
+ *     @Headers(HedgingCallFactory.HEDGE_HEADER)
+ *
+ * a call that got no response after the given percentile (95th by default) of the recently seen
+ * latencies is sent again, on a connection of its own. The first response wins and the other
+ * request is canceled.
+ *
+ * Only GETs are hedged, sending anything else twice could change the data twice. Every hedge
+ * spends a token of a budget that only grows by budgetRatio (5%) for each call, so hedging never
+ * adds more than that share of extra requests, also when the server is slow for everybody. Until
+ * MIN_SAMPLES latencies have been seen there is no percentile and nothing is hedged.
+ *
+ * A hedge doesn't wait for a slot of the PriorityCallFactory in front of this, so it is one call
+ * more than its maxCalls. On a link too slow for that, turn hedging off with setHedgingEnabled().
+ *
+ * Synchronous execute() isn't hedged.
+ */
+public class HedgingCallFactory implements Call.Factory {
+
+    public static final String HEADER = "X-Hedge";
+    public static final String HEDGE_HEADER = HEADER + ": on";
+
+    public static final double DEFAULT_PERCENTILE = 95;
+    public static final double DEFAULT_BUDGET_RATIO = 0.05;
+    public static final long DEFAULT_MIN_DELAY_MILLIS = 50;
+
+    static final int MIN_SAMPLES = 20;
+    static final int WINDOW_SIZE = 100;
+    // Hedges that may be sent in a row, when the budget has been saved up.
+    static final double MAX_BUDGET = 3;
+
+    private static ScheduledExecutorService sTimer;
+
+    private final OkHttpClient mClient;
+    private final OkHttpClient mHedgeClient;
+    private final double mPercentile;
+    private final long mMinDelayMillis;
+    private final ScheduledExecutorService mTimer;
+    private final LatencyWindow mLatencies = new LatencyWindow(WINDOW_SIZE);
+    private final HedgeBudget mBudget;
+    private final AtomicInteger mHedgedCalls = new AtomicInteger();
+    private final AtomicInteger mHedgeWins = new AtomicInteger();
+    private volatile boolean mHedgingEnabled = true;
+
+    public HedgingCallFactory(OkHttpClient client) {
+        this(client, DEFAULT_PERCENTILE, DEFAULT_MIN_DELAY_MILLIS, DEFAULT_BUDGET_RATIO, timer());
+    }
+
+    public HedgingCallFactory(OkHttpClient client, double percentile, long minDelayMillis,
+                              double budgetRatio, ScheduledExecutorService timer) {
+        if (percentile <= 0 || percentile > 100 || budgetRatio < 0 || budgetRatio > 1) {
+            throw new IllegalArgumentException("percentile " + percentile + ", budgetRatio " + budgetRatio);
+        }
+        mClient = client;
+        // Same interceptors, cache and dispatcher, but its own ConnectionPool: the hedge never
+        // waits behind the connection that is stuck.
+        mHedgeClient = client.newBuilder().connectionPool(new ConnectionPool()).build();
+        mPercentile = percentile;
+        mMinDelayMillis = minDelayMillis;
+        mBudget = new HedgeBudget(budgetRatio, MAX_BUDGET);
+        mTimer = timer;
+    }
+
+    private static synchronized ScheduledExecutorService timer() {
+        if (sTimer == null) {
+            sTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "hedging-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sTimer;
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        if (request.header(HEADER) == null) {
+            return mClient.newCall(request);
+        }
+        Request stripped = request.newBuilder().removeHeader(HEADER).build();
+        if (!"GET".equals(stripped.method())) {
+            return mClient.newCall(stripped);
+        }
+        return new HedgedCall(stripped);
+    }
+
+    /**
+     * Whether slow calls are hedged, true by default. Calls already waiting for their hedge don't
+     * send it when it's turned off.
+     */
+    public void setHedgingEnabled(boolean enabled) {
+        mHedgingEnabled = enabled;
+    }
+
+    /** Calls for which a second request was sent. */
+    public int getHedgedCount() {
+        return mHedgedCalls.get();
+    }
+
+    /** Hedged calls answered by the second request. */
+    public int getHedgeWinCount() {
+        return mHedgeWins.get();
+    }
+
+    /**
+     * @return how long a call waits before it's hedged, or -1 while there are too few latencies.
+     */
+    public long getHedgeDelayMillis() {
+        long percentile = mLatencies.percentile(mPercentile, MIN_SAMPLES);
+        return percentile < 0 ? -1 : Math.max(mMinDelayMillis, percentile);
+    }
+
+    /**
+     * The last latencies, in a ring. Small enough to copy and sort every time a call starts.
+     */
+    static final class LatencyWindow {
+
+        private final long[] mMillis;
+        private int mNext;
+        private int mCount;
+
+        LatencyWindow(int size) {
+            mMillis = new long[size];
+        }
+
+        synchronized void add(long millis) {
+            mMillis[mNext] = millis;
+            mNext = (mNext + 1) % mMillis.length;
+            mCount = Math.min(mCount + 1, mMillis.length);
+        }
+
+        synchronized long percentile(double percentile, int minSamples) {
+            if (mCount < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(mMillis, mCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * mCount) - 1;
+            return sorted[Math.max(0, Math.min(mCount - 1, index))];
+        }
+    }
+
+    /**
+     * A token bucket: every call adds ratio of a token, every hedge takes a whole one.
+     */
+    static final class HedgeBudget {
+
+        private final double mRatio;
+        private final double mMax;
+        private double mTokens;
+
+        HedgeBudget(double ratio, double max) {
+            mRatio = ratio;
+            mMax = max;
+        }
+
+        synchronized void onCall() {
+            mTokens = Math.min(mMax, mTokens + mRatio);
+        }
+
+        synchronized boolean tryAcquire() {
+            if (mTokens < 1) {
+                return false;
+            }
+            mTokens -= 1;
+            return true;
+        }
+    }
+
+    private final class HedgedCall implements Call {
+
+        private final Request mRequest;
+        private Callback mCallback;
+        private Call mPrimary;
+        private Call mHedge;
+        private ScheduledFuture<?> mHedgeTimer;
+        private long mStartMillis;
+        private int mRunning;
+        private boolean mExecuted;
+        private boolean mDone;
+        private boolean mCanceled;
+
+        HedgedCall(Request request) {
+            mRequest = request;
+        }
+
+        @Override
+        public Request request() {
+            return mRequest;
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            Call call;
+            synchronized (this) {
+                markExecuted();
+                mPrimary = mClient.newCall(mRequest);
+                call = mPrimary;
+                if (mCanceled) {
+                    call.cancel();
+                }
+            }
+            return call.execute();
+        }
+
+        @Override
+        public void enqueue(Callback callback) {
+            Call primary;
+            synchronized (this) {
+                markExecuted();
+                mCallback = callback;
+                mStartMillis = System.currentTimeMillis();
+                mPrimary = mClient.newCall(mRequest);
+                primary = mPrimary;
+                mRunning = 1;
+                if (mCanceled) {
+                    primary.cancel();
+                }
+            }
+            mBudget.onCall();
+            long delay = getHedgeDelayMillis();
+            primary.enqueue(new AttemptCallback(false));
+            if (delay >= 0 && mHedgingEnabled) {
+                synchronized (this) {
+                    if (!mDone && !mCanceled) {
+                        mHedgeTimer = mTimer.schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                sendHedge();
+                            }
+                        }, delay, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+        }
+
+        // Holds the lock.
+        private void markExecuted() {
+            if (mExecuted) {
+                throw new IllegalStateException("Already Executed");
+            }
+            mExecuted = true;
+        }
+
+        private void sendHedge() {
+            Call hedge;
+            synchronized (this) {
+                if (mDone || mCanceled || !mHedgingEnabled || !mBudget.tryAcquire()) {
+                    return;
+                }
+                mHedge = mHedgeClient.newCall(mRequest);
+                hedge = mHedge;
+                mRunning++;
+            }
+            mHedgedCalls.incrementAndGet();
+            hedge.enqueue(new AttemptCallback(true));
+        }
+
+        private final class AttemptCallback implements Callback {
+
+            private final boolean mIsHedge;
+
+            AttemptCallback(boolean isHedge) {
+                mIsHedge = isHedge;
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                Call loser;
+                synchronized (HedgedCall.this) {
+                    mRunning--;
+                    if (mDone) {
+                        response.close();
+                        return;
+                    }
+                    mDone = true;
+                    loser = mIsHedge ? mPrimary : mHedge;
+                    if (mHedgeTimer != null) {
+                        mHedgeTimer.cancel(false);
+                    }
+                }
+                if (loser != null) {
+                    loser.cancel();
+                }
+                // What the user waited for, so a hedge that won counts with its whole wait.
+                mLatencies.add(System.currentTimeMillis() - mStartMillis);
+                if (mIsHedge) {
+                    mHedgeWins.incrementAndGet();
+                }
+                mCallback.onResponse(HedgedCall.this, response);
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                synchronized (HedgedCall.this) {
+                    mRunning--;
+                    // While the other request may still answer, this failure isn't the result.
+                    if (mDone || (mRunning > 0 && !mCanceled)) {
+                        return;
+                    }
+                    mDone = true;
+                    if (mHedgeTimer != null) {
+                        mHedgeTimer.cancel(false);
+                    }
+                }
+                mCallback.onFailure(HedgedCall.this, e);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            Call primary;
+            Call hedge;
+            synchronized (this) {
+                mCanceled = true;
+                primary = mPrimary;
+                hedge = mHedge;
+                if (mHedgeTimer != null) {
+                    mHedgeTimer.cancel(false);
+                }
+            }
+            if (primary != null) {
+                primary.cancel();
+            }
+            if (hedge != null) {
+                hedge.cancel();
+            }
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return mExecuted;
+        }
+
+        @Override
+        public synchronized boolean isCanceled() {
+            return mCanceled;
+        }
+
+        @Override
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        public Call clone() {
+            return new HedgedCall(mRequest);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package jorgecasariego.retrofit;
+
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Catches blocking calls made on the main thread: a synchronous Call.execute() through the
+ * ServiceGenerator's client (see MainThreadGuardInterceptor) or one of RestClient's blocking
+ * methods. Either one freezes the UI for as long as the network takes.
+ *
+ * Each one is logged with how long it blocked and the stack of the caller, and the last
+ * {@link #MAX_VIOLATIONS} are kept for {@link #getViolations()}. With fail fast on, the call
+ * throws an IllegalStateException instead of running, so a test hits it right where it happens.
+ *
+ * Enabled in debug builds only. Every call site is covered through ServiceGenerator and RestClient:
+ *
+ *     MainThreadGuard.Violation violation = MainThreadGuard.start("what is blocking");
+ *     try {
+ *         ... blocking work ...
+ *     } finally {
+ *         MainThreadGuard.finish(violation);
+ *     }
+ */
+public class MainThreadGuard {
+
+    private static final String TAG = "MainThreadGuard";
+    static final int MAX_VIOLATIONS = 50;
+
+    private static volatile boolean sEnabled = BuildConfig.DEBUG;
+    private static volatile boolean sFailFast;
+    private static final List<Violation> sViolations = new ArrayList<>();
+
+    private MainThreadGuard() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Throw instead of blocking. Meant for tests.
+     */
+    public static void setFailFast(boolean failFast) {
+        sFailFast = failFast;
+    }
+
+    /**
+     * @return null if the calling thread isn't the main thread (or the guard is off), otherwise
+     * the violation to pass to {@link #finish(Violation)} once the call is done.
+     * @throws IllegalStateException on the main thread, when fail fast is on.
+     */
+    public static Violation start(String call) {
+        if (!sEnabled || Looper.myLooper() != Looper.getMainLooper()) {
+            return null;
+        }
+        Violation violation = new Violation(call, System.nanoTime());
+        if (sFailFast) {
+            throw new IllegalStateException("Blocking call on the main thread: " + call, violation.mStack);
+        }
+        return violation;
+    }
+
+    public static void finish(Violation violation) {
+        if (violation == null) {
+            return;
+        }
+        violation.mDurationNanos = System.nanoTime() - violation.mStartNanos;
+        synchronized (sViolations) {
+            if (sViolations.size() == MAX_VIOLATIONS) {
+                sViolations.remove(0);
+            }
+            sViolations.add(violation);
+        }
+        Log.w(TAG, violation.toString(), violation.mStack);
+    }
+
+    public static List<Violation> getViolations() {
+        synchronized (sViolations) {
+            return new ArrayList<>(sViolations);
+        }
+    }
+
+    public static void clearViolations() {
+        synchronized (sViolations) {
+            sViolations.clear();
+        }
+    }
+
+    public static final class Violation {
+
+        private final String mCall;
+        private final long mStartNanos;
+        private final Throwable mStack;
+        private long mDurationNanos;
+
+        Violation(String call, long startNanos) {
+            mCall = call;
+            mStartNanos = startNanos;
+            mStack = new Throwable("Called from here");
+        }
+
+        public String getCall() {
+            return mCall;
+        }
+
+        public long getDurationNanos() {
+            return mDurationNanos;
+        }
+
+        /**
+         * A Throwable whose stack trace is the caller's.
+         */
+        public Throwable getStack() {
+            return mStack;
+        }
+
+        @Override
+        public String toString() {
+            return mCall + " blocked the main thread for "
+                    + TimeUnit.NANOSECONDS.toMillis(mDurationNanos) + " ms";
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package jorgecasariego.retrofit;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Reports requests running on the main thread to the {@link MainThreadGuard}.
+ *
+ * Application interceptors run on the thread that executes the call: the caller's thread for
+ * Call.execute(), a dispatcher thread for Call.enqueue(). So only synchronous calls made on the
+ * main thread are caught, including the ones answered from the cache, which would never throw a
+ * NetworkOnMainThreadException. Add it before every other interceptor so its time covers theirs.
+ */
+public class MainThreadGuardInterceptor implements Interceptor {
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        MainThreadGuard.Violation violation = MainThreadGuard.start(request.method() + " " + request.url());
+        try {
+            return chain.proceed(request);
+        } finally {
+            MainThreadGuard.finish(violation);
+        }
+    }
+}
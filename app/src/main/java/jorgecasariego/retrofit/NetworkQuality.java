@@ -0,0 +1,49 @@
+package jorgecasariego.retrofit;
+
+/**
+ * How good the link to the API is, as measured by {@link NetworkQualityEstimator}, and how the
+ * repo lists are fetched on it:
+ *
+ *              page size   pages prefetched   calls in parallel
+ *  SLOW            20      0                  2
+ *  MODERATE        50      1 on each side     4
+ *  FAST           100      2 on each side     5
+ *
+ * On a slow link a small page is on screen sooner, and nothing else competes with it for the
+ * little bandwidth there is. On a fast one a page costs about one round trip whatever its size,
+ * so fewer, larger pages and more of them ahead of the user are cheaper. GitHub doesn't serve
+ * pages of more than 100, and OkHttp doesn't run more than 5 calls per host by default.
+ */
+public enum NetworkQuality {
+
+    /** Not measured yet: what the app always did. */
+    UNKNOWN(50, 1, PriorityCallFactory.DEFAULT_MAX_CALLS),
+    SLOW(20, 0, 2),
+    MODERATE(50, 1, PriorityCallFactory.DEFAULT_MAX_CALLS),
+    FAST(100, 2, 5);
+
+    private final int mPageSize;
+    private final int mPrefetchDistance;
+    private final int mMaxCalls;
+
+    NetworkQuality(int pageSize, int prefetchDistance, int maxCalls) {
+        mPageSize = pageSize;
+        mPrefetchDistance = prefetchDistance;
+        mMaxCalls = maxCalls;
+    }
+
+    /** The per_page of a repo list. */
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    /** How many pages on each side of the visible one are prefetched, see PagedList. */
+    public int getPrefetchDistance() {
+        return mPrefetchDistance;
+    }
+
+    /** The maxCalls of PriorityCallFactory. */
+    public int getMaxCalls() {
+        return mMaxCalls;
+    }
+}
@@ -0,0 +1,222 @@
+package jorgecasariego.retrofit;
+
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Tells how good the link to the API is from the calls the app makes anyway, without sending
+ * anything of its own.
+ *
+ * As a network interceptor it sees every request that goes out (not the ones answered from the
+ * cache) and measures two things, each an exponentially weighted moving average (EWMA) like in
+ * EndpointSelector:
+ *
+ *  - the round trip time: from sending the request to having the response headers. It includes
+ *    the time the server took, which is part of what the user waits for too.
+ *  - the bandwidth: bytes of the body over the time it took to read them. Bodies smaller than
+ *    MIN_BANDWIDTH_BYTES are skipped, they say more about latency than about bandwidth. The
+ *    bytes are counted as they come from the network, before gzip is undone.
+ *
+ * From those it picks a {@link NetworkQuality}, which says how repo lists should be fetched, and
+ * tells the listeners when it changes:
+ *
+ *  - SLOW: round trips of a second or more, or less than 400 kbps.
+ *  - FAST: round trips under 300ms and 2 Mbps or more.
+ *  - MODERATE: anything in between, or fast round trips while no body was large enough to
+ *    measure the bandwidth.
+ *
+ * It is UNKNOWN until MIN_SAMPLES requests went out.
+ */
+public class NetworkQualityEstimator implements Interceptor {
+
+    public interface Listener {
+        /**
+         * Called on the thread of the call that changed it, never the main thread.
+         */
+        void onQualityChanged(NetworkQuality quality);
+    }
+
+    // Weight of the newest sample in the averages.
+    static final double ALPHA = 0.3;
+    static final int MIN_SAMPLES = 3;
+    static final long MIN_BANDWIDTH_BYTES = 16 * 1024;
+    static final long SLOW_RTT_MILLIS = 1000;
+    static final long SLOW_BANDWIDTH_KBPS = 400;
+    static final long FAST_RTT_MILLIS = 300;
+    static final long FAST_BANDWIDTH_KBPS = 2000;
+
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private double mRttMillis;
+    private int mRttSamples;
+    private double mBandwidthKbps;
+    private int mBandwidthSamples;
+    private NetworkQuality mQuality = NetworkQuality.UNKNOWN;
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        long sentAt = System.nanoTime();
+        Response response = chain.proceed(chain.request());
+        long headersAt = System.nanoTime();
+        recordRtt((headersAt - sentAt) / 1000000.0);
+
+        ResponseBody body = response.body();
+        if (body == null) {
+            return response;
+        }
+        return response.newBuilder().body(new MeasuredBody(body, headersAt)).build();
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    public synchronized NetworkQuality getQuality() {
+        return mQuality;
+    }
+
+    /**
+     * @return the average round trip, or -1 before the first request.
+     */
+    public synchronized long getRttMillis() {
+        return mRttSamples > 0 ? Math.round(mRttMillis) : -1;
+    }
+
+    /**
+     * @return the average bandwidth, or -1 until a body was large enough to tell.
+     */
+    public synchronized long getBandwidthKbps() {
+        return mBandwidthSamples > 0 ? Math.round(mBandwidthKbps) : -1;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return mQuality + ": round trip " + getRttMillis() + "ms, " + getBandwidthKbps() + " kbps";
+    }
+
+    void recordRtt(double rttMillis) {
+        synchronized (this) {
+            mRttMillis = mRttSamples > 0 ? mRttMillis + ALPHA * (rttMillis - mRttMillis) : rttMillis;
+            mRttSamples++;
+        }
+        updateQuality();
+    }
+
+    void recordBandwidth(long bytes, long nanos) {
+        if (bytes < MIN_BANDWIDTH_BYTES || nanos <= 0) {
+            return;
+        }
+        // bits per millisecond are kilobits per second.
+        double kbps = bytes * 8 * 1000000.0 / nanos;
+        synchronized (this) {
+            mBandwidthKbps = mBandwidthSamples > 0 ? mBandwidthKbps + ALPHA * (kbps - mBandwidthKbps) : kbps;
+            mBandwidthSamples++;
+        }
+        updateQuality();
+    }
+
+    private void updateQuality() {
+        NetworkQuality quality;
+        synchronized (this) {
+            quality = classify();
+            if (quality == mQuality) {
+                return;
+            }
+            mQuality = quality;
+        }
+        for (Listener listener : mListeners) {
+            listener.onQualityChanged(quality);
+        }
+    }
+
+    // Holds the lock.
+    private NetworkQuality classify() {
+        if (mRttSamples < MIN_SAMPLES) {
+            return NetworkQuality.UNKNOWN;
+        }
+        boolean bandwidthKnown = mBandwidthSamples > 0;
+        if (mRttMillis >= SLOW_RTT_MILLIS || (bandwidthKnown && mBandwidthKbps < SLOW_BANDWIDTH_KBPS)) {
+            return NetworkQuality.SLOW;
+        }
+        if (mRttMillis < FAST_RTT_MILLIS && bandwidthKnown && mBandwidthKbps >= FAST_BANDWIDTH_KBPS) {
+            return NetworkQuality.FAST;
+        }
+        return NetworkQuality.MODERATE;
+    }
+
+    /**
+     * Counts the bytes read from the body, and the time from the headers to the last of them.
+     * The sample is taken when the body ends or is closed: Gson stops reading at the end of the
+     * JSON and may never see the end of the stream.
+     */
+    private final class MeasuredBody extends ResponseBody {
+
+        private final ResponseBody mDelegate;
+        private final long mHeadersAt;
+        private BufferedSource mSource;
+
+        MeasuredBody(ResponseBody delegate, long headersAt) {
+            mDelegate = delegate;
+            mHeadersAt = headersAt;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mDelegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return mDelegate.contentLength();
+        }
+
+        @Override
+        public synchronized BufferedSource source() {
+            if (mSource == null) {
+                mSource = Okio.buffer(new ForwardingSource(mDelegate.source()) {
+                    private long mBytes;
+                    private long mLastReadAt;
+                    private boolean mDone;
+
+                    @Override
+                    public long read(Buffer sink, long byteCount) throws IOException {
+                        long read = super.read(sink, byteCount);
+                        if (read == -1) {
+                            done();
+                        } else {
+                            mBytes += read;
+                            mLastReadAt = System.nanoTime();
+                        }
+                        return read;
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        done();
+                        super.close();
+                    }
+
+                    private void done() {
+                        if (!mDone && mBytes > 0) {
+                            recordBandwidth(mBytes, mLastReadAt - mHeadersAt);
+                        }
+                        mDone = true;
+                    }
+                });
+            }
+            return mSource;
+        }
+    }
+}
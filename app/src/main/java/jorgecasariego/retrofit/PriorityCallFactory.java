@@ -0,0 +1,242 @@
+package jorgecasariego.retrofit;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Hands Retrofit's asynchronous calls to OkHttp in priority order instead of first come, first
+ * served.
+ *
+ * OkHttp's Dispatcher runs calls in the order they were enqueued, so a burst of page prefetches
+ * delays the page the user is waiting for. Here enqueue() only queues the call, by
+ * {@link RequestPriority}, and at most maxCalls of them are given to OkHttp at a time:
+ *
+ *  - USER calls start before any queued DEFAULT or BACKGROUND call.
+ *  - BACKGROUND calls never take more than maxBackgroundCalls of the slots, so a user call always
+ *    finds a slot soon.
+ *
+ * maxCalls should not be above the client's Dispatcher maxRequestsPerHost (5 by default), or the
+ * extra calls wait in OkHttp's FIFO queue again. It can be changed while calls run, with
+ * setMaxCalls(). Synchronous execute() isn't queued.
+ *
+ * OkHttp doesn't expose HTTP/2 stream weights (every stream gets the default weight), so the
+ * priority only decides which requests get onto the connection first.
+ */
+public class PriorityCallFactory implements Call.Factory {
+
+    public static final int DEFAULT_MAX_CALLS = 4;
+    public static final int DEFAULT_MAX_BACKGROUND_CALLS = 1;
+
+    private final Call.Factory mDelegate;
+    private int mMaxCalls;
+    private final int mMaxBackgroundCalls;
+    private final Map<RequestPriority, ArrayDeque<PriorityCall>> mQueues = new EnumMap<>(RequestPriority.class);
+    private int mRunningCalls;
+    private int mRunningBackgroundCalls;
+
+    /**
+     * @param delegate makes the real calls: the OkHttpClient, or another factory wrapping it.
+     */
+    public PriorityCallFactory(Call.Factory delegate) {
+        this(delegate, DEFAULT_MAX_CALLS, DEFAULT_MAX_BACKGROUND_CALLS);
+    }
+
+    public PriorityCallFactory(Call.Factory delegate, int maxCalls, int maxBackgroundCalls) {
+        if (maxCalls < 1 || maxBackgroundCalls < 1 || maxBackgroundCalls > maxCalls) {
+            throw new IllegalArgumentException("maxCalls " + maxCalls + ", maxBackgroundCalls " + maxBackgroundCalls);
+        }
+        mDelegate = delegate;
+        mMaxCalls = maxCalls;
+        mMaxBackgroundCalls = maxBackgroundCalls;
+        for (RequestPriority priority : RequestPriority.values()) {
+            mQueues.put(priority, new ArrayDeque<PriorityCall>());
+        }
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        RequestPriority priority = RequestPriority.of(request);
+        Request stripped = request.newBuilder().removeHeader(RequestPriority.HEADER).build();
+        return new PriorityCall(mDelegate.newCall(stripped), priority);
+    }
+
+    /**
+     * Changes how many calls run at a time, see NetworkQuality. Calls already running above a
+     * lower limit finish, the queued ones wait for the running count to drop below it.
+     */
+    public void setMaxCalls(int maxCalls) {
+        synchronized (this) {
+            if (maxCalls < mMaxBackgroundCalls) {
+                throw new IllegalArgumentException("maxCalls " + maxCalls + ", maxBackgroundCalls " + mMaxBackgroundCalls);
+            }
+            mMaxCalls = maxCalls;
+        }
+        startCalls();
+    }
+
+    public synchronized int getMaxCalls() {
+        return mMaxCalls;
+    }
+
+    public synchronized int getQueuedCount(RequestPriority priority) {
+        return mQueues.get(priority).size();
+    }
+
+    public synchronized int getRunningCount() {
+        return mRunningCalls;
+    }
+
+    private void enqueue(PriorityCall call) {
+        synchronized (this) {
+            mQueues.get(call.mPriority).add(call);
+        }
+        startCalls();
+    }
+
+    private void startCalls() {
+        while (true) {
+            PriorityCall next;
+            synchronized (this) {
+                next = nextCall();
+                if (next == null) {
+                    return;
+                }
+                mRunningCalls++;
+                if (next.mPriority == RequestPriority.BACKGROUND) {
+                    mRunningBackgroundCalls++;
+                }
+            }
+            next.start();
+        }
+    }
+
+    // Holds the lock.
+    private PriorityCall nextCall() {
+        if (mRunningCalls >= mMaxCalls) {
+            return null;
+        }
+        for (RequestPriority priority : RequestPriority.values()) {
+            if (priority == RequestPriority.BACKGROUND && mRunningBackgroundCalls >= mMaxBackgroundCalls) {
+                continue;
+            }
+            PriorityCall call = mQueues.get(priority).poll();
+            if (call != null) {
+                return call;
+            }
+        }
+        return null;
+    }
+
+    private void finished(PriorityCall call) {
+        synchronized (this) {
+            mRunningCalls--;
+            if (call.mPriority == RequestPriority.BACKGROUND) {
+                mRunningBackgroundCalls--;
+            }
+        }
+        startCalls();
+    }
+
+    /**
+     * @return true if the call was still queued.
+     */
+    private synchronized boolean removeQueued(PriorityCall call) {
+        return mQueues.get(call.mPriority).remove(call);
+    }
+
+    private final class PriorityCall implements Call {
+
+        private final Call mDelegate;
+        private final RequestPriority mPriority;
+        private Callback mCallback;
+        private boolean mExecuted;
+
+        PriorityCall(Call delegate, RequestPriority priority) {
+            mDelegate = delegate;
+            mPriority = priority;
+        }
+
+        @Override
+        public Request request() {
+            return mDelegate.request();
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            markExecuted();
+            return mDelegate.execute();
+        }
+
+        @Override
+        public void enqueue(Callback callback) {
+            markExecuted();
+            mCallback = callback;
+            if (mDelegate.isCanceled()) {
+                callback.onFailure(this, new IOException("Canceled"));
+                return;
+            }
+            PriorityCallFactory.this.enqueue(this);
+        }
+
+        private synchronized void markExecuted() {
+            if (mExecuted) {
+                throw new IllegalStateException("Already Executed");
+            }
+            mExecuted = true;
+        }
+
+        void start() {
+            mDelegate.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    try {
+                        mCallback.onFailure(PriorityCall.this, e);
+                    } finally {
+                        finished(PriorityCall.this);
+                    }
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    // The slot is held until the callback has read the body.
+                    try {
+                        mCallback.onResponse(PriorityCall.this, response);
+                    } finally {
+                        finished(PriorityCall.this);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            mDelegate.cancel();
+            if (removeQueued(this)) {
+                mCallback.onFailure(this, new IOException("Canceled"));
+            }
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return mExecuted;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mDelegate.isCanceled();
+        }
+
+        @Override
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        public Call clone() {
+            return new PriorityCall(mDelegate.clone(), mPriority);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package jorgecasariego.retrofit;
+
+import okhttp3.Request;
+
+/**
+ * How urgent a request is, set per GitHubClient method with a static header:
+ *
+ *     @Headers(RequestPriority.USER_HEADER)
+ *     @GET("/users/{user}/repos")
+ *     Call<List<GitHubRepo>> reposForUser(@Path("user") String user);
+ *
+ * The header never leaves the app: PriorityCallFactory reads it and removes it. Methods without
+ * it are {@link #DEFAULT}.
+ */
+public enum RequestPriority {
+
+    /** Somebody is looking at a screen waiting for it. Goes before everything else. */
+    USER,
+    DEFAULT,
+    /** Prefetching, syncing: nobody waits for it, and it only gets a share of the connections. */
+    BACKGROUND;
+
+    public static final String HEADER = "X-Request-Priority";
+    public static final String USER_HEADER = HEADER + ": user";
+    public static final String BACKGROUND_HEADER = HEADER + ": background";
+
+    public static RequestPriority of(Request request) {
+        String value = request.header(HEADER);
+        if ("user".equals(value)) {
+            return USER;
+        }
+        if ("background".equals(value)) {
+            return BACKGROUND;
+        }
+        return DEFAULT;
+    }
+}
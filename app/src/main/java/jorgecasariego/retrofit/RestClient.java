@@ -4,37 +4,93 @@ import android.content.Context;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jorgecasariego.retrofit.rx.AppSchedulers;
+import jorgecasariego.retrofit.search.CitySearchEngine;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Single;
+import rx.functions.Func1;
 
 /**
  * Created by jorgecasariego on 27/3/17.
  *
  * This is a mock REST Client. It simulates making blocking calls to an REST endpoint.
+ *
+ * The *Async methods simulate the same endpoints without blocking anybody: the network delay is a
+ * timer on {@link #mTimerScheduler}, so a pending call costs a scheduled task instead of a parked
+ * thread, and unsubscribing before the timer fires cancels the call right away.
  */
 
 public class RestClient {
+    private static final long TV_SHOWS_DELAY_MILLIS = 5000;
+    private static final long SEARCH_DELAY_MILLIS = 500;
+
     private Context mContext;
+    private CitySearchEngine mCitySearchEngine;
+    private final Scheduler mTimerScheduler;
 
     public RestClient(Context context) {
+        this(context, AppSchedulers.cpu());
+    }
+
+    public RestClient(Context context, Scheduler timerScheduler) {
         mContext = context;
+        mTimerScheduler = timerScheduler;
+    }
+
+    public Single<List<String>> getFavoriteTvShowsAsync() {
+        return simulateLatency(TV_SHOWS_DELAY_MILLIS)
+                .map(new Func1<Long, List<String>>() {
+                    @Override
+                    public List<String> call(Long tick) {
+                        return createTvShowList();
+                    }
+                })
+                .toSingle();
+    }
+
+    public Single<List<String>> getFavoriteTvShowsWithExceptionAsync() {
+        return simulateLatency(TV_SHOWS_DELAY_MILLIS)
+                .map(new Func1<Long, List<String>>() {
+                    @Override
+                    public List<String> call(Long tick) {
+                        throw new RuntimeException("Failed to load");
+                    }
+                })
+                .toSingle();
+    }
+
+    public Observable<List<String>> searchForCityAsync(final String searchString) {
+        return simulateLatency(SEARCH_DELAY_MILLIS)
+                .map(new Func1<Long, List<String>>() {
+                    @Override
+                    public List<String> call(Long tick) {
+                        return getMatchingCities(searchString);
+                    }
+                });
+    }
+
+    /**
+     * The same search, failing with a DeadlineExceededException if it isn't done by the deadline.
+     */
+    public Observable<List<String>> searchForCityAsync(String searchString, Deadline deadline) {
+        return searchForCityAsync(searchString).compose(deadline.<List<String>>bound());
+    }
+
+    // "Simulate" the delay of network without blocking a thread.
+    private Observable<Long> simulateLatency(long delayMillis) {
+        return Observable.timer(delayMillis, TimeUnit.MILLISECONDS, mTimerScheduler);
     }
 
     public List<String> getFavoriteTvShows() {
-        try {
-            // "Simulate" the delay of network.
-            Thread.sleep(5000);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        simulateBlockingLatency("RestClient.getFavoriteTvShows()", TV_SHOWS_DELAY_MILLIS);
         return createTvShowList();
     }
 
     public List<String> getFavoriteTvShowsWithException() {
-        try {
-            // "Simulate" the delay of network.
-            Thread.sleep(5000);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        simulateBlockingLatency("RestClient.getFavoriteTvShowsWithException()", TV_SHOWS_DELAY_MILLIS);
         throw new RuntimeException("Failed to load");
     }
 
@@ -58,13 +114,23 @@ public class RestClient {
     }
 
     public List<String> searchForCity(String searchString) {
+        simulateBlockingLatency("RestClient.searchForCity()", SEARCH_DELAY_MILLIS);
+        return getMatchingCities(searchString);
+    }
+
+    // "Simulate" the delay of network. An interrupt means the caller gave up on us, so we keep the
+    // interrupt status and bail out instead of pretending the call succeeded. Blocking the main
+    // thread like this is reported to the MainThreadGuard.
+    private static void simulateBlockingLatency(String call, long delayMillis) {
+        MainThreadGuard.Violation violation = MainThreadGuard.start(call);
         try {
-            // "Simulate" the delay of network.
-            Thread.sleep(500);
+            Thread.sleep(delayMillis);
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the network", e);
+        } finally {
+            MainThreadGuard.finish(violation);
         }
-        return getMatchingCities(searchString);
     }
 
     private List<String> getMatchingCities(String searchString) {
@@ -72,13 +138,15 @@ public class RestClient {
             return new ArrayList<>();
         }
 
-        String[] cities = mContext.getResources().getStringArray(R.array.city_list);
-        List<String> toReturn = new ArrayList<>();
-        for (String city : cities) {
-            if (city.toLowerCase().startsWith(searchString.toLowerCase())) {
-                toReturn.add(city);
-            }
+        return getCitySearchEngine().search(searchString);
+    }
+
+    // The gazetteer is only read and sharded once, the first time somebody searches.
+    private synchronized CitySearchEngine getCitySearchEngine() {
+        if (mCitySearchEngine == null) {
+            String[] cities = mContext.getResources().getStringArray(R.array.city_list);
+            mCitySearchEngine = new CitySearchEngine(cities);
         }
-        return toReturn;
+        return mCitySearchEngine;
     }
 }
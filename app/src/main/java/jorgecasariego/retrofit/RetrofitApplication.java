@@ -0,0 +1,32 @@
+package jorgecasariego.retrofit;
+
+import android.app.Application;
+
+import jorgecasariego.retrofit.rx.ActivityLeakWatcher;
+import jorgecasariego.retrofit.rx.RxProfiler;
+import jorgecasariego.retrofit.sync.RepoPrefetchJobService;
+
+/**
+ * Created so debug tools can be set up before any screen runs.
+ */
+public class RetrofitApplication extends Application {
+
+    // Turn on to log per-operator timings and leaked subscriptions (tag RxLeaks) as activities
+    // are destroyed. It slows every pipeline down a little, so it is off by default.
+    private static final boolean PROFILE_RX = false;
+
+    // The users whose repos are fetched in the background, see RepoPrefetchJobService.
+    private static final String[] FOLLOWED_USERS = {"jorgecasariego"};
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Has to happen before anything touches rx.Observable, see RxProfiler.
+        if (PROFILE_RX && BuildConfig.DEBUG) {
+            ActivityLeakWatcher.install(this, RxProfiler.install());
+        }
+
+        RepoPrefetchJobService.schedule(this, FOLLOWED_USERS, RepoPrefetchJobService.Constraints.OVERNIGHT);
+    }
+}
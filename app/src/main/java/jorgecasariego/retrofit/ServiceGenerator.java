@@ -1,5 +1,21 @@
 package jorgecasariego.retrofit;
 
+import jorgecasariego.retrofit.auth.AuthInterceptor;
+import jorgecasariego.retrofit.auth.TokenAuthenticator;
+import jorgecasariego.retrofit.auth.TokenManager;
+import jorgecasariego.retrofit.model.StringPool;
+import jorgecasariego.retrofit.rx.AppSchedulers;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
@@ -44,18 +60,62 @@ public class ServiceGenerator {
 
     private static Retrofit retrofit;
 
+    // Strings of the responses (repo names, ...) come from the StringPool: every refresh of a
+    // list reuses the instances the lists already in memory have.
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(String.class, StringPool.shared().typeAdapter())
+            .create();
+
     private static Retrofit.Builder builder =
             new Retrofit.Builder()
             .baseUrl(apiBaseUrl)
-            .addConverterFactory(GsonConverterFactory.create());
+            .addConverterFactory(GsonConverterFactory.create(gson));
 
     private static HttpLoggingInterceptor logging =
             new HttpLoggingInterceptor()
             .setLevel(HttpLoggingInterceptor.Level.BODY);
 
+    // Learns how good the network is from the calls that go out, see NetworkQuality.
+    private static final NetworkQualityEstimator networkQuality = new NetworkQualityEstimator();
+
+    // OkHttp runs asynchronous calls on an instrumented pool of the app instead of its own one.
+    // The first interceptor reports any call executed on the main thread (in debug builds). The
+    // network interceptors don't start an attempt after the Deadline of its call, and time every
+    // attempt for the NetworkQualityEstimator.
     private static OkHttpClient.Builder httpClient =
-            new OkHttpClient.Builder();
+            new OkHttpClient.Builder()
+            .dispatcher(new Dispatcher(AppSchedulers.networkExecutor()))
+            .addInterceptor(new MainThreadGuardInterceptor())
+            .addNetworkInterceptor(new DeadlineInterceptor())
+            .addNetworkInterceptor(networkQuality);
+
+
+    private static Cache responseCache;
+
+    private static final EndpointSelector endpointSelector = new EndpointSelector();
+
+    private static volatile PriorityCallFactory priorityCallFactory;
+
+    private static volatile HedgingCallFactory hedgingCallFactory;
+
+    // The same for createService(Class, TokenManager), whose calls have a client of their own.
+    private static Retrofit authRetrofit;
+
+    private static TokenManager authTokens;
 
+    private static volatile PriorityCallFactory authPriorityCallFactory;
+
+    private static volatile HedgingCallFactory authHedgingCallFactory;
+
+    static {
+        networkQuality.addListener(new NetworkQualityEstimator.Listener() {
+            @Override
+            public void onQualityChanged(NetworkQuality quality) {
+                applyQuality(priorityCallFactory, hedgingCallFactory, quality);
+                applyQuality(authPriorityCallFactory, authHedgingCallFactory, quality);
+            }
+        });
+    }
 
     public ServiceGenerator() {
 
@@ -63,47 +123,136 @@ public class ServiceGenerator {
 
 
     // Example: https://futurestud.io/tutorials/retrofit-2-how-to-change-api-base-url-at-runtime-2
-    public static void changeApiBaseUrl(String newApiBaseUrl){
+    // The new builder needs the client too, and services created after this must use the new
+    // base url, so an existing Retrofit is rebuilt.
+    public static synchronized void changeApiBaseUrl(String newApiBaseUrl){
         apiBaseUrl = newApiBaseUrl;
 
         builder = new Retrofit.Builder()
-                .addConverterFactory(GsonConverterFactory.create())
+                .addConverterFactory(GsonConverterFactory.create(gson))
                 .baseUrl(apiBaseUrl);
+        if (retrofit != null) {
+            builder.callFactory(callFactory());
+            retrofit = builder.build();
+        }
+        authRetrofit = null;
+    }
+
+    // Spreads the calls over replicas of the API, picking the fastest healthy one for every call,
+    // see EndpointSelector. apiBaseUrl should be one of them. Can be called at any time, services
+    // already created keep working and nothing is rebuilt.
+    public static void setApiEndpoints(List<String> baseUrls) {
+        List<HttpUrl> endpoints = new ArrayList<>();
+        for (String baseUrl : baseUrls) {
+            endpoints.add(HttpUrl.parse(baseUrl));
+        }
+        endpointSelector.setEndpoints(endpoints);
+    }
+
+    // Keeps responses on disk as long as the server allows (GitHub: 60 seconds), and after that
+    // revalidates them with their ETag, which doesn't count against the rate limit. Lets a paged
+    // list drop pages from memory and get them back cheaply.
+    public static synchronized void enableResponseCache(File directory, long maxSizeBytes) {
+        if (responseCache != null) {
+            return;
+        }
+        responseCache = new Cache(directory, maxSizeBytes);
+        httpClient.cache(responseCache);
+        if (retrofit != null) {
+            builder.callFactory(callFactory());
+            retrofit = builder.build();
+        }
+        authRetrofit = null;
+    }
+
+    // The page size and prefetch depth repo lists should use on this network, and when that
+    // changes.
+    public static NetworkQualityEstimator getNetworkQuality() {
+        return networkQuality;
+    }
+
+    // Same as builder.client(), but calls are started by their RequestPriority, as many at a time
+    // as the NetworkQuality allows, go to the best of the API endpoints, the methods that opt in
+    // are hedged when they are slow, and calls with a Deadline are canceled at it.
+    private static Call.Factory callFactory() {
+        hedgingCallFactory = new HedgingCallFactory(httpClient.build());
+        priorityCallFactory = prioritized(hedgingCallFactory);
+        return new DeadlineCallFactory(priorityCallFactory);
+    }
+
+    private static PriorityCallFactory prioritized(HedgingCallFactory hedging) {
+        NetworkQuality quality = networkQuality.getQuality();
+        PriorityCallFactory priority = new PriorityCallFactory(new EndpointCallFactory(hedging, endpointSelector),
+                quality.getMaxCalls(), PriorityCallFactory.DEFAULT_MAX_BACKGROUND_CALLS);
+        applyQuality(priority, hedging, quality);
+        return priority;
+    }
+
+    // Fewer calls at a time on a slow network, so the ones the user waits for get the bandwidth.
+    // A hedge would be one call more, so there is none on it.
+    private static void applyQuality(PriorityCallFactory priority, HedgingCallFactory hedging,
+                                     NetworkQuality quality) {
+        if (priority != null) {
+            priority.setMaxCalls(quality.getMaxCalls());
+        }
+        if (hedging != null) {
+            hedging.setHedgingEnabled(quality != NetworkQuality.SLOW);
+        }
     }
 
     // The createService method takes a serviceClass, which is the annotated interface for API
     // requests, as a parameter and creates a usable client from it.
     // On the resulting client you'll be able to execute your network requests.
     public static <S> S createService(Class<S> serviceClass) {
+        buildRetrofit();
+        return  retrofit.create(serviceClass);
+    }
 
+    private static synchronized void buildRetrofit() {
         // We need to make sure you're not accidentally adding the interceptor multiple times!
         // Also, we need to make sure to not build the retrofit object on every createService
         if(!httpClient.interceptors().contains(logging)){
             httpClient.addInterceptor(logging);
-            builder.client(httpClient.build());
+            builder.callFactory(callFactory());
             retrofit = builder.build();
         }
-
-        return  retrofit.create(serviceClass);
     }
 
     /**
-     * Hawk Authentication: https://alexbilbie.com/2012/11/hawk-a-new-http-authentication-scheme/
+     * Calls with short lived tokens: the AuthInterceptor signs every request with the current
+     * token of the TokenManager, which refreshes it ahead of its expiry, and the
+     * TokenAuthenticator retries a 401 with a new one. However many calls are in flight, a token
+     * is only refreshed once.
+     *
+     * The services get a client of their own, which shares the connections, the cache and the
+     * dispatcher of the other one: the services of createService(Class) never send the token.
+     *
+     * Replaces the Hawk example this used to have (https://alexbilbie.com/2012/11/hawk-a-new-http-authentication-scheme/):
+     * a Hawk header has a timestamp and a nonce, so it would have to be a RequestSigner that
+     * isn't cacheable.
      */
-//    public static <S> S createService(
-//            Class<S> serviceClass, final HawkCredentials credentials) {
-//        if (credentials != null) {
-//            HawkAuthenticationInterceptor interceptor =
-//                    new HawkAuthenticationInterceptor(credentials);
-//
-//            if (!httpClient.interceptors().contains(interceptor)) {
-//                httpClient.addInterceptor(interceptor);
-//
-//                builder.client(httpClient.build());
-//                retrofit = builder.build();
-//            }
-//        }
-//
-//        return retrofit.create(serviceClass);
-//    }
+    public static synchronized <S> S createService(Class<S> serviceClass, TokenManager tokens) {
+        if (tokens == null) {
+            return createService(serviceClass);
+        }
+        if (authRetrofit == null || authTokens != tokens) {
+            buildRetrofit();
+            AuthInterceptor authInterceptor = new AuthInterceptor(tokens);
+            OkHttpClient client = httpClient.build().newBuilder()
+                    .addInterceptor(authInterceptor)
+                    .authenticator(new TokenAuthenticator(authInterceptor))
+                    .build();
+
+            authHedgingCallFactory = new HedgingCallFactory(client);
+            authPriorityCallFactory = prioritized(authHedgingCallFactory);
+            authRetrofit = new Retrofit.Builder()
+                    .baseUrl(apiBaseUrl)
+                    .addConverterFactory(GsonConverterFactory.create(gson))
+                    .callFactory(new DeadlineCallFactory(authPriorityCallFactory))
+                    .build();
+            authTokens = tokens;
+        }
+
+        return authRetrofit.create(serviceClass);
+    }
 }
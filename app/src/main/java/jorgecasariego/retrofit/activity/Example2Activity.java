@@ -8,16 +8,14 @@ import android.view.View;
 import android.widget.ProgressBar;
 
 import java.util.List;
-import java.util.concurrent.Callable;
 
 import jorgecasariego.retrofit.R;
-import jorgecasariego.retrofit.RestClient;
 import jorgecasariego.retrofit.adapter.SimpleStringAdapter;
+import jorgecasariego.retrofit.repository.TvShowRepository;
 import rx.Observable;
 import rx.Observer;
 import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 
 /**
  * Example from: https://medium.com/@kurtisnusbaum/rxandroid-basics-part-1-c0d5edcf6850
@@ -36,14 +34,14 @@ public class Example2Activity extends AppCompatActivity {
     private RecyclerView recyclerView;
     private ProgressBar progressBar;
     private SimpleStringAdapter adapter;
-    private RestClient mRestClient;
+    private TvShowRepository mTvShowRepository;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_example2);
 
-        mRestClient = new RestClient(this);
+        mTvShowRepository = TvShowRepository.getInstance(this);
 
         configureLayout();
 
@@ -62,33 +60,21 @@ public class Example2Activity extends AppCompatActivity {
      * In this example we can't use Observable.just because mRestClient.getFavoriteTvShows() is a
      * blocking network call. If we use it with Observable.just(), mRestClient.getFavoriteTvShows()
      * will be evaluated immediately and block the UI thread.
+     *
+     * The classic answer is Observable.fromCallable(): the code creating the emitted value is not
+     * run until someone subscribes, and subscribeOn(Schedulers.io()) moves it to another thread.
+     * That works, but the io thread is parked for the whole call and unsubscribing can't wake it up.
+     *
+     * Instead we ask the TvShowRepository, which uses the RestClient's asynchronous version: nothing
+     * blocks while we wait. The repository also shares one fetch between every screen showing tv
+     * shows and keeps the result for a while, so rotating the device doesn't load them again.
      */
     private void createObservable() {
-        /**
-         * Enter the Observable.fromCallable() method. It gives us two important things:
-         *  1. The code for creating the emitted value is not run until someone subscribes to the Observer.
-         *
-         *  2. The creation code can be run on a different thread.
-         *
-         *  ---
-         *  subscribeOn() essentially alters the Observable. All of the code that this Observable
-         *  would normally run, including the code the gets run upon subscription, will now run on
-         *  a different thread. This means the logic in our Callable object, including the call
-         *  to getFavoriteTvShows(), will run on a different thread.
-         *
-         *
-         */
-        Observable<List<String>> tvShowObservable = Observable.fromCallable(new Callable<List<String>>() {
-            @Override
-            public List<String> call() throws Exception {
-                return mRestClient.getFavoriteTvShows();
-            }
-        });
+        Observable<List<String>> tvShowObservable = mTvShowRepository.getFavoriteTvShows();
 
         /**
-         * Since our Observable is set to run on the IO Scheduler, this means it’s going to
-         * interact with our Observer on the IO Scheduler as well. This is a problem because
-         * it means our onNext() method is going to get called on the IO Scheduler. But the code
+         * The repository emits its result on one of the RestClient's background threads. This is a
+         * problem because it means our onNext() method is going to get called there. But the code
          * in our onNext() calls methods on some of our views. View methods can only be called
          * on the UI thread.
          *
@@ -99,7 +85,6 @@ public class Example2Activity extends AppCompatActivity {
          * the scheduler returned by AndroidSchedules.mainThread()
          */
         mTvShowSubscription = tvShowObservable
-                .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new Observer<List<String>>() {
                     @Override
@@ -9,16 +9,14 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import java.util.List;
-import java.util.concurrent.Callable;
 
 import jorgecasariego.retrofit.R;
-import jorgecasariego.retrofit.RestClient;
 import jorgecasariego.retrofit.adapter.SimpleStringAdapter;
+import jorgecasariego.retrofit.repository.TvShowRepository;
 import rx.Single;
 import rx.SingleSubscriber;
 import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 
 public class Example3Activity extends AppCompatActivity {
 
@@ -27,12 +25,12 @@ public class Example3Activity extends AppCompatActivity {
     private ProgressBar mProgressBar;
     private TextView mErrorMessage;
     private SimpleStringAdapter mSimpleStringAdapter;
-    private RestClient mRestClient;
+    private TvShowRepository mTvShowRepository;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mRestClient = new RestClient(this);
+        mTvShowRepository = TvShowRepository.getInstance(this);
         configureLayout();
         createSingle();
     }
@@ -44,21 +42,14 @@ public class Example3Activity extends AppCompatActivity {
          *  Singles work almost exactly the same as Observables. But instead of there being an
          *  onCompleted(), onNext(), and onError(), there are only two callbacks: onSuccess() and onError().
          */
-        Single<List<String>> tvShowSingle = Single.fromCallable(new Callable<List<String>>() {
-            @Override
-            public List<String> call() throws Exception {
-                /**
-                 * Uncomment me (and comment out the line below) to see what happens when an error occurs.
-                 *
-                 * return mRestClient.getFavoriteTvShowsWithException();
-                 */
-                return mRestClient.getFavoriteTvShows();
-
-            }
-        });
+        /**
+         * Uncomment me (and comment out the line below) to see what happens when an error occurs.
+         *
+         * Single<List<String>> tvShowSingle = new RestClient(this).getFavoriteTvShowsWithExceptionAsync();
+         */
+        Single<List<String>> tvShowSingle = mTvShowRepository.getFavoriteTvShows().toSingle();
 
         mTvShowSubscription = tvShowSingle
-                .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new SingleSubscriber<List<String>>() {
                     @Override
@@ -7,6 +7,7 @@ import android.widget.Button;
 import android.widget.TextView;
 
 import jorgecasariego.retrofit.R;
+import jorgecasariego.retrofit.rx.FrameConflate;
 import rx.Observer;
 import rx.subjects.PublishSubject;
 
@@ -37,22 +38,27 @@ public class Example4Activity extends AppCompatActivity {
 
     private void createCounterEmitter() {
         mCounterEmitter = PublishSubject.create();
-        mCounterEmitter.subscribe(new Observer<Integer>() {
-            @Override
-            public void onCompleted() {
 
-            }
+        // A person can't click faster than the screen refreshes, but anything else pushed through
+        // a subject this way can. FrameConflate only lets the latest value of each frame through.
+        mCounterEmitter
+                .lift(FrameConflate.<Integer>create())
+                .subscribe(new Observer<Integer>() {
+                    @Override
+                    public void onCompleted() {
 
-            @Override
-            public void onError(Throwable e) {
+                    }
 
-            }
+                    @Override
+                    public void onError(Throwable e) {
 
-            @Override
-            public void onNext(Integer integer) {
-                mCounterDisplay.setText(String.valueOf(integer));
-            }
-        });
+                    }
+
+                    @Override
+                    public void onNext(Integer integer) {
+                        mCounterDisplay.setText(String.valueOf(integer));
+                    }
+                });
     }
 
     private void configureLayout() {
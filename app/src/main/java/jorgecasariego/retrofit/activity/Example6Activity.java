@@ -11,19 +11,28 @@ import android.widget.EditText;
 import android.widget.TextView;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import jorgecasariego.retrofit.Deadline;
 import jorgecasariego.retrofit.R;
 import jorgecasariego.retrofit.RestClient;
 import jorgecasariego.retrofit.adapter.SimpleStringAdapter;
+import jorgecasariego.retrofit.rx.AppSchedulers;
+import jorgecasariego.retrofit.search.SearchPipeline;
+import rx.Observable;
 import rx.Observer;
 import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.functions.Func1;
-import rx.schedulers.Schedulers;
 import rx.subjects.PublishSubject;
 
 public class Example6Activity extends AppCompatActivity {
 
+    private static final long MIN_DEBOUNCE_MILLIS = 50;
+    private static final long MAX_DEBOUNCE_MILLIS = 800;
+    // A search that takes longer is given up on, the next keystroke searches again.
+    private static final long SEARCH_DEADLINE_MILLIS = 3000;
+
     private RestClient mRestClient;
     private EditText mSearchInput;
     private TextView mNoResultsIndicator;
@@ -31,6 +40,7 @@ public class Example6Activity extends AppCompatActivity {
     private SimpleStringAdapter mSearchResultsAdapter;
 
     private PublishSubject<String> mSearchResultsSubject;
+    private SearchPipeline mSearchPipeline;
     private Subscription mTextWatchSubscription;
 
     @Override
@@ -50,6 +60,8 @@ public class Example6Activity extends AppCompatActivity {
         mSearchResults = (RecyclerView) findViewById(R.id.search_results);
         mSearchResults.setLayoutManager(new LinearLayoutManager(this));
         mSearchResultsAdapter = new SimpleStringAdapter(this);
+        // A short query can match thousands of cities: their rows are laid out ahead of time.
+        mSearchResultsAdapter.setTextPrewarmEnabled(true);
         mSearchResults.setAdapter(mSearchResultsAdapter);
     }
 
@@ -73,22 +85,28 @@ public class Example6Activity extends AppCompatActivity {
      *
      *  This is what debounce() allows us to do. It tells mSearchResultsSubject to only emit the
      *  last value that came into it after nothing new has come into the mSearchResultsSubject
-     *  for 400 milliseconds.
+     *  for a while.
      *
      *  Essentially, this means our subject won’t emit the search string until the user hasn’t
-     *  changed the string for 400 milliseconds, and at the end of the 400 milliseconds it will
-     *  only emit the latest search string the user entered.
+     *  changed the string for that long, and at the end of the wait it will only emit the latest
+     *  search string the user entered.
+     *
+     *  How long is "a while"? A fixed 400 milliseconds is pointless latency when the search answers
+     *  in a few milliseconds, and still too short to avoid flooding a slow backend. So the pipeline
+     *  uses an adaptive debounce: it measures how long searches take and how fast the user types,
+     *  and picks a window between MIN_DEBOUNCE_MILLIS and MAX_DEBOUNCE_MILLIS.
      *
-     *  map
-     *  ---
-     *  We’re going to use map to “map” our search queries to a list of search results.
-     *  Because map can run any arbitrary function, we’ll use our RestClient to transform our search
-     *  query into the list of actual results we want to display.
+     *  SearchPipeline
+     *  --------------
+     *  The rest of the chain lives in SearchPipeline, so other screens can reuse it. After debounce
+     *  it drops a query identical to the previous one, then uses switchMap to turn each query into
+     *  a search. switchMap is what makes a slow, old search stop mattering: as soon as a newer query
+     *  arrives it unsubscribes from the search still in flight and only listens to the new one.
      *
-     *  Since our map was run on the IO Scheduler, and we want to use the results it emits to populate
-     *  our views, we then need to switch back to the UI thread. So we add an
-     *  observeOn(AndroidSchedulers.mainThread()). Now we’ve got the search results being emitted
-     *  on the UI thread. Note the ordering of all our observerOn()s here. They’re critical.
+     *  The searches finish on the RestClient's background threads, and we want to use the results
+     *  to populate our views, so the pipeline switches back to the UI thread with
+     *  observeOn(AndroidSchedulers.mainThread()). Anything older than the latest search that was
+     *  already waiting in that queue is filtered out, so the list never goes back in time.
      *
      *  mSearchResultsSubject
      *      |
@@ -98,43 +116,60 @@ public class Example6Activity extends AppCompatActivity {
      *     |||
      *     |||
      *      V
-     *     map
+     *   distinctUntilChanged
+     *     |||
+     *     |||
+     *      V
+     *   switchMap
+     *     |||
+     *     |||
+     *      V
+     *   observeOn
+     *      |
+     *      |
+     *      V
+     *   filter (stale results)
      *      |
      *      |
      *      V
      *   observer
      *
      *   The | represents emissions happening on the UI Thread and the ||| represents emissions
-     *   happening on the IO Scheduler.
+     *   happening on background threads.
      */
     private void createObservables() {
         mSearchResultsSubject = PublishSubject.create();
-        mTextWatchSubscription = mSearchResultsSubject
-                .debounce(400, java.util.concurrent.TimeUnit.MILLISECONDS)
-                .observeOn(Schedulers.io())
-                .map(new Func1<String, List<String>>() {
+        mSearchPipeline = new SearchPipeline(
+                new Func1<String, Observable<List<String>>>() {
                     @Override
-                    public List<String> call(String city) {
-                        return mRestClient.searchForCity(city);
+                    public Observable<List<String>> call(String city) {
+                        return mRestClient.searchForCityAsync(city,
+                                Deadline.after(SEARCH_DEADLINE_MILLIS, TimeUnit.MILLISECONDS));
                     }
-                })
-        .observeOn(AndroidSchedulers.mainThread())
-        .subscribe(new Observer<List<String>>() {
-            @Override
-            public void onCompleted() {
+                },
+                MIN_DEBOUNCE_MILLIS,
+                MAX_DEBOUNCE_MILLIS,
+                AppSchedulers.cpu(),
+                AndroidSchedulers.mainThread());
+
+        mTextWatchSubscription = mSearchPipeline.results(mSearchResultsSubject)
+                .subscribe(new Observer<SearchPipeline.SearchResult>() {
+                    @Override
+                    public void onCompleted() {
 
-            }
+                    }
 
-            @Override
-            public void onError(Throwable e) {
+                    @Override
+                    public void onError(Throwable e) {
 
-            }
+                    }
 
-            @Override
-            public void onNext(List<String> cities) {
-                handleSearchResults(cities);
-            }
-        });
+                    @Override
+                    public void onNext(SearchPipeline.SearchResult result) {
+                        handleSearchResults(result.getResults());
+                        mSearchPipeline.onRendered(result);
+                    }
+                });
 
     }
 
@@ -154,7 +189,7 @@ public class Example6Activity extends AppCompatActivity {
     private void showSearchResults(List<String> cities) {
         mNoResultsIndicator.setVisibility(View.GONE);
         mSearchResults.setVisibility(View.VISIBLE);
-        mSearchResultsAdapter.setStrings(cities);
+        mSearchResultsAdapter.submitStrings(cities);
     }
 
     private void listenToSearchInput() {
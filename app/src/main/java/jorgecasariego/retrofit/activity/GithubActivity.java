@@ -2,66 +2,109 @@ package jorgecasariego.retrofit.activity;
 
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
-import android.widget.ListView;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.widget.Toast;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
 
 import jorgecasariego.retrofit.GitHubClient;
+import jorgecasariego.retrofit.NetworkQuality;
+import jorgecasariego.retrofit.NetworkQualityEstimator;
 import jorgecasariego.retrofit.R;
 import jorgecasariego.retrofit.ServiceGenerator;
 import jorgecasariego.retrofit.adapter.GithubAdapter;
+import jorgecasariego.retrofit.cache.RepoSnapshotReader;
 import jorgecasariego.retrofit.model.GitHubRepo;
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
+import jorgecasariego.retrofit.repository.GitHubRepoPageLoader;
+import jorgecasariego.retrofit.repository.PagedList;
+import jorgecasariego.retrofit.repository.RepoPrefetcher;
 
 public class GithubActivity extends AppCompatActivity {
 
+    // The visible page and 3 on each side: several screens, whatever the size of the org.
+    private static final int MAX_PAGES_IN_MEMORY = 7;
+    private static final long RESPONSE_CACHE_BYTES = 5 * 1024 * 1024;
+    private static final String USER = "jorgecasariego";
 
-    ListView listview;
+    RecyclerView repoList;
     GithubAdapter adapter;
-    List<GitHubRepo> gitHubRepos = new ArrayList<>();
+    PagedList<GitHubRepo> gitHubRepos;
+
+    // The page size of a list can't change once it is loading, but how far ahead it prefetches
+    // can: it follows the network.
+    private final NetworkQualityEstimator.Listener networkQualityListener = new NetworkQualityEstimator.Listener() {
+        @Override
+        public void onQualityChanged(final NetworkQuality quality) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    gitHubRepos.setPrefetchDistance(quality.getPrefetchDistance());
+                }
+            });
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        listview = (ListView) findViewById(R.id.listview);
-        adapter = new GithubAdapter(this, gitHubRepos);
-        listview.setAdapter(adapter);
-
+        ServiceGenerator.enableResponseCache(new File(getCacheDir(), "http"), RESPONSE_CACHE_BYTES);
         GitHubClient client = ServiceGenerator.createService(GitHubClient.class);
 
+        // Fetch the Github repositories a page at a time, as the list is scrolled. Pages far from
+        // the visible ones are dropped and fetched again (mostly from the response cache) if the
+        // user scrolls back to them. Pages are smaller on a slow network, so the first one shows
+        // sooner, and larger on a fast one.
+        NetworkQualityEstimator networkQuality = ServiceGenerator.getNetworkQuality();
+        NetworkQuality quality = networkQuality.getQuality();
+        gitHubRepos = new PagedList<>(
+                new GitHubRepoPageLoader(client, USER), quality.getPageSize(), MAX_PAGES_IN_MEMORY);
+        gitHubRepos.setPrefetchDistance(quality.getPrefetchDistance());
+        networkQuality.addListener(networkQualityListener);
+
+        // The repos RepoPrefetchJobService fetched last time, shown until the first page arrives.
+        // Opening it only maps the file and reads its header, quick enough for onCreate().
+        RepoSnapshotReader snapshot = openSnapshot();
+
+        repoList = (RecyclerView) findViewById(R.id.repo_list);
+        adapter = new GithubAdapter(this, snapshot != null ? snapshot : gitHubRepos);
+        adapter.attachTo(repoList, new LinearLayoutManager(this));
+
+        gitHubRepos.setListener(new PagedList.Listener() {
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                if (showPagedList()) {
+                    return;
+                }
+                adapter.notifyItemRangeInserted(positionStart, itemCount);
+            }
 
-        // Fetch a list of the Github repositories.
-        Call<List<GitHubRepo>> call = client.reposForUser("jorgecasariego");
-
-        /**
-         *      Execute the call asynchronously. Get a positive or negative callback.
-         *
-         *      Get Raw HTTP Response
-         *      ---------------------
-         *      In case wee need the raw HTTP response object, just define it as the method’s return type.
-         *      Response raw = response.raw();
-          */
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                if (showPagedList()) {
+                    return;
+                }
+                adapter.notifyItemRangeRemoved(positionStart, itemCount);
+            }
 
-        call.enqueue(new Callback<List<GitHubRepo>>() {
             @Override
-            public void onResponse(Call<List<GitHubRepo>> call, Response<List<GitHubRepo>> response) {
-                // The network call was a success and we got a response
-                List<GitHubRepo> gitHubRepos = response.body();
-                adapter.addAll(gitHubRepos);
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                if (showPagedList()) {
+                    return;
+                }
+                adapter.notifyItemRangeChanged(positionStart, itemCount);
             }
 
             @Override
-            public void onFailure(Call<List<GitHubRepo>> call, Throwable t) {
+            public void onLoadError(int page, Throwable t) {
                 // the network call was a failure
                 Toast.makeText(GithubActivity.this, "Error al obtener repositorio: " + t.getMessage(), Toast.LENGTH_SHORT).show();
             }
         });
+        gitHubRepos.loadInitial();
 
         // Dynamic Request Headers Example
         /*
@@ -85,4 +128,38 @@ public class GithubActivity extends AppCompatActivity {
             // Use it like any other Retrofit call
         */
     }
+
+    /**
+     * Swaps the snapshot for the list being loaded, once it has something to show.
+     *
+     * @return true if it did: the adapter was told everything changed.
+     */
+    private boolean showPagedList() {
+        if (adapter.getRepos() == gitHubRepos) {
+            return false;
+        }
+        // Rows keep their place: the ids are the repo ids.
+        adapter.setRepos(gitHubRepos);
+        return true;
+    }
+
+    private RepoSnapshotReader openSnapshot() {
+        File file = RepoPrefetcher.snapshotFile(RepoPrefetcher.snapshotDirectory(this), USER);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return RepoSnapshotReader.open(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        ServiceGenerator.getNetworkQuality().removeListener(networkQualityListener);
+        // The pages still loading would call back into this activity once it's gone.
+        gitHubRepos.cancel();
+        super.onDestroy();
+    }
 }
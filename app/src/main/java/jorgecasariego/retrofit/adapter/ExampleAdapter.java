@@ -21,6 +21,14 @@ public class ExampleAdapter extends RecyclerView.Adapter<ExampleAdapter.ViewHold
     private Context mContext;
     private List<ExampleActivityAndName> mExamples;
 
+    private final OnRowClickListener mOnRowClickListener = new OnRowClickListener() {
+        @Override
+        public void onRowClick(int position) {
+            Intent exampleIntent = new Intent(mContext, mExamples.get(position).mExampleActivityClass);
+            mContext.startActivity(exampleIntent);
+        }
+    };
+
     public ExampleAdapter(Context context, List<ExampleActivityAndName> examples) {
         mContext = context;
         mExamples = examples;
@@ -31,19 +39,12 @@ public class ExampleAdapter extends RecyclerView.Adapter<ExampleAdapter.ViewHold
         View v = LayoutInflater
                 .from(mContext)
                 .inflate(R.layout.example_list_item, parent, false);
-        return new ViewHolder(v);
+        return new ViewHolder(v, mOnRowClickListener);
     }
 
     @Override
-    public void onBindViewHolder(final ViewHolder holder, final int position) {
+    public void onBindViewHolder(ViewHolder holder, int position) {
         holder.mNameDisplay.setText(mExamples.get(position).mExampleName);
-        holder.itemView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                Intent exampleIntent = new Intent(mContext, mExamples.get(position).mExampleActivityClass);
-                mContext.startActivity(exampleIntent);
-            }
-        });
     }
 
     @Override
@@ -51,13 +52,24 @@ public class ExampleAdapter extends RecyclerView.Adapter<ExampleAdapter.ViewHold
         return mExamples.size();
     }
 
-    public static class ViewHolder extends RecyclerView.ViewHolder {
+    public static class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
 
         public final TextView mNameDisplay;
+        private final OnRowClickListener mOnRowClickListener;
 
-        public ViewHolder(View itemView) {
+        ViewHolder(View itemView, OnRowClickListener onRowClickListener) {
             super(itemView);
             mNameDisplay = (TextView) itemView.findViewById(R.id.name_display);
+            mOnRowClickListener = onRowClickListener;
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View v) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                mOnRowClickListener.onRowClick(position);
+            }
         }
     }
 }
@@ -1,47 +1,104 @@
 package jorgecasariego.retrofit.adapter;
 
 import android.content.Context;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.TextView;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import jorgecasariego.retrofit.model.GitHubRepo;
 import jorgecasariego.retrofit.R;
+import jorgecasariego.retrofit.repository.PagedList;
 
 /**
  * Created by jorgecasariego on 21/3/17.
+ *
+ * Rows are only inflated (and their views looked up) when RecyclerView runs out of rows to
+ * recycle, which stops happening after the first screen. Ids are stable, taken from the repo id, so
+ * RecyclerView can keep track of a row across data changes.
+ *
+ * The list can hold nulls, shown as empty placeholder rows: that's how a PagedList stands for
+ * repos it hasn't loaded. It can be replaced with setRepos().
  */
 
-public class GithubAdapter extends ArrayAdapter<GitHubRepo> {
+public class GithubAdapter extends RecyclerView.Adapter<GithubAdapter.ViewHolder> {
+
+    // Rows waiting in the shared pool: a fast fling can scrap a whole screen of them at once.
+    private static final int RECYCLED_POOL_SIZE = 20;
+    // Rows kept just off screen, ready to be shown again without rebinding.
+    private static final int VIEW_CACHE_SIZE = 6;
 
     Context context;
-    List<GitHubRepo> gitHubRepos = new ArrayList<>();
+    List<GitHubRepo> gitHubRepos;
 
     public GithubAdapter(Context context, List<GitHubRepo> gitHubRepos) {
-        super(context, -1, gitHubRepos);
         this.context = context;
         this.gitHubRepos = gitHubRepos;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Applies the recycling and prefetch settings that suit this list.
+     */
+    public void attachTo(RecyclerView recyclerView, RecyclerView.LayoutManager layoutManager) {
+        layoutManager.setItemPrefetchEnabled(true);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.setHasFixedSize(true);
+        recyclerView.setItemViewCacheSize(VIEW_CACHE_SIZE);
+        recyclerView.getRecycledViewPool().setMaxRecycledViews(0, RECYCLED_POOL_SIZE);
+        recyclerView.setAdapter(this);
+    }
+
+    public List<GitHubRepo> getRepos() {
+        return gitHubRepos;
+    }
+
+    /**
+     * Shows another list, e.g. the repos being loaded instead of the snapshot of the last ones.
+     */
+    public void setRepos(List<GitHubRepo> repos) {
+        gitHubRepos = repos;
+        notifyDataSetChanged();
+    }
 
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View rowView = LayoutInflater.from(context).inflate(R.layout.rowlayout, parent, false);
+        return new ViewHolder(rowView);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        GitHubRepo repo = gitHubRepos.get(position);
+        holder.nombreRepo.setText(repo != null ? repo.getName() : null);
     }
 
-    @NonNull
     @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-        LayoutInflater inflater = (LayoutInflater) context
-                .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+    public long getItemId(int position) {
+        // RecyclerView asks for the ids of rows it isn't showing too: reading those from a
+        // PagedList with get() would load their pages and move its window.
+        GitHubRepo repo = gitHubRepos instanceof PagedList
+                ? ((PagedList<GitHubRepo>) gitHubRepos).peek(position)
+                : gitHubRepos.get(position);
+        // Repo ids are positive, so placeholders get negative ones.
+        return repo != null ? repo.getId() : -1 - position;
+    }
+
+    @Override
+    public int getItemCount() {
+        return gitHubRepos.size();
+    }
 
-        View rowView = inflater.inflate(R.layout.rowlayout, parent, false);
+    public static class ViewHolder extends RecyclerView.ViewHolder {
 
-        TextView nombreRepo = (TextView) rowView.findViewById(R.id.nombre);
-        nombreRepo.setText(gitHubRepos.get(position).getName());
+        public final TextView nombreRepo;
 
-        return rowView;
+        public ViewHolder(View rowView) {
+            super(rowView);
+            nombreRepo = (TextView) rowView.findViewById(R.id.nombre);
+        }
     }
 }
@@ -0,0 +1,12 @@
+package jorgecasariego.retrofit.adapter;
+
+/**
+ * Shared by every ViewHolder of an adapter, so binding a row never has to create a listener.
+ */
+interface OnRowClickListener {
+
+    /**
+     * @param position the row's current adapter position, never RecyclerView.NO_POSITION.
+     */
+    void onRowClick(int position);
+}
@@ -1,6 +1,9 @@
 package jorgecasariego.retrofit.adapter;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -9,44 +12,122 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import jorgecasariego.retrofit.R;
+import jorgecasariego.retrofit.rx.AppSchedulers;
 
 /**
  * Created by jorgecasariego on 27/3/17.
+ *
+ * Two ways to change the list:
+ *  - setStrings() swaps it right away and redraws every row (notifyDataSetChanged()).
+ *  - submitStrings() computes the difference between the old and new list on a background thread,
+ *    then swaps the list on the main thread and only notifies the rows that changed, which keeps
+ *    RecyclerView's animations and view caches. If a newer list is submitted while a diff is still
+ *    being computed, the older one is thrown away.
  */
 
 public class SimpleStringAdapter extends RecyclerView.Adapter<SimpleStringAdapter.ViewHolder> {
 
+    private static final int PREWARM_MIN_ROWS = 100;
+
     private final Context mContext;
-    private final List<String> mStrings = new ArrayList<>();
+    private final Executor mDiffExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Only replaced (never modified) on the main thread, so a background diff can read it safely.
+    private volatile List<String> mStrings = Collections.emptyList();
+    private volatile int mGeneration;
+    private TextLayoutWarmer mTextLayoutWarmer;
+
+    private final OnRowClickListener mOnRowClickListener = new OnRowClickListener() {
+        @Override
+        public void onRowClick(int position) {
+            Toast.makeText(mContext, mStrings.get(position), Toast.LENGTH_SHORT).show();
+        }
+    };
 
     public SimpleStringAdapter(Context context) {
+        this(context, AppSchedulers.cpuExecutor());
+    }
+
+    public SimpleStringAdapter(Context context, Executor diffExecutor) {
         mContext = context;
+        mDiffExecutor = diffExecutor;
     }
 
     public void setStrings(List<String> newStrings) {
-        mStrings.clear();
-        mStrings.addAll(newStrings);
+        mGeneration++;
+        mStrings = new ArrayList<>(newStrings);
+        warmTextLayouts(mStrings);
         notifyDataSetChanged();
     }
 
+    /**
+     * Must be called on the main thread. newStrings must not be modified afterwards.
+     */
+    public void submitStrings(final List<String> newStrings) {
+        final int generation = ++mGeneration;
+        final List<String> oldStrings = mStrings;
+
+        mDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mGeneration) {
+                    return;
+                }
+                final List<String> newList = new ArrayList<>(newStrings);
+                warmTextLayouts(newList);
+                final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new StringDiff(oldStrings, newList), false);
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        mStrings = newList;
+                        diff.dispatchUpdatesTo(SimpleStringAdapter.this);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Lays out the texts of long lists on a background thread before they are bound, see
+     * {@link TextLayoutWarmer}. Off by default.
+     */
+    public void setTextPrewarmEnabled(boolean enabled) {
+        mTextLayoutWarmer = enabled ? new TextLayoutWarmer(mDiffExecutor) : null;
+    }
+
+    private void warmTextLayouts(List<String> strings) {
+        if (mTextLayoutWarmer != null && strings.size() >= PREWARM_MIN_ROWS) {
+            mTextLayoutWarmer.warm(strings, 0);
+        }
+    }
+
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.string_list_item, parent, false);
-        return new ViewHolder(view);
+        return new ViewHolder(view, mOnRowClickListener);
     }
 
+    // Nothing in here allocates: the click listener was set once when the holder was created.
     @Override
-    public void onBindViewHolder(ViewHolder holder, final int position) {
+    public void onBindViewHolder(ViewHolder holder, int position) {
         holder.mColorDisplay.setText(mStrings.get(position));
-        holder.itemView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                Toast.makeText(mContext, mStrings.get(position), Toast.LENGTH_SHORT).show();
+        if (mTextLayoutWarmer != null) {
+            TextView textView = holder.mColorDisplay;
+            int textWidth = textView.getWidth() - textView.getTotalPaddingLeft() - textView.getTotalPaddingRight();
+            if (textWidth > 0) {
+                mTextLayoutWarmer.setRowStyle(textView.getPaint(), textWidth);
             }
-        });
+        }
     }
 
     @Override
@@ -54,13 +135,57 @@ public class SimpleStringAdapter extends RecyclerView.Adapter<SimpleStringAdapte
         return mStrings.size();
     }
 
-    public static class ViewHolder extends RecyclerView.ViewHolder {
+    public static class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
 
         public final TextView mColorDisplay;
+        private final OnRowClickListener mOnRowClickListener;
 
-        public ViewHolder(View view) {
+        ViewHolder(View view, OnRowClickListener onRowClickListener) {
             super(view);
             mColorDisplay = (TextView) view.findViewById(R.id.color_display);
+            mOnRowClickListener = onRowClickListener;
+            view.setOnClickListener(this);
+        }
+
+        // The position is looked up on click, so it is still right after rows moved around.
+        @Override
+        public void onClick(View v) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                mOnRowClickListener.onRowClick(position);
+            }
+        }
+    }
+
+    private static final class StringDiff extends DiffUtil.Callback {
+
+        private final List<String> mOld;
+        private final List<String> mNew;
+
+        StringDiff(List<String> oldStrings, List<String> newStrings) {
+            mOld = oldStrings;
+            mNew = newStrings;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.get(oldItemPosition).equals(mNew.get(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            // A string is its own identity, if it's the same item it has the same content.
+            return true;
         }
     }
 }
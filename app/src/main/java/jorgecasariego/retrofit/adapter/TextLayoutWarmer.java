@@ -0,0 +1,63 @@
+package jorgecasariego.retrofit.adapter;
+
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Lays out row texts on a background thread before they are bound.
+ *
+ * PrecomputedText only exists from API 28. Before that, the expensive part of a TextView layout
+ * (shaping and measuring glyphs) is cached process-wide by the text stack, keyed by the text and
+ * the paint. Building a StaticLayout with the row's paint off the main thread fills that cache, so
+ * the TextView's own layout on the main thread mostly hits it.
+ *
+ * Only the first {@link #MAX_WARMED_ROWS} strings are warmed: the cache is bounded and rows far
+ * away would just evict the ones about to be shown.
+ */
+class TextLayoutWarmer {
+
+    static final int MAX_WARMED_ROWS = 200;
+
+    private final Executor mExecutor;
+    private volatile TextPaint mPaint;
+    private volatile int mWidth;
+    private volatile int mGeneration;
+
+    TextLayoutWarmer(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Called with the paint and width of a bound row; nothing is warmed until we know them.
+     */
+    void setRowStyle(TextPaint paint, int width) {
+        if (mPaint == null || width != mWidth) {
+            mPaint = new TextPaint(paint);
+            mWidth = width;
+        }
+    }
+
+    void warm(final List<String> strings, final int from) {
+        final TextPaint paint = mPaint;
+        final int width = mWidth;
+        if (paint == null || width <= 0) {
+            return;
+        }
+
+        final int generation = ++mGeneration;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int to = Math.min(strings.size(), from + MAX_WARMED_ROWS);
+                for (int i = from; i < to && generation == mGeneration; i++) {
+                    String text = strings.get(i);
+                    new StaticLayout(text, paint, width, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, false);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,92 @@
+package jorgecasariego.retrofit.auth;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Adds the Authorization header, for the current token of a {@link TokenManager}, to every
+ * request. Goes with a {@link TokenAuthenticator}, which handles the 401s.
+ *
+ * When the signer allows it, signatures are kept in an LRU cache keyed by token, method and url:
+ * a list that pages through the same urls over and over doesn't compute them again.
+ */
+public class AuthInterceptor implements Interceptor {
+
+    public static final String HEADER = "Authorization";
+    static final int SIGNATURE_CACHE_SIZE = 128;
+
+    private final TokenManager mTokens;
+    private final RequestSigner mSigner;
+    private final Map<String, String> mSignatures =
+            new LinkedHashMap<String, String>(SIGNATURE_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > SIGNATURE_CACHE_SIZE;
+                }
+            };
+    private int mSignatureCount;
+
+    public AuthInterceptor(TokenManager tokens) {
+        this(tokens, RequestSigner.BEARER);
+    }
+
+    public AuthInterceptor(TokenManager tokens, RequestSigner signer) {
+        mTokens = tokens;
+        mSigner = signer;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        // A request that brings its own credentials keeps them.
+        if (request.header(HEADER) != null) {
+            return chain.proceed(request);
+        }
+        return chain.proceed(authorize(request, mTokens.getToken()));
+    }
+
+    public TokenManager getTokenManager() {
+        return mTokens;
+    }
+
+    /** How many signatures were computed, the cached ones don't count. */
+    public synchronized int getSignatureCount() {
+        return mSignatureCount;
+    }
+
+    Request authorize(Request request, AuthToken token) {
+        return request.newBuilder().header(HEADER, signature(request, token)).build();
+    }
+
+    /**
+     * @return true if request was sent with the given token.
+     */
+    boolean wasSentWith(Request request, AuthToken token) {
+        return token != null && signature(request, token).equals(request.header(HEADER));
+    }
+
+    private String signature(Request request, AuthToken token) {
+        if (!mSigner.isCacheable()) {
+            return mSigner.sign(token, request);
+        }
+        String key = token.getValue() + ' ' + request.method() + ' ' + request.url();
+        synchronized (this) {
+            String signature = mSignatures.get(key);
+            if (signature != null) {
+                return signature;
+            }
+        }
+        // Computed outside of the lock: two threads may both sign the same request, that's fine.
+        String signature = mSigner.sign(token, request);
+        synchronized (this) {
+            mSignatures.put(key, signature);
+            mSignatureCount++;
+        }
+        return signature;
+    }
+}
@@ -0,0 +1,40 @@
+package jorgecasariego.retrofit.auth;
+
+/**
+ * A short lived access token and the moment it stops being accepted.
+ */
+public final class AuthToken {
+
+    private final String mValue;
+    private final long mExpiresAtMillis;
+
+    /**
+     * @param expiresAtMillis wall clock time, System.currentTimeMillis() based.
+     */
+    public AuthToken(String value, long expiresAtMillis) {
+        mValue = value;
+        mExpiresAtMillis = expiresAtMillis;
+    }
+
+    public String getValue() {
+        return mValue;
+    }
+
+    public long getExpiresAtMillis() {
+        return mExpiresAtMillis;
+    }
+
+    boolean isExpired(long nowMillis) {
+        return nowMillis >= mExpiresAtMillis;
+    }
+
+    boolean expiresWithin(long nowMillis, long millis) {
+        return nowMillis + millis >= mExpiresAtMillis;
+    }
+
+    // Never the token itself, it ends up in logs.
+    @Override
+    public String toString() {
+        return "AuthToken(expires at " + mExpiresAtMillis + ")";
+    }
+}
@@ -0,0 +1,65 @@
+package jorgecasariego.retrofit.auth;
+
+import java.security.GeneralSecurityException;
+import java.util.Locale;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import okhttp3.Request;
+import okio.ByteString;
+
+/**
+ * Turns a token into the Authorization header of one request.
+ */
+public interface RequestSigner {
+
+    /**
+     * @return the value of the Authorization header.
+     */
+    String sign(AuthToken token, Request request);
+
+    /**
+     * @return true if the same token and request always give the same header, so it can be
+     *         cached. Not for schemes that put a timestamp or a nonce in every signature, like Hawk.
+     */
+    boolean isCacheable();
+
+    /** Authorization: Bearer <token>. Nothing to compute, so nothing to cache. */
+    RequestSigner BEARER = new RequestSigner() {
+        @Override
+        public String sign(AuthToken token, Request request) {
+            return "Bearer " + token.getValue();
+        }
+
+        @Override
+        public boolean isCacheable() {
+            return false;
+        }
+    };
+
+    /**
+     * Authorization: HMAC-SHA256 <base64 of the HMAC of "METHOD url", keyed with the token>.
+     * There is no timestamp in it (the token already expires), so a signature can be reused
+     * for as long as its token lives.
+     */
+    RequestSigner HMAC_SHA256 = new RequestSigner() {
+        @Override
+        public String sign(AuthToken token, Request request) {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(ByteString.encodeUtf8(token.getValue()).toByteArray(), "HmacSHA256"));
+                String message = request.method().toUpperCase(Locale.US) + " " + request.url();
+                byte[] signature = mac.doFinal(ByteString.encodeUtf8(message).toByteArray());
+                return "HMAC-SHA256 " + ByteString.of(signature).base64();
+            } catch (GeneralSecurityException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        public boolean isCacheable() {
+            return true;
+        }
+    };
+}
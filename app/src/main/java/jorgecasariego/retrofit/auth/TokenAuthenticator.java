@@ -0,0 +1,38 @@
+package jorgecasariego.retrofit.auth;
+
+import java.io.IOException;
+
+import okhttp3.Authenticator;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.Route;
+
+/**
+ * Answers a 401 by trying once more with a new token.
+ *
+ * If the rejected token is still the current one, the {@link TokenManager} fetches a new one,
+ * once for all the calls that got a 401 for it. If it was replaced while the request was out,
+ * the request is just sent again with the new token.
+ */
+public class TokenAuthenticator implements Authenticator {
+
+    private final AuthInterceptor mInterceptor;
+
+    public TokenAuthenticator(AuthInterceptor interceptor) {
+        mInterceptor = interceptor;
+    }
+
+    @Override
+    public Request authenticate(Route route, Response response) throws IOException {
+        // Rejected with a fresh token too: asking again won't help.
+        if (response.priorResponse() != null) {
+            return null;
+        }
+        Request request = response.request();
+        TokenManager tokens = mInterceptor.getTokenManager();
+        AuthToken current = tokens.peekToken();
+        AuthToken rejected = mInterceptor.wasSentWith(request, current) ? current : null;
+        AuthToken token = tokens.onTokenRejected(rejected);
+        return mInterceptor.authorize(request, token);
+    }
+}
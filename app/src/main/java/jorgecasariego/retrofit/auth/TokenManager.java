@@ -0,0 +1,177 @@
+package jorgecasariego.retrofit.auth;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Hands out the current access token and gets a new one before the old one expires.
+ *
+ * Without it, when a short lived token expires every call in flight gets a 401, and every one of
+ * them asks for a new token: dozens of refreshes for one expiry. Here:
+ *
+ *  - Once less than refreshAheadMillis of the token are left, the first caller starts a refresh
+ *    in the background and everybody keeps using the current token, which is still good. Most of
+ *    the time nobody ever waits for a refresh.
+ *  - When the token did expire (the app slept through the refresh), or the server rejected it,
+ *    callers wait for a refresh instead of sending it.
+ *  - There is never more than one refresh running. Whoever needs one while it runs waits for
+ *    that one.
+ *
+ * Refreshes run on an executor of their own: the callers waiting for them are OkHttp threads, and
+ * if the refresh needed one of those (AppSchedulers.io() is bounded) it could wait forever.
+ */
+public class TokenManager {
+
+    public static final long DEFAULT_REFRESH_AHEAD_MILLIS = 60000;
+
+    /**
+     * Gets a new token from the server. Called on the refresh executor, never twice at a time.
+     */
+    public interface TokenSource {
+        AuthToken fetchToken() throws IOException;
+    }
+
+    private final TokenSource mSource;
+    private final long mRefreshAheadMillis;
+    private final Executor mExecutor;
+    private AuthToken mToken;
+    private Refresh mRefresh;
+    private int mRefreshCount;
+
+    public TokenManager(TokenSource source) {
+        this(source, DEFAULT_REFRESH_AHEAD_MILLIS, Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "token-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }));
+    }
+
+    public TokenManager(TokenSource source, long refreshAheadMillis, Executor executor) {
+        mSource = source;
+        mRefreshAheadMillis = refreshAheadMillis;
+        mExecutor = executor;
+    }
+
+    /**
+     * @return a token that hasn't expired, waiting for a refresh if there is none.
+     */
+    public AuthToken getToken() throws IOException {
+        Refresh refresh;
+        synchronized (this) {
+            long now = now();
+            if (mToken != null && !mToken.isExpired(now)) {
+                if (mToken.expiresWithin(now, mRefreshAheadMillis)) {
+                    startRefresh();
+                }
+                return mToken;
+            }
+            refresh = startRefresh();
+        }
+        return refresh.await();
+    }
+
+    /**
+     * The server said no to a token. If it is still the current one, it isn't handed out anymore
+     * and a new one is fetched; if somebody replaced it in the meantime, that's the answer.
+     *
+     * @return the token to try again with.
+     */
+    public AuthToken onTokenRejected(AuthToken rejected) throws IOException {
+        Refresh refresh;
+        synchronized (this) {
+            if (mToken != null && mToken != rejected && !mToken.isExpired(now())) {
+                return mToken;
+            }
+            if (mToken == rejected) {
+                mToken = null;
+            }
+            refresh = startRefresh();
+        }
+        return refresh.await();
+    }
+
+    /**
+     * @return the current token, or null. Never waits, never refreshes.
+     */
+    public synchronized AuthToken peekToken() {
+        return mToken;
+    }
+
+    /** How many times the TokenSource was asked for a token. */
+    public synchronized int getRefreshCount() {
+        return mRefreshCount;
+    }
+
+    // Holds the lock.
+    private Refresh startRefresh() {
+        if (mRefresh != null) {
+            return mRefresh;
+        }
+        final Refresh refresh = new Refresh();
+        mRefresh = refresh;
+        mRefreshCount++;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                AuthToken token = null;
+                IOException error = null;
+                try {
+                    token = mSource.fetchToken();
+                    if (token == null) {
+                        error = new IOException("The token source gave no token");
+                    }
+                } catch (IOException e) {
+                    error = e;
+                } catch (RuntimeException e) {
+                    error = new IOException("Token refresh failed", e);
+                }
+                synchronized (TokenManager.this) {
+                    if (token != null) {
+                        mToken = token;
+                    }
+                    mRefresh = null;
+                }
+                refresh.finish(token, error);
+            }
+        });
+        return refresh;
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private static final class Refresh {
+
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private AuthToken mToken;
+        private IOException mError;
+
+        void finish(AuthToken token, IOException error) {
+            mToken = token;
+            mError = error;
+            mDone.countDown();
+        }
+
+        AuthToken await() throws IOException {
+            try {
+                mDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a token");
+            }
+            if (mError != null) {
+                // A new exception for every waiter, with the stack trace of the waiter.
+                throw new IOException("Token refresh failed", mError);
+            }
+            return mToken;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package jorgecasariego.retrofit.cache;
+
+/**
+ * The file format of a list of GitHubRepo kept on disk, written by {@link RepoSnapshotWriter} and
+ * read by {@link RepoSnapshotReader}.
+ *
+ * A JSON copy of the list would have to go through Gson, whole, before the first row can be
+ * shown. This one is made to be memory mapped and read a row at a time: the rows are stored in
+ * blocks, and an index at the start says where every block is, so reading row 5000 only touches
+ * the header, the index and one block.
+ *
+ *  header   magic "GHRS" | version | created at (ms) | item count | items per block | block count
+ *  index    per block: offset in the file | stored length | raw length | codec
+ *  blocks   the blocks, one after the other
+ *
+ * A raw block starts with the offset of every one of its items, relative to the end of those
+ * offsets, then the items:
+ *
+ *  item     id | name length in bytes (-1: null) | name in UTF-8
+ *
+ * A block is stored as it is (CODEC_RAW) or deflated (CODEC_DEFLATE), each block on its own, so
+ * reading one item inflates one block and not the whole file. Every number is a big endian int,
+ * except the created at, a long. A file of another version is not read at all: the snapshot is a
+ * cache, the list is fetched again.
+ */
+final class RepoSnapshot {
+
+    static final int MAGIC = 0x47485253;
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4 + 4;
+    static final int INDEX_ENTRY_BYTES = 4 * 4;
+
+    static final int CODEC_RAW = 0;
+    static final int CODEC_DEFLATE = 1;
+
+    static final int NULL_LENGTH = -1;
+
+    private RepoSnapshot() {
+    }
+}
@@ -0,0 +1,178 @@
+package jorgecasariego.retrofit.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import jorgecasariego.retrofit.model.GitHubRepo;
+import jorgecasariego.retrofit.model.StringPool;
+
+/**
+ * A {@link RepoSnapshot} file as a read only list, for an adapter to show while the network is
+ * still being asked.
+ *
+ * open() maps the file into memory and only checks its header and index, whatever its size.
+ * get() decodes the one repo asked for, from the mapped file for a raw block. The last
+ * CACHED_BLOCKS deflated blocks read are kept inflated, the rows on screen come from a few of
+ * them. The repos aren't kept: every get() returns a new GitHubRepo, but its name comes from a
+ * {@link StringPool}, straight from the bytes when the pool has it already.
+ *
+ * Safe to read from any thread. The mapping is released when the reader is garbage collected.
+ */
+public class RepoSnapshotReader extends AbstractList<GitHubRepo> {
+
+    static final int CACHED_BLOCKS = 4;
+
+    private final ByteBuffer mFile;
+    private final StringPool mStrings;
+    private final long mCreatedAtMillis;
+    private final int mSize;
+    private final int mItemsPerBlock;
+    private final int mBlockCount;
+    private final Map<Integer, ByteBuffer> mInflated = new LinkedHashMap<Integer, ByteBuffer>(CACHED_BLOCKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, ByteBuffer> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    /**
+     * Same as open(file, StringPool.shared()).
+     */
+    public static RepoSnapshotReader open(File file) throws IOException {
+        return open(file, StringPool.shared());
+    }
+
+    /**
+     * @throws IOException if the file can't be read, isn't a snapshot, or is of another version.
+     */
+    public static RepoSnapshotReader open(File file, StringPool strings) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            if (size < RepoSnapshot.HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a repo snapshot: " + file);
+            }
+            // The mapping stays valid after the channel is closed.
+            return new RepoSnapshotReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), file, strings);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private RepoSnapshotReader(ByteBuffer file, File path, StringPool strings) throws IOException {
+        mFile = file;
+        mStrings = strings;
+        if (file.getInt(0) != RepoSnapshot.MAGIC) {
+            throw new IOException("Not a repo snapshot: " + path);
+        }
+        int version = file.getInt(4);
+        if (version != RepoSnapshot.VERSION) {
+            throw new IOException("Repo snapshot version " + version + ", expected " + RepoSnapshot.VERSION + ": " + path);
+        }
+        mCreatedAtMillis = file.getLong(8);
+        mSize = file.getInt(16);
+        mItemsPerBlock = file.getInt(20);
+        mBlockCount = file.getInt(24);
+        if (mSize < 0 || mItemsPerBlock <= 0 || mBlockCount != (mSize + mItemsPerBlock - 1) / mItemsPerBlock
+                || RepoSnapshot.HEADER_BYTES + (long) mBlockCount * RepoSnapshot.INDEX_ENTRY_BYTES > file.capacity()) {
+            throw new IOException("Corrupt repo snapshot: " + path);
+        }
+        for (int block = 0; block < mBlockCount; block++) {
+            int entry = indexEntry(block);
+            long end = (long) file.getInt(entry) + file.getInt(entry + 4);
+            int codec = file.getInt(entry + 12);
+            if (end > file.capacity() || (codec != RepoSnapshot.CODEC_RAW && codec != RepoSnapshot.CODEC_DEFLATE)) {
+                throw new IOException("Corrupt repo snapshot: " + path);
+            }
+        }
+    }
+
+    /** When the snapshot was written. */
+    public long getCreatedAtMillis() {
+        return mCreatedAtMillis;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public GitHubRepo get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+        }
+        int block = index / mItemsPerBlock;
+        int itemsInBlock = Math.min(mItemsPerBlock, mSize - block * mItemsPerBlock);
+        ByteBuffer data = block(block);
+        int position = itemsInBlock * 4 + data.getInt((index % mItemsPerBlock) * 4);
+
+        GitHubRepo repo = new GitHubRepo();
+        repo.setId(data.getInt(position));
+        int nameLength = data.getInt(position + 4);
+        if (nameLength != RepoSnapshot.NULL_LENGTH) {
+            repo.setName(mStrings.intern(data, position + 8, nameLength));
+        }
+        return repo;
+    }
+
+    private static int indexEntry(int block) {
+        return RepoSnapshot.HEADER_BYTES + block * RepoSnapshot.INDEX_ENTRY_BYTES;
+    }
+
+    private ByteBuffer block(int block) {
+        int entry = indexEntry(block);
+        int offset = mFile.getInt(entry);
+        int storedLength = mFile.getInt(entry + 4);
+        ByteBuffer stored = mFile.duplicate();
+        stored.position(offset);
+        stored.limit(offset + storedLength);
+        if (mFile.getInt(entry + 12) == RepoSnapshot.CODEC_RAW) {
+            return stored.slice();
+        }
+
+        synchronized (mInflated) {
+            ByteBuffer inflated = mInflated.get(block);
+            if (inflated == null) {
+                inflated = inflate(stored, mFile.getInt(entry + 8));
+                mInflated.put(block, inflated);
+            }
+            return inflated;
+        }
+    }
+
+    private static ByteBuffer inflate(ByteBuffer stored, int rawLength) {
+        byte[] input = new byte[stored.remaining()];
+        stored.get(input);
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawLength) {
+                throw new IllegalStateException("Corrupt repo snapshot block");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt repo snapshot block", e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(raw);
+    }
+}
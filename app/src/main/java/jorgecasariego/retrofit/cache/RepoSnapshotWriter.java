@@ -0,0 +1,205 @@
+package jorgecasariego.retrofit.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import jorgecasariego.retrofit.model.GitHubRepo;
+import jorgecasariego.retrofit.rx.AppSchedulers;
+import rx.Scheduler;
+import rx.functions.Action0;
+
+/**
+ * Keeps a {@link RepoSnapshot} of a repo list on disk, written off the main thread.
+ *
+ * save() only takes a copy of the list: the file is written on the scheduler, one write at a
+ * time. Lists saved while a write is waiting replace each other, only the latest one is written.
+ *
+ * A snapshot is written next to the file and renamed over it once complete, so a reader only
+ * ever sees a whole snapshot, the old one or the new one. A reader that mapped the old file keeps
+ * reading it: the rename doesn't change what is mapped. A failed write leaves the old snapshot.
+ */
+public class RepoSnapshotWriter {
+
+    public static final int DEFAULT_ITEMS_PER_BLOCK = 64;
+
+    private final File mFile;
+    private final boolean mCompress;
+    private final Scheduler.Worker mWorker;
+    private List<GitHubRepo> mPending;
+    private int mWriteCount;
+    private IOException mLastError;
+
+    public RepoSnapshotWriter(File file, boolean compress) {
+        this(file, compress, AppSchedulers.io());
+    }
+
+    /**
+     * @param compress  deflate the blocks that get smaller with it. Smaller files, but reading a
+     *                  row inflates its block first.
+     * @param scheduler writes the file.
+     */
+    public RepoSnapshotWriter(File file, boolean compress, Scheduler scheduler) {
+        mFile = file;
+        mCompress = compress;
+        mWorker = scheduler.createWorker();
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public void save(List<GitHubRepo> repos) {
+        boolean schedule;
+        synchronized (this) {
+            schedule = mPending == null;
+            mPending = new ArrayList<>(repos);
+        }
+        if (schedule) {
+            mWorker.schedule(new Action0() {
+                @Override
+                public void call() {
+                    writePending();
+                }
+            });
+        }
+    }
+
+    /** How many snapshots were written. */
+    public synchronized int getWriteCount() {
+        return mWriteCount;
+    }
+
+    /** Why the last write failed, null if it didn't. */
+    public synchronized IOException getLastError() {
+        return mLastError;
+    }
+
+    private void writePending() {
+        List<GitHubRepo> repos;
+        synchronized (this) {
+            repos = mPending;
+            mPending = null;
+        }
+        IOException error = null;
+        try {
+            write(mFile, repos, mCompress, DEFAULT_ITEMS_PER_BLOCK, System.currentTimeMillis());
+        } catch (IOException e) {
+            error = e;
+        }
+        synchronized (this) {
+            mLastError = error;
+            if (error == null) {
+                mWriteCount++;
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot on the calling thread.
+     */
+    public static void write(File file, List<GitHubRepo> repos, boolean compress, int itemsPerBlock,
+                             long createdAtMillis) throws IOException {
+        int blockCount = (repos.size() + itemsPerBlock - 1) / itemsPerBlock;
+        byte[][] blocks = new byte[blockCount][];
+        int[] rawLengths = new int[blockCount];
+        int[] codecs = new int[blockCount];
+        Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            for (int block = 0; block < blockCount; block++) {
+                int from = block * itemsPerBlock;
+                byte[] raw = encodeBlock(repos.subList(from, Math.min(from + itemsPerBlock, repos.size())));
+                rawLengths[block] = raw.length;
+                blocks[block] = raw;
+                codecs[block] = RepoSnapshot.CODEC_RAW;
+                if (deflater != null) {
+                    byte[] deflated = deflate(deflater, raw);
+                    if (deflated.length < raw.length) {
+                        blocks[block] = deflated;
+                        codecs[block] = RepoSnapshot.CODEC_DEFLATE;
+                    }
+                }
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream fileOut = new FileOutputStream(tmp);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(RepoSnapshot.MAGIC);
+            out.writeInt(RepoSnapshot.VERSION);
+            out.writeLong(createdAtMillis);
+            out.writeInt(repos.size());
+            out.writeInt(itemsPerBlock);
+            out.writeInt(blockCount);
+            int offset = RepoSnapshot.HEADER_BYTES + blockCount * RepoSnapshot.INDEX_ENTRY_BYTES;
+            for (int block = 0; block < blockCount; block++) {
+                out.writeInt(offset);
+                out.writeInt(blocks[block].length);
+                out.writeInt(rawLengths[block]);
+                out.writeInt(codecs[block]);
+                offset += blocks[block].length;
+            }
+            for (byte[] block : blocks) {
+                out.write(block);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            fileOut.close();
+            tmp.delete();
+            throw e;
+        }
+        fileOut.close();
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private static byte[] encodeBlock(List<GitHubRepo> repos) throws IOException {
+        byte[][] names = new byte[repos.size()][];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int offset = 0;
+        for (int i = 0; i < repos.size(); i++) {
+            String name = repos.get(i).getName();
+            names[i] = name != null ? name.getBytes(StandardCharsets.UTF_8) : null;
+            out.writeInt(offset);
+            offset += 4 + 4 + (names[i] != null ? names[i].length : 0);
+        }
+        for (int i = 0; i < repos.size(); i++) {
+            out.writeInt(repos.get(i).getId());
+            if (names[i] == null) {
+                out.writeInt(RepoSnapshot.NULL_LENGTH);
+            } else {
+                out.writeInt(names[i].length);
+                out.write(names[i]);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream(raw.length / 2 + 16);
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            deflated.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return deflated.toByteArray();
+    }
+}
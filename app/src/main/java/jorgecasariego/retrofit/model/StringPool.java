@@ -0,0 +1,292 @@
+package jorgecasariego.retrofit.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Gives the same String instance for equal strings, so a repo name fetched fifty times is kept
+ * in memory once.
+ *
+ * Every refresh of a repo list decodes its names, and later its owners, languages and licenses,
+ * into new Strings, equal to the ones of the lists still held (pages, snapshots, the previous
+ * refresh). intern() returns the instance the pool already has instead:
+ *
+ *  - Weak: the pool doesn't keep a string alive. Once no list uses it any more it is collected,
+ *    and its entry goes with it.
+ *  - Bounded: at most maxSize strings, and none longer than MAX_LENGTH chars (descriptions, say,
+ *    are rarely repeated). Past that, strings are returned as they are.
+ *  - From bytes: intern(ByteBuffer, ...) looks the UTF-8 bytes up without decoding them, and
+ *    only creates a String for one the pool doesn't have.
+ *
+ * String.intern() would do the first, but never forgets a string and can't start from bytes.
+ * Thread safe.
+ */
+public final class StringPool {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    static final int MAX_LENGTH = 128;
+
+    // What a hash over bytes that aren't valid UTF-8 returns: those go through new String().
+    private static final long MALFORMED = Long.MAX_VALUE;
+
+    private static final StringPool sShared = new StringPool(DEFAULT_MAX_SIZE);
+
+    private final Entry[] mTable;
+    private final int mMaxSize;
+    private final ReferenceQueue<String> mCollected = new ReferenceQueue<>();
+    private int mSize;
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * The pool of the Gson converter of ServiceGenerator and of the repo snapshots.
+     */
+    public static StringPool shared() {
+        return sShared;
+    }
+
+    public StringPool(int maxSize) {
+        mMaxSize = maxSize;
+        // A power of two, at most 3/4 full.
+        mTable = new Entry[Integer.highestOneBit(Math.max(1, maxSize * 4 / 3)) * 2];
+    }
+
+    /**
+     * @return the pool's instance equal to s, s itself if there is none (it is now).
+     */
+    public String intern(String s) {
+        if (s == null || s.length() > MAX_LENGTH) {
+            return s;
+        }
+        int hash = s.hashCode();
+        synchronized (this) {
+            expungeCollected();
+            for (Entry entry = mTable[index(hash)]; entry != null; entry = entry.mNext) {
+                String pooled = entry.get();
+                if (entry.mHash == hash && s.equals(pooled)) {
+                    mHits++;
+                    return pooled;
+                }
+            }
+            add(s, hash);
+            return s;
+        }
+    }
+
+    /**
+     * The string of length UTF-8 bytes at position of utf8, decoded only if the pool doesn't
+     * have it. The position and limit of utf8 aren't changed.
+     */
+    public String intern(ByteBuffer utf8, int position, int length) {
+        long hash = length <= MAX_LENGTH * 4 ? utf8HashCode(utf8, position, length) : MALFORMED;
+        if (hash != MALFORMED) {
+            synchronized (this) {
+                expungeCollected();
+                for (Entry entry = mTable[index((int) hash)]; entry != null; entry = entry.mNext) {
+                    String pooled = entry.get();
+                    if (entry.mHash == (int) hash && pooled != null && utf8Equals(pooled, utf8, position, length)) {
+                        mHits++;
+                        return pooled;
+                    }
+                }
+            }
+        }
+        return intern(decode(utf8, position, length));
+    }
+
+    /**
+     * A Gson adapter for every String field that goes through the pool. JsonReader only hands
+     * out Strings, so those are decoded first and the duplicates are garbage right away.
+     */
+    public TypeAdapter<String> typeAdapter() {
+        return new TypeAdapter<String>() {
+            @Override
+            public void write(JsonWriter out, String value) throws IOException {
+                out.value(value);
+            }
+
+            @Override
+            public String read(JsonReader in) throws IOException {
+                // Same as Gson's own String adapter.
+                JsonToken token = in.peek();
+                if (token == JsonToken.NULL) {
+                    in.nextNull();
+                    return null;
+                }
+                if (token == JsonToken.BOOLEAN) {
+                    return Boolean.toString(in.nextBoolean());
+                }
+                return intern(in.nextString());
+            }
+        };
+    }
+
+    /** How many strings the pool has. */
+    public synchronized int size() {
+        expungeCollected();
+        return mSize;
+    }
+
+    /** How many times intern() returned an instance it already had. */
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    /** How many times it didn't. */
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    // Holds the lock.
+    private void add(String s, int hash) {
+        mMisses++;
+        if (mSize >= mMaxSize) {
+            return;
+        }
+        int index = index(hash);
+        mTable[index] = new Entry(s, hash, mTable[index], mCollected);
+        mSize++;
+    }
+
+    // Holds the lock.
+    private void expungeCollected() {
+        Entry collected;
+        while ((collected = (Entry) mCollected.poll()) != null) {
+            int index = index(collected.mHash);
+            Entry previous = null;
+            for (Entry entry = mTable[index]; entry != null; previous = entry, entry = entry.mNext) {
+                if (entry == collected) {
+                    if (previous == null) {
+                        mTable[index] = entry.mNext;
+                    } else {
+                        previous.mNext = entry.mNext;
+                    }
+                    mSize--;
+                    break;
+                }
+            }
+        }
+    }
+
+    private int index(int hash) {
+        return (hash ^ (hash >>> 16)) & (mTable.length - 1);
+    }
+
+    private static String decode(ByteBuffer utf8, int position, int length) {
+        if (utf8.hasArray()) {
+            return new String(utf8.array(), utf8.arrayOffset() + position, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer source = utf8.duplicate();
+        source.position(position);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return what String.hashCode() of the decoded bytes is, or MALFORMED.
+     */
+    private static long utf8HashCode(ByteBuffer utf8, int position, int length) {
+        int hash = 0;
+        int end = position + length;
+        for (int i = position; i < end; ) {
+            int decoded = codePointAt(utf8, i, end);
+            if (decoded == -1) {
+                return MALFORMED;
+            }
+            int codePoint = decoded >>> 3;
+            if (Character.isBmpCodePoint(codePoint)) {
+                hash = 31 * hash + codePoint;
+            } else {
+                hash = 31 * hash + Character.highSurrogate(codePoint);
+                hash = 31 * hash + Character.lowSurrogate(codePoint);
+            }
+            i += decoded & 7;
+        }
+        return hash;
+    }
+
+    private static boolean utf8Equals(String s, ByteBuffer utf8, int position, int length) {
+        int end = position + length;
+        int charIndex = 0;
+        for (int i = position; i < end; ) {
+            int decoded = codePointAt(utf8, i, end);
+            int codePoint = decoded >>> 3;
+            if (Character.isBmpCodePoint(codePoint)) {
+                if (charIndex >= s.length() || s.charAt(charIndex++) != codePoint) {
+                    return false;
+                }
+            } else if (charIndex + 1 >= s.length()
+                    || s.charAt(charIndex++) != Character.highSurrogate(codePoint)
+                    || s.charAt(charIndex++) != Character.lowSurrogate(codePoint)) {
+                return false;
+            }
+            i += decoded & 7;
+        }
+        return charIndex == s.length();
+    }
+
+    /**
+     * @return the code point at i and how many bytes it takes, as (code point << 3) | bytes, or
+     * -1 if the bytes aren't well formed UTF-8 (new String() replaces those, leave them to it).
+     */
+    private static int codePointAt(ByteBuffer utf8, int i, int end) {
+        int first = utf8.get(i) & 0xff;
+        if (first < 0x80) {
+            return first << 3 | 1;
+        }
+        int bytes;
+        int codePoint;
+        int min;
+        if ((first & 0xe0) == 0xc0) {
+            bytes = 2;
+            codePoint = first & 0x1f;
+            min = 0x80;
+        } else if ((first & 0xf0) == 0xe0) {
+            bytes = 3;
+            codePoint = first & 0x0f;
+            min = 0x800;
+        } else if ((first & 0xf8) == 0xf0) {
+            bytes = 4;
+            codePoint = first & 0x07;
+            min = 0x10000;
+        } else {
+            return -1;
+        }
+        if (i + bytes > end) {
+            return -1;
+        }
+        for (int k = 1; k < bytes; k++) {
+            int next = utf8.get(i + k) & 0xff;
+            if ((next & 0xc0) != 0x80) {
+                return -1;
+            }
+            codePoint = codePoint << 6 | (next & 0x3f);
+        }
+        if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            return -1;
+        }
+        return codePoint << 3 | bytes;
+    }
+
+    private static final class Entry extends WeakReference<String> {
+
+        final int mHash;
+        Entry mNext;
+
+        Entry(String s, int hash, Entry next, ReferenceQueue<String> queue) {
+            super(s, queue);
+            mHash = hash;
+            mNext = next;
+        }
+    }
+}
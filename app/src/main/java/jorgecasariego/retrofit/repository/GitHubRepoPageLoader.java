@@ -0,0 +1,86 @@
+package jorgecasariego.retrofit.repository;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jorgecasariego.retrofit.Deadline;
+import jorgecasariego.retrofit.GitHubClient;
+import jorgecasariego.retrofit.model.GitHubRepo;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Loads the repos of a user page by page for a {@link PagedList}.
+ *
+ * GitHub tells how many pages there are in the Link header of every page but the last one:
+ * Link: <https://api.github.com/user/1/repos?page=2&per_page=50>; rel="next",
+ *       <https://api.github.com/user/1/repos?page=34&per_page=50>; rel="last"
+ * and a page without rel="next" (or without a Link header at all) is the last one.
+ */
+public class GitHubRepoPageLoader implements PagedList.PageLoader<GitHubRepo> {
+
+    // Whole page loads, queueing, retries and redirects included.
+    static final long PAGE_DEADLINE_SECONDS = 10;
+    static final long PREFETCH_DEADLINE_SECONDS = 30;
+
+    private static final Pattern NEXT_PAGE = Pattern.compile("rel=\"next\"");
+    private static final Pattern LAST_PAGE = Pattern.compile("[?&]page=(\\d+)[^>]*>;\\s*rel=\"last\"");
+
+    private final GitHubClient mClient;
+    private final String mUser;
+
+    public GitHubRepoPageLoader(GitHubClient client, String user) {
+        mClient = client;
+        mUser = user;
+    }
+
+    @Override
+    public Subscription loadPage(final int page, int pageSize, boolean prefetch,
+                                 final PagedList.PageCallback<GitHubRepo> callback) {
+        // GitHub counts pages from 1. Prefetches go out with a background priority, and may wait
+        // longer behind the pages the user is looking at.
+        final Call<List<GitHubRepo>> call = prefetch
+                ? mClient.prefetchReposForUser(mUser, page + 1, pageSize,
+                        Deadline.after(PREFETCH_DEADLINE_SECONDS, TimeUnit.SECONDS))
+                : mClient.reposForUser(mUser, page + 1, pageSize,
+                        Deadline.after(PAGE_DEADLINE_SECONDS, TimeUnit.SECONDS));
+        call.enqueue(new Callback<List<GitHubRepo>>() {
+            @Override
+            public void onResponse(Call<List<GitHubRepo>> call, Response<List<GitHubRepo>> response) {
+                if (!response.isSuccessful() || response.body() == null) {
+                    callback.onError(new IllegalStateException("HTTP " + response.code()));
+                    return;
+                }
+                callback.onPageLoaded(response.body(), parsePageCount(page, response.headers().get("Link")));
+            }
+
+            @Override
+            public void onFailure(Call<List<GitHubRepo>> call, Throwable t) {
+                callback.onError(t);
+            }
+        });
+        return Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                call.cancel();
+            }
+        });
+    }
+
+    /**
+     * @return the number of pages, or -1 if the Link header of this (0 based) page doesn't say.
+     */
+    static int parsePageCount(int page, String linkHeader) {
+        if (linkHeader == null || !NEXT_PAGE.matcher(linkHeader).find()) {
+            return page + 1;
+        }
+        Matcher matcher = LAST_PAGE.matcher(linkHeader);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+}
@@ -0,0 +1,297 @@
+package jorgecasariego.retrofit.repository;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import rx.Subscription;
+
+/**
+ * A list that loads its items one page at a time, as they are read, and only keeps the pages
+ * around the one read last.
+ *
+ *  - get() returns null for an item whose page isn't loaded yet (a placeholder) and starts loading
+ *    that page and prefetchDistance pages on each side of it (1 unless setPrefetchDistance()).
+ *  - size() counts the placeholders too. It is exact once the last page was seen, until then it
+ *    is the page count the server announced, or one page past the last full page.
+ *  - A page still being prefetched when get() reads it is loaded again as a page the user waits
+ *    for: the prefetch is cancelled, it would keep its background priority and longer deadline.
+ *  - Pages further than (maxPages - 1) / 2 from the page read last are dropped. Reading them
+ *    again just loads them again, so memory depends on maxPages and not on how long the list is.
+ *
+ * Not thread safe: call it, and deliver page callbacks, on the main thread. Retrofit's enqueue()
+ * already calls back on it.
+ */
+public class PagedList<T> extends AbstractList<T> {
+
+    public interface PageLoader<T> {
+        /**
+         * Loads a page (the first one is 0) and reports it to the callback exactly once, later on
+         * the main thread: never from inside this call, which can happen in the middle of a bind.
+         *
+         * @param prefetch true for the pages next to the one read, which nobody is looking at yet.
+         * @return cancels the load. The callback may still be called afterwards, it is ignored.
+         */
+        Subscription loadPage(int page, int pageSize, boolean prefetch, PageCallback<T> callback);
+    }
+
+    public interface PageCallback<T> {
+        /**
+         * @param pageCount how many pages the list has, or -1 if the server didn't say.
+         */
+        void onPageLoaded(List<T> items, int pageCount);
+
+        void onError(Throwable t);
+    }
+
+    /**
+     * Mirrors RecyclerView.Adapter's notify methods, so an adapter can forward them as they are.
+     */
+    public interface Listener {
+        void onItemRangeInserted(int positionStart, int itemCount);
+
+        void onItemRangeRemoved(int positionStart, int itemCount);
+
+        void onItemRangeChanged(int positionStart, int itemCount);
+
+        void onLoadError(int page, Throwable t);
+    }
+
+    private final PageLoader<T> mLoader;
+    private final int mPageSize;
+    private final int mMaxPages;
+    private final Map<Integer, List<T>> mPages = new HashMap<>();
+    private final Map<Integer, PageLoad> mLoading = new HashMap<>();
+
+    private Listener mListener;
+    private int mSize;
+    private boolean mSizeIsExact;
+    private int mLastReadPage;
+    private int mLoadCount;
+    private int mPrefetchDistance = 1;
+
+    /**
+     * @param maxPages how many pages to keep in memory at most, at least 3 (the page read last and
+     *                 one on each side).
+     */
+    public PagedList(PageLoader<T> loader, int pageSize, int maxPages) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize <= 0");
+        }
+        if (maxPages < 3) {
+            throw new IllegalArgumentException("maxPages < 3");
+        }
+        mLoader = loader;
+        mPageSize = pageSize;
+        mMaxPages = maxPages;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * How many pages on each side of the one read are loaded ahead, 0 for none. Pages that would
+     * be dropped right away aren't prefetched, so it is at most (maxPages - 1) / 2.
+     */
+    public void setPrefetchDistance(int prefetchDistance) {
+        if (prefetchDistance < 0) {
+            throw new IllegalArgumentException("prefetchDistance < 0");
+        }
+        mPrefetchDistance = Math.min(prefetchDistance, (mMaxPages - 1) / 2);
+    }
+
+    /**
+     * Cancels every page still loading and forgets the listener: call it when whoever shows the
+     * list goes away, e.g. in onDestroy(). Answers already on their way are ignored. The pages in
+     * memory stay, reading any other one loads it again.
+     */
+    public void cancel() {
+        mListener = null;
+        List<PageLoad> loads = new ArrayList<>(mLoading.values());
+        mLoading.clear();
+        for (PageLoad load : loads) {
+            // Null while the loader is still in loadPage(), e.g. if it called back synchronously.
+            if (load.mSubscription != null) {
+                load.mSubscription.unsubscribe();
+            }
+        }
+    }
+
+    /**
+     * Loads the first page; the list stays empty until it arrives.
+     */
+    public void loadInitial() {
+        loadPage(0, false);
+    }
+
+    @Override
+    public T get(int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("position " + position + ", size " + mSize);
+        }
+        int page = position / mPageSize;
+        mLastReadPage = page;
+        loadPage(page, false);
+        for (int distance = 1; distance <= mPrefetchDistance; distance++) {
+            loadPage(page - distance, true);
+            loadPage(page + distance, true);
+        }
+        return peek(position);
+    }
+
+    /**
+     * Like get(), but nothing is loaded and the window doesn't move: for callers that aren't
+     * about to show the item, e.g. RecyclerView asking for the id of a row off screen.
+     *
+     * @return null if the item isn't loaded.
+     */
+    public T peek(int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("position " + position + ", size " + mSize);
+        }
+        List<T> items = mPages.get(position / mPageSize);
+        int index = position % mPageSize;
+        return items != null && index < items.size() ? items.get(index) : null;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isLoaded(int position) {
+        List<T> items = mPages.get(position / mPageSize);
+        return items != null && position % mPageSize < items.size();
+    }
+
+    public int getLoadedPageCount() {
+        return mPages.size();
+    }
+
+    /**
+     * How many pages were requested from the loader so far, reloads of dropped pages included.
+     */
+    public int getLoadCount() {
+        return mLoadCount;
+    }
+
+    private void loadPage(final int page, boolean prefetch) {
+        if (page < 0 || mPages.containsKey(page)) {
+            return;
+        }
+        if (page > 0 && page * mPageSize >= mSize) {
+            return;
+        }
+        PageLoad loading = mLoading.get(page);
+        if (loading != null) {
+            if (prefetch || !loading.mPrefetch) {
+                return;
+            }
+            loading.mSubscription.unsubscribe();
+        }
+
+        final PageLoad load = new PageLoad(prefetch);
+        mLoading.put(page, load);
+        mLoadCount++;
+        load.mSubscription = mLoader.loadPage(page, mPageSize, prefetch, new PageCallback<T>() {
+            @Override
+            public void onPageLoaded(List<T> items, int pageCount) {
+                if (mLoading.get(page) != load) {
+                    return;
+                }
+                mLoading.remove(page);
+                onPage(page, items, pageCount);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // Cancelled, or replaced by a newer load of the page.
+                if (mLoading.get(page) != load) {
+                    return;
+                }
+                // Nothing is remembered: reading the page again retries.
+                mLoading.remove(page);
+                if (mListener != null) {
+                    mListener.onLoadError(page, t);
+                }
+            }
+        });
+    }
+
+    private void onPage(int page, List<T> items, int pageCount) {
+        updateSize(page, items.size(), pageCount);
+
+        // The user scrolled away while it was loading: it would only be dropped again.
+        if (!isInWindow(page)) {
+            return;
+        }
+        mPages.put(page, new ArrayList<>(items));
+        dropFarPages();
+        notifyChanged(page);
+    }
+
+    private void updateSize(int page, int itemCount, int pageCount) {
+        if (mSizeIsExact) {
+            return;
+        }
+        int newSize;
+        if (itemCount < mPageSize || page == pageCount - 1) {
+            newSize = page * mPageSize + itemCount;
+            mSizeIsExact = true;
+        } else if (pageCount > 0) {
+            newSize = Math.max(mSize, pageCount * mPageSize);
+        } else {
+            // One page of placeholders past the last full page, so scrolling to it loads it.
+            newSize = Math.max(mSize, (page + 2) * mPageSize);
+        }
+
+        int oldSize = mSize;
+        mSize = newSize;
+        if (mListener == null) {
+            return;
+        }
+        if (newSize > oldSize) {
+            mListener.onItemRangeInserted(oldSize, newSize - oldSize);
+        } else if (newSize < oldSize) {
+            mListener.onItemRangeRemoved(newSize, oldSize - newSize);
+        }
+    }
+
+    private boolean isInWindow(int page) {
+        return Math.abs(page - mLastReadPage) <= (mMaxPages - 1) / 2;
+    }
+
+    private void dropFarPages() {
+        Iterator<Integer> pages = mPages.keySet().iterator();
+        while (pages.hasNext()) {
+            int page = pages.next();
+            if (!isInWindow(page)) {
+                pages.remove();
+                // Any row of it still bound goes back to being a placeholder.
+                notifyChanged(page);
+            }
+        }
+    }
+
+    private void notifyChanged(int page) {
+        int start = page * mPageSize;
+        int count = Math.min(mPageSize, mSize - start);
+        if (mListener != null && count > 0) {
+            mListener.onItemRangeChanged(start, count);
+        }
+    }
+
+    private static final class PageLoad {
+
+        final boolean mPrefetch;
+        Subscription mSubscription;
+
+        PageLoad(boolean prefetch) {
+            mPrefetch = prefetch;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package jorgecasariego.retrofit.repository;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jorgecasariego.retrofit.Deadline;
+import jorgecasariego.retrofit.GitHubClient;
+import jorgecasariego.retrofit.cache.RepoSnapshotReader;
+import jorgecasariego.retrofit.cache.RepoSnapshotWriter;
+import jorgecasariego.retrofit.model.GitHubRepo;
+import jorgecasariego.retrofit.rx.AppSchedulers;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.exceptions.Exceptions;
+import rx.functions.Action0;
+import rx.functions.Func1;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Fetches the repos of a few users ahead of time into {@link jorgecasariego.retrofit.cache.RepoSnapshot}s,
+ * which GithubActivity shows before the network answers. See RepoPrefetchJobService for when.
+ *
+ * Only users without a snapshot, or with one older than maxAgeMillis, are fetched: a run right
+ * after the last one doesn't turn the radio on at all. The ones that are fetched go together, a
+ * few at a time, so the radio is woken up once for all of them instead of once per user. Every
+ * user gets up to MAX_PAGES pages of PER_PAGE repos, at the background priority.
+ *
+ * Snapshots are checked on the thread prefetch() is subscribed on, and written on the IO pool.
+ */
+public class RepoPrefetcher {
+
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    static final int PER_PAGE = 100;
+    static final int MAX_PAGES = 10;
+    static final int MAX_PARALLEL_USERS = 3;
+
+    private final GitHubClient mClient;
+    private final File mDirectory;
+    private final long mMaxAgeMillis;
+    private final Scheduler mClock;
+
+    /**
+     * @param directory where the snapshots are, see snapshotDirectory().
+     * @param clock     only used for {@link Scheduler#now()}, the snapshots are dated with it.
+     */
+    public RepoPrefetcher(GitHubClient client, File directory, long maxAgeMillis, Scheduler clock) {
+        mClient = client;
+        mDirectory = directory;
+        mMaxAgeMillis = maxAgeMillis;
+        mClock = clock;
+    }
+
+    /**
+     * Where the app keeps its repo snapshots. A cache: Android may delete them when it runs out
+     * of space, they are just fetched again.
+     */
+    public static File snapshotDirectory(Context context) {
+        return new File(context.getCacheDir(), "repo-snapshots");
+    }
+
+    public static File snapshotFile(File directory, String user) {
+        return new File(directory, "repos-" + user + ".snapshot");
+    }
+
+    /**
+     * Emits, for every user whose snapshot had to be refreshed, whether it was, and completes
+     * once they are done. A user that fails doesn't stop the others. Unsubscribing cancels the
+     * calls in flight.
+     */
+    public Observable<Boolean> prefetch(final List<String> users) {
+        return Observable.from(users)
+                .filter(new Func1<String, Boolean>() {
+                    @Override
+                    public Boolean call(String user) {
+                        return isStale(user);
+                    }
+                })
+                .flatMap(new Func1<String, Observable<Boolean>>() {
+                    @Override
+                    public Observable<Boolean> call(String user) {
+                        return refresh(user);
+                    }
+                }, MAX_PARALLEL_USERS);
+    }
+
+    boolean isStale(String user) {
+        File file = snapshotFile(mDirectory, user);
+        if (!file.exists()) {
+            return true;
+        }
+        try {
+            return mClock.now() - RepoSnapshotReader.open(file).getCreatedAtMillis() >= mMaxAgeMillis;
+        } catch (IOException e) {
+            // Of another version, or broken: written again.
+            return true;
+        }
+    }
+
+    private Observable<Boolean> refresh(final String user) {
+        return fetchRepos(user)
+                // Retrofit calls back on the main thread.
+                .observeOn(AppSchedulers.io())
+                .map(new Func1<List<GitHubRepo>, Boolean>() {
+                    @Override
+                    public Boolean call(List<GitHubRepo> repos) {
+                        // Raw blocks: the first screen reads them straight from the mapped file.
+                        try {
+                            mDirectory.mkdirs();
+                            RepoSnapshotWriter.write(snapshotFile(mDirectory, user), repos, false,
+                                    RepoSnapshotWriter.DEFAULT_ITEMS_PER_BLOCK, mClock.now());
+                        } catch (IOException e) {
+                            throw Exceptions.propagate(e);
+                        }
+                        return true;
+                    }
+                })
+                .onErrorReturn(new Func1<Throwable, Boolean>() {
+                    @Override
+                    public Boolean call(Throwable throwable) {
+                        return false;
+                    }
+                });
+    }
+
+    /**
+     * Every page of the user's repos, one after the other, as one list.
+     */
+    private Observable<List<GitHubRepo>> fetchRepos(final String user) {
+        return Observable.create(new Observable.OnSubscribe<List<GitHubRepo>>() {
+            @Override
+            public void call(Subscriber<? super List<GitHubRepo>> subscriber) {
+                new PageFetch(user, subscriber).fetch(1);
+            }
+        });
+    }
+
+    private final class PageFetch {
+
+        private final String mUser;
+        private final Subscriber<? super List<GitHubRepo>> mSubscriber;
+        private final List<GitHubRepo> mRepos = new ArrayList<>();
+        private volatile Call<List<GitHubRepo>> mCall;
+
+        PageFetch(String user, Subscriber<? super List<GitHubRepo>> subscriber) {
+            mUser = user;
+            mSubscriber = subscriber;
+            subscriber.add(Subscriptions.create(new Action0() {
+                @Override
+                public void call() {
+                    Call<List<GitHubRepo>> call = mCall;
+                    if (call != null) {
+                        call.cancel();
+                    }
+                }
+            }));
+        }
+
+        // GitHub counts pages from 1.
+        void fetch(final int page) {
+            if (mSubscriber.isUnsubscribed()) {
+                return;
+            }
+            mCall = mClient.prefetchReposForUser(mUser, page, PER_PAGE,
+                    Deadline.after(GitHubRepoPageLoader.PREFETCH_DEADLINE_SECONDS, TimeUnit.SECONDS));
+            mCall.enqueue(new Callback<List<GitHubRepo>>() {
+                @Override
+                public void onResponse(Call<List<GitHubRepo>> call, Response<List<GitHubRepo>> response) {
+                    if (!response.isSuccessful() || response.body() == null) {
+                        mSubscriber.onError(new IllegalStateException("HTTP " + response.code()));
+                        return;
+                    }
+                    mRepos.addAll(response.body());
+                    int pageCount = GitHubRepoPageLoader.parsePageCount(page - 1, response.headers().get("Link"));
+                    if (page < MAX_PAGES && (pageCount == -1 || page < pageCount)) {
+                        fetch(page + 1);
+                    } else {
+                        mSubscriber.onNext(mRepos);
+                        mSubscriber.onCompleted();
+                    }
+                }
+
+                @Override
+                public void onFailure(Call<List<GitHubRepo>> call, Throwable t) {
+                    mSubscriber.onError(t);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package jorgecasariego.retrofit.repository;
+
+import android.content.Context;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jorgecasariego.retrofit.RestClient;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Single;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+
+/**
+ * Single source of the favorite tv shows for every screen.
+ *
+ * Like the ServiceGenerator, the default instance lives in a static field, so it outlives the
+ * activities using it: a rotation re-subscribes to the same instance instead of paying the fetch
+ * again.
+ *
+ *  - While a fetch is in flight, every subscriber shares it (one fetch, many observers).
+ *  - Once it succeeded, the result is replayed to new subscribers until the TTL runs out.
+ *  - The fetch keeps running if every subscriber goes away (e.g. in the middle of a rotation), so
+ *    the recreated activity picks up the same result instead of starting over.
+ *  - A failed fetch is not cached; the next subscriber tries again.
+ */
+public class TvShowRepository {
+
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static TvShowRepository sInstance;
+
+    private final Single<List<String>> mFetch;
+    private final long mTtlMillis;
+    private final Scheduler mClock;
+
+    private Fetch mCurrent;
+    private long mFetchedAt = -1;
+
+    public static synchronized TvShowRepository getInstance(Context context) {
+        if (sInstance == null) {
+            RestClient restClient = new RestClient(context.getApplicationContext());
+            sInstance = new TvShowRepository(
+                    restClient.getFavoriteTvShowsAsync(), DEFAULT_TTL_MILLIS, Schedulers.immediate());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param fetch     loads the tv shows; subscribed to once per fetch.
+     * @param ttlMillis how long a successful result is served before fetching again.
+     * @param clock     only used for {@link Scheduler#now()}.
+     */
+    public TvShowRepository(Single<List<String>> fetch, long ttlMillis, Scheduler clock) {
+        mFetch = fetch;
+        mTtlMillis = ttlMillis;
+        mClock = clock;
+    }
+
+    public synchronized Observable<List<String>> getFavoriteTvShows() {
+        if (mCurrent == null || isExpired()) {
+            mFetchedAt = -1;
+            mCurrent = new Fetch();
+        }
+        return mCurrent.mResult;
+    }
+
+    /**
+     * Forgets the cached result, the next subscriber fetches again.
+     */
+    public synchronized void invalidate() {
+        mCurrent = null;
+        mFetchedAt = -1;
+    }
+
+    private boolean isExpired() {
+        return mFetchedAt >= 0 && mClock.now() - mFetchedAt >= mTtlMillis;
+    }
+
+    private synchronized void onFetched(Fetch fetch) {
+        if (mCurrent == fetch) {
+            mFetchedAt = mClock.now();
+        }
+    }
+
+    private synchronized void onFetchFailed(Fetch fetch) {
+        if (mCurrent == fetch) {
+            mCurrent = null;
+        }
+    }
+
+    private final class Fetch {
+
+        final Observable<List<String>> mResult;
+
+        Fetch() {
+            mResult = mFetch.toObservable()
+                    .doOnNext(new Action1<List<String>>() {
+                        @Override
+                        public void call(List<String> tvShows) {
+                            onFetched(Fetch.this);
+                        }
+                    })
+                    .doOnError(new Action1<Throwable>() {
+                        @Override
+                        public void call(Throwable throwable) {
+                            onFetchFailed(Fetch.this);
+                        }
+                    })
+                    // cache() connects on the first subscriber and never disconnects, which is
+                    // what lets a fetch survive the gap between onDestroy() and the next onCreate().
+                    .cache();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package jorgecasariego.retrofit.repository;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import jorgecasariego.retrofit.GitHubGraphQLClient;
+import jorgecasariego.retrofit.model.GitHubRepo;
+import jorgecasariego.retrofit.model.StringPool;
+import jorgecasariego.retrofit.rx.AppSchedulers;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.subjects.AsyncSubject;
+
+/**
+ * Looks up the repos of many users with a few GraphQL requests instead of a REST call each.
+ *
+ * Lookups that arrive within windowMillis of the first one are sent together, as one aliased
+ * query (see {@link GitHubGraphQLClient}), and the answer is split back into a result per user.
+ * A batch goes out early once it has maxBatchSize users, GitHub limits how much one query may
+ * ask for. Asking twice for the same user in a batch only asks GitHub once.
+ *
+ *  lookups   a  b    c   d        e
+ *            |--window--|         |--window--|
+ *  requests              [a b c d]            [e]
+ *
+ * Like reposForUser(user), only the first page of repos (here 100 of them) is fetched.
+ */
+public class UserReposBatcher {
+
+    public static final long DEFAULT_WINDOW_MILLIS = 10;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 20;
+    static final int REPOS_PER_USER = 100;
+
+    private final GitHubGraphQLClient mClient;
+    private final long mWindowMillis;
+    private final int mMaxBatchSize;
+    private final Scheduler mScheduler;
+    private Map<String, AsyncSubject<List<GitHubRepo>>> mPending = new LinkedHashMap<>();
+    private Scheduler.Worker mTimer;
+    private int mLookupCount;
+    private int mRoundTripCount;
+
+    public UserReposBatcher(GitHubGraphQLClient client) {
+        this(client, DEFAULT_WINDOW_MILLIS, DEFAULT_MAX_BATCH_SIZE, AppSchedulers.cpu());
+    }
+
+    /**
+     * @param scheduler runs the window timer.
+     */
+    public UserReposBatcher(GitHubGraphQLClient client, long windowMillis, int maxBatchSize, Scheduler scheduler) {
+        mClient = client;
+        mWindowMillis = windowMillis;
+        mMaxBatchSize = maxBatchSize;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * The lookup is added to a batch when subscribed to. The result arrives on the main thread,
+     * where Retrofit delivers its callbacks on Android.
+     */
+    public Observable<List<GitHubRepo>> reposForUser(final String user) {
+        return Observable.defer(new Func0<Observable<List<GitHubRepo>>>() {
+            @Override
+            public Observable<List<GitHubRepo>> call() {
+                return add(user);
+            }
+        });
+    }
+
+    /** How many lookups were asked for. */
+    public synchronized int getLookupCount() {
+        return mLookupCount;
+    }
+
+    /** How many requests were sent for them. */
+    public synchronized int getRoundTripCount() {
+        return mRoundTripCount;
+    }
+
+    private Observable<List<GitHubRepo>> add(String user) {
+        Map<String, AsyncSubject<List<GitHubRepo>>> full = null;
+        AsyncSubject<List<GitHubRepo>> result;
+        synchronized (this) {
+            mLookupCount++;
+            result = mPending.get(user);
+            if (result == null) {
+                result = AsyncSubject.create();
+                mPending.put(user, result);
+            }
+            if (mPending.size() >= mMaxBatchSize) {
+                full = takeBatch();
+            } else if (mTimer == null) {
+                mTimer = mScheduler.createWorker();
+                mTimer.schedule(new Action0() {
+                    @Override
+                    public void call() {
+                        Map<String, AsyncSubject<List<GitHubRepo>>> batch;
+                        synchronized (UserReposBatcher.this) {
+                            batch = takeBatch();
+                        }
+                        send(batch);
+                    }
+                }, mWindowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return result;
+    }
+
+    // Holds the lock.
+    private Map<String, AsyncSubject<List<GitHubRepo>>> takeBatch() {
+        if (mTimer != null) {
+            mTimer.unsubscribe();
+            mTimer = null;
+        }
+        Map<String, AsyncSubject<List<GitHubRepo>>> batch = mPending;
+        mPending = new LinkedHashMap<>();
+        if (!batch.isEmpty()) {
+            mRoundTripCount++;
+        }
+        return batch;
+    }
+
+    private void send(final Map<String, AsyncSubject<List<GitHubRepo>>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        final List<String> users = new ArrayList<>(batch.keySet());
+        mClient.query(new GitHubGraphQLClient.Query(buildQuery(users))).enqueue(new Callback<JsonObject>() {
+            @Override
+            public void onResponse(Call<JsonObject> call, Response<JsonObject> response) {
+                JsonObject body = response.body();
+                if (!response.isSuccessful() || body == null) {
+                    failAll(batch, new IllegalStateException("HTTP " + response.code()));
+                    return;
+                }
+                JsonObject data = body.has("data") && body.get("data").isJsonObject()
+                        ? body.getAsJsonObject("data") : new JsonObject();
+                for (int i = 0; i < users.size(); i++) {
+                    String user = users.get(i);
+                    AsyncSubject<List<GitHubRepo>> result = batch.get(user);
+                    JsonElement repos = data.get(alias(i));
+                    if (repos == null || repos.isJsonNull()) {
+                        result.onError(new IllegalStateException(errorMessage(body, alias(i), user)));
+                        continue;
+                    }
+                    // A user GitHub answered oddly fails alone, the rest of the batch still gets
+                    // its repos, and nothing is thrown on the main thread.
+                    List<GitHubRepo> parsed;
+                    try {
+                        parsed = parseRepos(repos.getAsJsonObject());
+                    } catch (RuntimeException e) {
+                        result.onError(e);
+                        continue;
+                    }
+                    result.onNext(parsed);
+                    result.onCompleted();
+                }
+            }
+
+            @Override
+            public void onFailure(Call<JsonObject> call, Throwable t) {
+                failAll(batch, t);
+            }
+        });
+    }
+
+    private static void failAll(Map<String, AsyncSubject<List<GitHubRepo>>> batch, Throwable t) {
+        for (AsyncSubject<List<GitHubRepo>> result : batch.values()) {
+            result.onError(t);
+        }
+    }
+
+    static String buildQuery(List<String> users) {
+        StringBuilder query = new StringBuilder("query {");
+        for (int i = 0; i < users.size(); i++) {
+            query.append(' ').append(alias(i)).append(": user(login: \"")
+                    .append(users.get(i).replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append("\") { repositories(first: ").append(REPOS_PER_USER)
+                    .append(") { nodes { databaseId name } } }");
+        }
+        return query.append(" }").toString();
+    }
+
+    private static String alias(int index) {
+        return "u" + index;
+    }
+
+    private static List<GitHubRepo> parseRepos(JsonObject user) {
+        JsonArray nodes = user.getAsJsonObject("repositories").getAsJsonArray("nodes");
+        List<GitHubRepo> repos = new ArrayList<>(nodes.size());
+        for (JsonElement node : nodes) {
+            JsonObject fields = node.getAsJsonObject();
+            GitHubRepo repo = new GitHubRepo();
+            repo.setId(fields.get("databaseId").getAsInt());
+            repo.setName(StringPool.shared().intern(fields.get("name").getAsString()));
+            repos.add(repo);
+        }
+        return repos;
+    }
+
+    // GitHub answers null for a user it doesn't know, and says why in "errors", by path.
+    private static String errorMessage(JsonObject body, String alias, String user) {
+        if (body.has("errors")) {
+            for (JsonElement error : body.getAsJsonArray("errors")) {
+                JsonObject fields = error.getAsJsonObject();
+                JsonArray path = fields.getAsJsonArray("path");
+                if (path != null && path.size() > 0 && alias.equals(path.get(0).getAsString())) {
+                    return fields.get("message").getAsString();
+                }
+            }
+        }
+        return "No repos for " + user;
+    }
+}
@@ -0,0 +1,133 @@
+package jorgecasariego.retrofit.rx;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports the subscriptions an activity leaves behind when it is destroyed.
+ *
+ * A subscribe() call belongs to the innermost activity on its stack (Example3Activity.onCreate(),
+ * or one of its anonymous classes). When that activity is destroyed, anything it subscribed to and
+ * never unsubscribed from is logged with the stack of the subscribe() call: it keeps the activity
+ * (and its views) alive for as long as the source keeps going.
+ *
+ * The check runs one main thread message after onDestroy(), so unsubscribing after
+ * super.onDestroy() doesn't count as a leak.
+ */
+public class ActivityLeakWatcher implements Application.ActivityLifecycleCallbacks, RxProfiler.OwnerResolver {
+
+    private static final String TAG = "RxLeaks";
+
+    private final RxProfiler mProfiler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final List<WeakReference<Activity>> mActivities = new ArrayList<>();
+    private final List<RxProfiler.LiveSubscription> mLeaks = new ArrayList<>();
+
+    public static ActivityLeakWatcher install(Application application, RxProfiler profiler) {
+        ActivityLeakWatcher watcher = new ActivityLeakWatcher(profiler);
+        profiler.setOwnerResolver(watcher);
+        application.registerActivityLifecycleCallbacks(watcher);
+        return watcher;
+    }
+
+    ActivityLeakWatcher(RxProfiler profiler) {
+        mProfiler = profiler;
+    }
+
+    /**
+     * Every subscription found alive after its activity was destroyed so far.
+     */
+    public synchronized List<RxProfiler.LiveSubscription> getLeaks() {
+        return new ArrayList<>(mLeaks);
+    }
+
+    @Override
+    public Object resolveOwner(StackTraceElement[] stack) {
+        for (StackTraceElement frame : stack) {
+            String className = frame.getClassName();
+            int inner = className.indexOf('$');
+            if (inner >= 0) {
+                className = className.substring(0, inner);
+            }
+            Activity activity = findNewestActivity(className);
+            if (activity != null) {
+                return activity;
+            }
+        }
+        return null;
+    }
+
+    private synchronized Activity findNewestActivity(String className) {
+        for (int i = mActivities.size() - 1; i >= 0; i--) {
+            Activity activity = mActivities.get(i).get();
+            if (activity != null && activity.getClass().getName().equals(className)) {
+                return activity;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        mActivities.add(new WeakReference<>(activity));
+    }
+
+    @Override
+    public void onActivityDestroyed(final Activity activity) {
+        synchronized (this) {
+            for (int i = mActivities.size() - 1; i >= 0; i--) {
+                Activity alive = mActivities.get(i).get();
+                if (alive == null || alive == activity) {
+                    mActivities.remove(i);
+                }
+            }
+        }
+
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                checkForLeaks(activity);
+            }
+        });
+    }
+
+    private void checkForLeaks(Activity activity) {
+        List<RxProfiler.LiveSubscription> leaks = mProfiler.getLiveSubscriptions(activity);
+        for (RxProfiler.LiveSubscription leak : leaks) {
+            Log.w(TAG, activity.getClass().getSimpleName() + " was destroyed but is still subscribed",
+                    leak.toThrowable());
+        }
+        synchronized (this) {
+            mLeaks.addAll(leaks);
+        }
+        Log.d(TAG, mProfiler.report());
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+}
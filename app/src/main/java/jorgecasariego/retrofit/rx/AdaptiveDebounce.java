@@ -0,0 +1,190 @@
+package jorgecasariego.retrofit.rx;
+
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.observers.SerializedSubscriber;
+import rx.subscriptions.SerialSubscription;
+
+/**
+ * debounce() with a window that adapts to how fast the work behind it is and how fast the user types.
+ *
+ * The operator keeps two exponentially weighted moving averages:
+ *  - the latency of the work that follows it, reported through {@link #recordLatency(long)}, and
+ *  - the interval between two consecutive values, measured by the operator itself.
+ *
+ * The window is the smaller of the two (the typing interval is padded by {@link #TYPING_FACTOR} so
+ * we wait for a real pause), clamped to [min, max]. A local index answering in a few milliseconds
+ * ends up at the minimum window and feels instant; a slow backend pushes the window up towards the
+ * user's typing cadence, so we don't search on every keystroke.
+ *
+ * Intervals longer than the maximum window are pauses, not typing, and don't feed the average.
+ * The averages are shared by every subscription to the same instance.
+ *
+ * Use it with {@link Observable#lift(Observable.Operator)}.
+ */
+public class AdaptiveDebounce<T> implements Observable.Operator<T, T> {
+
+    private static final double ALPHA = 0.3;
+    private static final double TYPING_FACTOR = 1.5;
+
+    private final long mMinWindowMillis;
+    private final long mMaxWindowMillis;
+    private final Scheduler mScheduler;
+
+    private double mLatencyEwma;
+    private double mTypingIntervalEwma = -1;
+    private long mLastValueTime = -1;
+
+    public AdaptiveDebounce(long minWindowMillis, long maxWindowMillis, Scheduler scheduler) {
+        if (minWindowMillis < 0 || maxWindowMillis < minWindowMillis) {
+            throw new IllegalArgumentException(
+                    "Invalid window bounds: [" + minWindowMillis + ", " + maxWindowMillis + "]");
+        }
+        mMinWindowMillis = minWindowMillis;
+        mMaxWindowMillis = maxWindowMillis;
+        mScheduler = scheduler;
+        // Until we have measured anything, assume the work is slow.
+        mLatencyEwma = maxWindowMillis;
+    }
+
+    /**
+     * Reports how long the work triggered by a debounced value took.
+     */
+    public synchronized void recordLatency(long latencyMillis) {
+        mLatencyEwma = ewma(mLatencyEwma, Math.max(0, latencyMillis));
+    }
+
+    public synchronized long getWindowMillis() {
+        double window = mLatencyEwma;
+        if (mTypingIntervalEwma >= 0) {
+            window = Math.min(window, mTypingIntervalEwma * TYPING_FACTOR);
+        }
+        return Math.max(mMinWindowMillis, Math.min(mMaxWindowMillis, Math.round(window)));
+    }
+
+    private synchronized long onValue(long now) {
+        if (mLastValueTime >= 0) {
+            long interval = now - mLastValueTime;
+            if (interval <= mMaxWindowMillis) {
+                mTypingIntervalEwma = mTypingIntervalEwma < 0
+                        ? interval
+                        : ewma(mTypingIntervalEwma, interval);
+            }
+        }
+        mLastValueTime = now;
+        return getWindowMillis();
+    }
+
+    private static double ewma(double average, double sample) {
+        return ALPHA * sample + (1 - ALPHA) * average;
+    }
+
+    @Override
+    public Subscriber<? super T> call(Subscriber<? super T> child) {
+        final Scheduler.Worker worker = mScheduler.createWorker();
+        final SerializedSubscriber<T> serialized = new SerializedSubscriber<>(child);
+        final SerialSubscription pendingEmission = new SerialSubscription();
+        serialized.add(worker);
+        serialized.add(pendingEmission);
+
+        return new Subscriber<T>(child) {
+
+            // Guarded by this.
+            private T mPending;
+            private boolean mHasPending;
+            private int mIndex;
+            private boolean mEmitting;
+            private boolean mTerminated;
+
+            @Override
+            public void onStart() {
+                request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(T value) {
+                final int index;
+                synchronized (this) {
+                    mPending = value;
+                    mHasPending = true;
+                    index = ++mIndex;
+                }
+                long window = onValue(worker.now());
+                pendingEmission.set(worker.schedule(new Action0() {
+                    @Override
+                    public void call() {
+                        emit(index);
+                    }
+                }, window, TimeUnit.MILLISECONDS));
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                serialized.onError(e);
+                unsubscribe();
+                synchronized (this) {
+                    mIndex++;
+                    mPending = null;
+                    mHasPending = false;
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+                T pending;
+                boolean hasPending;
+                synchronized (this) {
+                    if (mEmitting) {
+                        mTerminated = true;
+                        return;
+                    }
+                    pending = mPending;
+                    hasPending = mHasPending;
+                    mPending = null;
+                    mHasPending = false;
+                    mEmitting = true;
+                }
+                if (hasPending) {
+                    serialized.onNext(pending);
+                }
+                serialized.onCompleted();
+            }
+
+            private void emit(int index) {
+                T pending;
+                synchronized (this) {
+                    if (mEmitting || !mHasPending || index != mIndex) {
+                        return;
+                    }
+                    pending = mPending;
+                    mPending = null;
+                    mHasPending = false;
+                    mEmitting = true;
+                }
+
+                serialized.onNext(pending);
+
+                boolean hasLatePending;
+                synchronized (this) {
+                    if (!mTerminated) {
+                        mEmitting = false;
+                        return;
+                    }
+                    // Completed while we were emitting: flush what arrived in the meantime.
+                    pending = mPending;
+                    hasLatePending = mHasPending;
+                    mPending = null;
+                    mHasPending = false;
+                }
+                if (hasLatePending) {
+                    serialized.onNext(pending);
+                }
+                serialized.onCompleted();
+            }
+        };
+    }
+}
@@ -0,0 +1,118 @@
+package jorgecasariego.retrofit.rx;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * The schedulers every pipeline in the app should use instead of Schedulers.io() and
+ * Schedulers.computation().
+ *
+ * Schedulers.io() is backed by an unbounded cached thread pool: a burst of blocking calls creates
+ * one thread per call. Here both pools have a fixed number of threads and are instrumented:
+ *
+ *  - io():  blocking work (network, disk). Up to {@link #IO_THREADS} threads and a queue of
+ *           {@link #IO_QUEUE_CAPACITY} tasks. When both are full the task is rejected and the
+ *           subscriber gets the RejectedExecutionException, so overload shows up as an error
+ *           instead of as a thousand threads.
+ *  - cpu(): parsing, searching, timers. One thread per core, never blocked on I/O. Its queue is
+ *           unbounded: the thread count is what needs a cap, and CPU work can't be shed.
+ *
+ * OkHttp gets an executor of its own, networkExecutor(): its Dispatcher counts a call as running
+ * before handing it to the executor, so a rejection from the IO pool would leak that slot.
+ *
+ * The executors are created lazily, the first time somebody asks for them. Call
+ * {@link #configureIo(int, int, RejectedExecutionHandler)} before that to change the IO pool.
+ */
+public class AppSchedulers {
+
+    public static final int IO_THREADS = 16;
+    public static final int IO_QUEUE_CAPACITY = 128;
+    // OkHttp's Dispatcher runs at most this many calls at a time (its maxRequests): one thread each.
+    public static final int NETWORK_THREADS = 64;
+
+    private static int sIoThreads = IO_THREADS;
+    private static int sIoQueueCapacity = IO_QUEUE_CAPACITY;
+    private static RejectedExecutionHandler sIoPolicy;
+
+    private static InstrumentedExecutor sIoExecutor;
+    private static InstrumentedExecutor sCpuExecutor;
+    private static InstrumentedExecutor sNetworkExecutor;
+    private static Scheduler sIo;
+    private static Scheduler sCpu;
+
+    private AppSchedulers() {
+    }
+
+    /**
+     * @param policy what to do when the pool and its queue are full; null throws a
+     *               RejectedExecutionException.
+     * @throws IllegalStateException if the IO scheduler is already in use.
+     */
+    public static synchronized void configureIo(int threads, int queueCapacity,
+                                                RejectedExecutionHandler policy) {
+        if (sIoExecutor != null) {
+            throw new IllegalStateException("The IO scheduler is already in use");
+        }
+        sIoThreads = threads;
+        sIoQueueCapacity = queueCapacity;
+        sIoPolicy = policy;
+    }
+
+    public static synchronized Scheduler io() {
+        if (sIo == null) {
+            sIo = Schedulers.from(ioExecutor());
+        }
+        return sIo;
+    }
+
+    public static synchronized Scheduler cpu() {
+        if (sCpu == null) {
+            sCpu = Schedulers.from(cpuExecutor());
+        }
+        return sCpu;
+    }
+
+    /**
+     * The executor behind {@link #io()}, for code that isn't Rx.
+     */
+    public static synchronized ExecutorService ioExecutor() {
+        if (sIoExecutor == null) {
+            sIoExecutor = new InstrumentedExecutor("app-io", sIoThreads, sIoQueueCapacity, sIoPolicy);
+        }
+        return sIoExecutor;
+    }
+
+    public static synchronized ExecutorService cpuExecutor() {
+        if (sCpuExecutor == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            sCpuExecutor = new InstrumentedExecutor("app-cpu", cores, InstrumentedExecutor.UNBOUNDED, null);
+        }
+        return sCpuExecutor;
+    }
+
+    /**
+     * The executor of OkHttp's Dispatcher. Its queue is unbounded, it never rejects a call: the
+     * Dispatcher already limits how many run at a time.
+     */
+    public static synchronized ExecutorService networkExecutor() {
+        if (sNetworkExecutor == null) {
+            sNetworkExecutor = new InstrumentedExecutor("app-network", NETWORK_THREADS, InstrumentedExecutor.UNBOUNDED, null);
+        }
+        return sNetworkExecutor;
+    }
+
+    public static InstrumentedExecutor.Metrics ioMetrics() {
+        return ((InstrumentedExecutor) ioExecutor()).getMetrics();
+    }
+
+    public static InstrumentedExecutor.Metrics cpuMetrics() {
+        return ((InstrumentedExecutor) cpuExecutor()).getMetrics();
+    }
+
+    public static InstrumentedExecutor.Metrics networkMetrics() {
+        return ((InstrumentedExecutor) networkExecutor()).getMetrics();
+    }
+}
@@ -0,0 +1,155 @@
+package jorgecasariego.retrofit.rx;
+
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Delivers at most one value per display frame: the latest one.
+ *
+ * A source that emits faster than the screen refreshes (a counter, a progress bar, a stream of
+ * items) would otherwise redraw the view for values nobody ever sees. This operator keeps only the
+ * latest value and hands it to the subscriber from a Choreographer frame callback, on the thread
+ * that created the operator (normally the main thread), so it also replaces
+ * observeOn(AndroidSchedulers.mainThread()).
+ *
+ * Overwriting the pending value and re-posting the (single, reused) frame callback don't allocate,
+ * so dropping intermediate values is free. Terminal events are delivered on the next frame, after
+ * the last value.
+ *
+ * Counters for the values dropped and the time spent delivering on the UI thread are available
+ * through the getters.
+ */
+public class FrameConflate<T> implements Observable.Operator<T, T> {
+
+    private static final Object EMPTY = new Object();
+
+    private final Choreographer mChoreographer;
+    private final AtomicLong mReceived = new AtomicLong();
+    private final AtomicLong mDelivered = new AtomicLong();
+    private final AtomicLong mDeliveryNanos = new AtomicLong();
+
+    /**
+     * Must be called on the thread values should be delivered on; that thread needs a Looper.
+     */
+    public static <T> FrameConflate<T> create() {
+        return new FrameConflate<>(Choreographer.getInstance());
+    }
+
+    public FrameConflate(Choreographer choreographer) {
+        mChoreographer = choreographer;
+    }
+
+    public long getReceivedCount() {
+        return mReceived.get();
+    }
+
+    public long getDeliveredCount() {
+        return mDelivered.get();
+    }
+
+    public long getDroppedCount() {
+        return mReceived.get() - mDelivered.get();
+    }
+
+    /** Time spent on the delivering thread passing values to the subscriber. */
+    public long getDeliveryNanos() {
+        return mDeliveryNanos.get();
+    }
+
+    @Override
+    public Subscriber<? super T> call(Subscriber<? super T> child) {
+        final FrameSubscriber parent = new FrameSubscriber(child);
+        child.add(parent);
+        child.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                mChoreographer.removeFrameCallback(parent);
+            }
+        }));
+        return parent;
+    }
+
+    private final class FrameSubscriber extends Subscriber<T> implements Choreographer.FrameCallback {
+
+        private final Subscriber<? super T> mChild;
+        private final AtomicReference<Object> mLatest = new AtomicReference<>(EMPTY);
+        private final AtomicBoolean mFrameScheduled = new AtomicBoolean();
+        private volatile boolean mDone;
+        private volatile Throwable mError;
+        // Only used on the delivering thread. A terminal event that raced with a running frame
+        // schedules one more, which must not deliver it again.
+        private boolean mTerminated;
+
+        FrameSubscriber(Subscriber<? super T> child) {
+            mChild = child;
+        }
+
+        @Override
+        public void onStart() {
+            request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(T value) {
+            mReceived.incrementAndGet();
+            mLatest.set(value);
+            scheduleFrame();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            mError = e;
+            mDone = true;
+            scheduleFrame();
+        }
+
+        @Override
+        public void onCompleted() {
+            mDone = true;
+            scheduleFrame();
+        }
+
+        private void scheduleFrame() {
+            if (mFrameScheduled.compareAndSet(false, true)) {
+                mChoreographer.postFrameCallback(this);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void doFrame(long frameTimeNanos) {
+            mFrameScheduled.set(false);
+            if (mTerminated || mChild.isUnsubscribed()) {
+                return;
+            }
+
+            // Read mDone before taking the value: if the source is done, its last value is
+            // already in mLatest.
+            boolean done = mDone;
+            Object latest = mLatest.getAndSet(EMPTY);
+            long start = System.nanoTime();
+            if (latest != EMPTY) {
+                mDelivered.incrementAndGet();
+                mChild.onNext((T) latest);
+            }
+            if (done) {
+                mTerminated = true;
+                Throwable error = mError;
+                if (error != null) {
+                    mChild.onError(error);
+                } else {
+                    mChild.onCompleted();
+                }
+            }
+            mDeliveryNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package jorgecasariego.retrofit.rx;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed-size thread pool that keeps track of what it is doing.
+ *
+ * Besides the usual ThreadPoolExecutor counters (active threads, queue depth) it measures, for
+ * every task, how long it waited in the queue and how long it ran, and counts rejected tasks.
+ * Read them with {@link #getMetrics()}.
+ *
+ * Idle threads time out, so a pool that isn't used doesn't hold on to any thread.
+ */
+public class InstrumentedExecutor extends ThreadPoolExecutor {
+
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final String mName;
+    private final ThreadLocal<Long> mStartTime = new ThreadLocal<>();
+
+    // Guarded by this.
+    private long mTasks;
+    private long mRejected;
+    private long mTotalWaitNanos;
+    private long mMaxWaitNanos;
+    private long mTotalRunNanos;
+    private long mMaxRunNanos;
+
+    /**
+     * @param name          prefix for the thread names, also shown in the metrics.
+     * @param threads       maximum number of threads.
+     * @param queueCapacity how many tasks may wait for a thread before the policy kicks in, or
+     *                      {@link #UNBOUNDED}.
+     * @param policy        what to do with a task when every thread is busy and the queue is full.
+     */
+    public InstrumentedExecutor(String name, int threads, int queueCapacity, RejectedExecutionHandler policy) {
+        super(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                createQueue(queueCapacity), new NamedThreadFactory(name));
+        mName = name;
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler(new CountingRejectionHandler(policy));
+    }
+
+    private static BlockingQueue<Runnable> createQueue(int capacity) {
+        return capacity == UNBOUNDED
+                ? new LinkedBlockingQueue<Runnable>()
+                : new ArrayBlockingQueue<Runnable>(capacity);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(new TimedRunnable(command));
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable) {
+        super.beforeExecute(thread, runnable);
+        long now = System.nanoTime();
+        mStartTime.set(now);
+        if (runnable instanceof TimedRunnable) {
+            onTaskStarted(now - ((TimedRunnable) runnable).mEnqueueTime);
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable) {
+        Long start = mStartTime.get();
+        if (start != null) {
+            onTaskFinished(System.nanoTime() - start);
+            mStartTime.remove();
+        }
+        super.afterExecute(runnable, throwable);
+    }
+
+    private synchronized void onTaskStarted(long waitNanos) {
+        mTotalWaitNanos += waitNanos;
+        mMaxWaitNanos = Math.max(mMaxWaitNanos, waitNanos);
+    }
+
+    private synchronized void onTaskFinished(long runNanos) {
+        mTasks++;
+        mTotalRunNanos += runNanos;
+        mMaxRunNanos = Math.max(mMaxRunNanos, runNanos);
+    }
+
+    private synchronized void onRejected() {
+        mRejected++;
+    }
+
+    public synchronized Metrics getMetrics() {
+        return new Metrics(mName, getActiveCount(), getPoolSize(), getQueue().size(), mTasks, mRejected,
+                mTasks == 0 ? 0 : mTotalWaitNanos / mTasks, mMaxWaitNanos,
+                mTasks == 0 ? 0 : mTotalRunNanos / mTasks, mMaxRunNanos);
+    }
+
+    public static final class Metrics {
+        public final String mName;
+        public final int mActiveThreads;
+        public final int mPoolSize;
+        public final int mQueueDepth;
+        public final long mCompletedTasks;
+        public final long mRejectedTasks;
+        public final long mAverageWaitNanos;
+        public final long mMaxWaitNanos;
+        public final long mAverageRunNanos;
+        public final long mMaxRunNanos;
+
+        Metrics(String name, int activeThreads, int poolSize, int queueDepth, long completedTasks,
+                long rejectedTasks, long averageWaitNanos, long maxWaitNanos, long averageRunNanos,
+                long maxRunNanos) {
+            mName = name;
+            mActiveThreads = activeThreads;
+            mPoolSize = poolSize;
+            mQueueDepth = queueDepth;
+            mCompletedTasks = completedTasks;
+            mRejectedTasks = rejectedTasks;
+            mAverageWaitNanos = averageWaitNanos;
+            mMaxWaitNanos = maxWaitNanos;
+            mAverageRunNanos = averageRunNanos;
+            mMaxRunNanos = maxRunNanos;
+        }
+
+        @Override
+        public String toString() {
+            return mName + "{active=" + mActiveThreads
+                    + ", pool=" + mPoolSize
+                    + ", queued=" + mQueueDepth
+                    + ", completed=" + mCompletedTasks
+                    + ", rejected=" + mRejectedTasks
+                    + ", avgWaitUs=" + mAverageWaitNanos / 1000
+                    + ", maxWaitUs=" + mMaxWaitNanos / 1000
+                    + ", avgRunUs=" + mAverageRunNanos / 1000
+                    + ", maxRunUs=" + mMaxRunNanos / 1000
+                    + "}";
+        }
+    }
+
+    private static final class TimedRunnable implements Runnable {
+        final Runnable mDelegate;
+        final long mEnqueueTime = System.nanoTime();
+
+        TimedRunnable(Runnable delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public void run() {
+            mDelegate.run();
+        }
+    }
+
+    private final class CountingRejectionHandler implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler mPolicy;
+
+        CountingRejectionHandler(RejectedExecutionHandler policy) {
+            mPolicy = policy;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            onRejected();
+            if (mPolicy == null) {
+                throw new RejectedExecutionException(mName + " is saturated: " + getMetrics());
+            }
+            mPolicy.rejectedExecution(runnable, executor);
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String mPrefix;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            mPrefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, mPrefix + "-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
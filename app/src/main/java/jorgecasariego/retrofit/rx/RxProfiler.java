@@ -0,0 +1,361 @@
+package jorgecasariego.retrofit.rx;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.observers.SafeSubscriber;
+import rx.plugins.RxJavaObservableExecutionHook;
+import rx.plugins.RxJavaPlugins;
+
+/**
+ * Opt-in profiler for every Observable pipeline in the app, built on RxJava's execution hook.
+ *
+ * Operators: every operator applied with lift() (map, filter, debounce, observeOn, switchMap...)
+ * is wrapped when it is subscribed to. For each operator class it records how many values went
+ * through, the time its onNext() took without counting the operators after it, and how many values
+ * left it on another thread than the one they came in on (a thread hop: observeOn, debounce,
+ * subscribeOn...).
+ *
+ * Subscriptions: every subscribe() is recorded with the stack it was called from, for as long as
+ * it stays subscribed. An {@link OwnerResolver} (see ActivityLeakWatcher) can tell which object
+ * owns it, and {@link #getLiveSubscriptions(Object)} lists the ones an owner left behind.
+ *
+ * RxJava reads its hook once, the first time the Observable class is used, so {@link #install()}
+ * has to run before that: first thing in Application.onCreate(). Wrapping costs two extra
+ * Subscribers per operator and two nanoTime() calls per value, so it is meant for debug builds.
+ */
+public class RxProfiler extends RxJavaObservableExecutionHook {
+
+    public interface OwnerResolver {
+        /**
+         * @return the object the subscribe() call with this stack belongs to, or null.
+         */
+        Object resolveOwner(StackTraceElement[] stack);
+    }
+
+    // Time the operators after the current one took, on this thread. See ParentProbe.onNext().
+    private static final ThreadLocal<long[]> DOWNSTREAM_NANOS = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    private final ConcurrentMap<String, OperatorStats> mOperatorStats = new ConcurrentHashMap<>();
+    // Weak keys: a subscription nobody references any more can't be leaking anything.
+    private final Map<Subscription, LiveSubscription> mLiveSubscriptions = new WeakHashMap<>();
+    private volatile OwnerResolver mOwnerResolver;
+
+    /**
+     * @throws IllegalStateException if another hook is already registered.
+     */
+    public static RxProfiler install() {
+        RxProfiler profiler = new RxProfiler();
+        RxJavaPlugins.getInstance().registerObservableExecutionHook(profiler);
+        return profiler;
+    }
+
+    public void setOwnerResolver(OwnerResolver ownerResolver) {
+        mOwnerResolver = ownerResolver;
+    }
+
+    @Override
+    public <T, R> Observable.Operator<? extends R, ? super T> onLift(Observable.Operator<? extends R, ? super T> lift) {
+        return profile(lift);
+    }
+
+    private <T, R> Observable.Operator<R, T> profile(Observable.Operator<R, T> operator) {
+        String name = operator.getClass().getName();
+        OperatorStats stats = mOperatorStats.get(name);
+        if (stats == null) {
+            OperatorStats newStats = new OperatorStats(name);
+            stats = mOperatorStats.putIfAbsent(name, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return new ProfiledOperator<>(operator, stats);
+    }
+
+    @Override
+    public <T> Subscription onSubscribeReturn(Subscription subscription) {
+        // Only subscribe() wraps in a SafeSubscriber; operators subscribing to their inner
+        // sources use unsafeSubscribe() and are owned by the outer subscription anyway.
+        if (subscription instanceof SafeSubscriber) {
+            StackTraceElement[] stack = new Throwable().getStackTrace();
+            OwnerResolver resolver = mOwnerResolver;
+            Object owner = resolver != null ? resolver.resolveOwner(stack) : null;
+            synchronized (mLiveSubscriptions) {
+                mLiveSubscriptions.put(subscription, new LiveSubscription(subscription, owner, stack));
+            }
+        }
+        return subscription;
+    }
+
+    /**
+     * @return the subscriptions made on behalf of owner that are still subscribed.
+     */
+    public List<LiveSubscription> getLiveSubscriptions(Object owner) {
+        List<LiveSubscription> live = new ArrayList<>();
+        synchronized (mLiveSubscriptions) {
+            for (LiveSubscription subscription : mLiveSubscriptions.values()) {
+                if (subscription.getOwner() == owner && subscription.isSubscribed()) {
+                    live.add(subscription);
+                }
+            }
+        }
+        return live;
+    }
+
+    public int getLiveSubscriptionCount() {
+        int count = 0;
+        synchronized (mLiveSubscriptions) {
+            for (LiveSubscription subscription : mLiveSubscriptions.values()) {
+                if (subscription.isSubscribed()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stats by operator class name, sorted by name.
+     */
+    public Map<String, OperatorStats> getOperatorStats() {
+        return Collections.unmodifiableMap(new TreeMap<>(mOperatorStats));
+    }
+
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (OperatorStats stats : getOperatorStats().values()) {
+            report.append(stats).append('\n');
+        }
+        report.append(getLiveSubscriptionCount()).append(" live subscriptions");
+        return report.toString();
+    }
+
+    public static final class OperatorStats {
+
+        private final String mName;
+        private final AtomicLong mValues = new AtomicLong();
+        private final AtomicLong mSelfNanos = new AtomicLong();
+        private final AtomicLong mMaxSelfNanos = new AtomicLong();
+        private final AtomicLong mThreadHops = new AtomicLong();
+
+        OperatorStats(String name) {
+            mName = name;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getValueCount() {
+            return mValues.get();
+        }
+
+        public long getTotalSelfNanos() {
+            return mSelfNanos.get();
+        }
+
+        public long getMaxSelfNanos() {
+            return mMaxSelfNanos.get();
+        }
+
+        public long getAverageSelfNanos() {
+            long values = mValues.get();
+            return values == 0 ? 0 : mSelfNanos.get() / values;
+        }
+
+        public long getThreadHopCount() {
+            return mThreadHops.get();
+        }
+
+        void record(long selfNanos) {
+            mValues.incrementAndGet();
+            mSelfNanos.addAndGet(selfNanos);
+            long max;
+            do {
+                max = mMaxSelfNanos.get();
+            } while (selfNanos > max && !mMaxSelfNanos.compareAndSet(max, selfNanos));
+        }
+
+        @Override
+        public String toString() {
+            return mName + ": " + getValueCount() + " onNext, avg "
+                    + TimeUnit.NANOSECONDS.toMicros(getAverageSelfNanos()) + " us, max "
+                    + TimeUnit.NANOSECONDS.toMicros(getMaxSelfNanos()) + " us, "
+                    + getThreadHopCount() + " thread hops";
+        }
+    }
+
+    public static final class LiveSubscription {
+
+        private final WeakReference<Subscription> mSubscription;
+        private final WeakReference<Object> mOwner;
+        private final StackTraceElement[] mStack;
+
+        LiveSubscription(Subscription subscription, Object owner, StackTraceElement[] stack) {
+            mSubscription = new WeakReference<>(subscription);
+            mOwner = owner != null ? new WeakReference<>(owner) : null;
+            mStack = stack;
+        }
+
+        public boolean isSubscribed() {
+            Subscription subscription = mSubscription.get();
+            return subscription != null && !subscription.isUnsubscribed();
+        }
+
+        public Object getOwner() {
+            return mOwner != null ? mOwner.get() : null;
+        }
+
+        /**
+         * Where subscribe() was called.
+         */
+        public StackTraceElement[] getStack() {
+            return mStack.clone();
+        }
+
+        /**
+         * A Throwable carrying the subscribe() stack, handy to log.
+         */
+        public Throwable toThrowable() {
+            Throwable subscribedHere = new Throwable("Subscribed here");
+            subscribedHere.setStackTrace(mStack);
+            return subscribedHere;
+        }
+    }
+
+    private static final class ProfiledOperator<R, T> implements Observable.Operator<R, T> {
+
+        private final Observable.Operator<R, T> mOperator;
+        private final OperatorStats mStats;
+
+        ProfiledOperator(Observable.Operator<R, T> operator, OperatorStats stats) {
+            mOperator = operator;
+            mStats = stats;
+        }
+
+        @Override
+        public Subscriber<? super T> call(Subscriber<? super R> child) {
+            LastThread lastThread = new LastThread();
+            Subscriber<? super T> parent = mOperator.call(new ChildProbe<>(child, mStats, lastThread));
+            return new ParentProbe<>(parent, mStats, lastThread);
+        }
+    }
+
+    /**
+     * The thread the last value went into the operator on.
+     */
+    private static final class LastThread {
+        volatile Thread mThread;
+    }
+
+    /**
+     * Sits before the operator: times its onNext(), minus what its child took.
+     */
+    private static final class ParentProbe<T> extends Subscriber<T> {
+
+        private final Subscriber<? super T> mParent;
+        private final OperatorStats mStats;
+        private final LastThread mLastThread;
+
+        ParentProbe(Subscriber<? super T> parent, OperatorStats stats, LastThread lastThread) {
+            // Shares the operator's subscriptions and hands it the upstream Producer.
+            super(parent);
+            mParent = parent;
+            mStats = stats;
+            mLastThread = lastThread;
+        }
+
+        // lift() calls onStart() on what the operator returned, which is now this.
+        @Override
+        public void onStart() {
+            mParent.onStart();
+        }
+
+        @Override
+        public void onNext(T value) {
+            mLastThread.mThread = Thread.currentThread();
+            long[] downstream = DOWNSTREAM_NANOS.get();
+            long outer = downstream[0];
+            downstream[0] = 0;
+            long start = System.nanoTime();
+            try {
+                mParent.onNext(value);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                mStats.record(Math.max(0, elapsed - downstream[0]));
+                downstream[0] = outer;
+            }
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            mParent.onError(e);
+        }
+
+        @Override
+        public void onCompleted() {
+            mParent.onCompleted();
+        }
+    }
+
+    /**
+     * Sits after the operator: adds the time its child takes to the current ParentProbe, and
+     * counts the values that come out on another thread than they went in.
+     */
+    private static final class ChildProbe<R> extends Subscriber<R> {
+
+        private final Subscriber<? super R> mChild;
+        private final OperatorStats mStats;
+        private final LastThread mLastThread;
+
+        ChildProbe(Subscriber<? super R> child, OperatorStats stats, LastThread lastThread) {
+            // Shares the child's subscriptions and passes Producers on to it.
+            super(child);
+            mChild = child;
+            mStats = stats;
+            mLastThread = lastThread;
+        }
+
+        @Override
+        public void onNext(R value) {
+            Thread lastThread = mLastThread.mThread;
+            if (lastThread != null && lastThread != Thread.currentThread()) {
+                mStats.mThreadHops.incrementAndGet();
+            }
+            long[] downstream = DOWNSTREAM_NANOS.get();
+            long start = System.nanoTime();
+            try {
+                mChild.onNext(value);
+            } finally {
+                downstream[0] += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            mChild.onError(e);
+        }
+
+        @Override
+        public void onCompleted() {
+            mChild.onCompleted();
+        }
+    }
+}
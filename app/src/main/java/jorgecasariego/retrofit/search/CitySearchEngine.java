@@ -0,0 +1,201 @@
+package jorgecasariego.retrofit.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Prefix search over the city gazetteer.
+ *
+ * The dataset is lower-cased once and split into contiguous shards. A query forks one task per
+ * shard on a dedicated work-stealing ForkJoinPool (we don't want to steal threads from
+ * Schedulers.io(), which is busy with the blocking calls) and joins the partial results back in
+ * shard order, so the merged list keeps the original ordering of the dataset and can be cut at
+ * the first k matches.
+ *
+ * Cancellation is cooperative: starting a new query cancels the previous one, and every shard
+ * checks its token every {@link #CANCELLATION_CHECK_INTERVAL} items.
+ */
+public class CitySearchEngine {
+
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private static final int CANCELLATION_CHECK_INTERVAL = 256;
+
+    // Below this size forking costs more than scanning the shard on the calling thread.
+    private static final int MIN_SHARD_SIZE = 1024;
+
+    private final String[] mCities;
+    private final String[] mLowerCaseCities;
+    private final ForkJoinPool mPool;
+    private final int mShardCount;
+    private final AtomicReference<SearchToken> mCurrentSearch = new AtomicReference<>();
+
+    // ForkJoinPool.commonPool() is only available from API 24, so we keep our own shared pool.
+    private static ForkJoinPool sSharedPool;
+
+    public CitySearchEngine(String[] cities) {
+        this(cities, sharedPool(), Runtime.getRuntime().availableProcessors());
+    }
+
+    public CitySearchEngine(String[] cities, int parallelism) {
+        this(cities, new ForkJoinPool(parallelism), parallelism);
+    }
+
+    public CitySearchEngine(String[] cities, ForkJoinPool pool, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount < 1: " + shardCount);
+        }
+        mCities = cities.clone();
+        mLowerCaseCities = new String[mCities.length];
+        for (int i = 0; i < mCities.length; i++) {
+            mLowerCaseCities[i] = mCities[i].toLowerCase(Locale.getDefault());
+        }
+        mPool = pool;
+        mShardCount = Math.max(1, Math.min(shardCount, mCities.length / MIN_SHARD_SIZE));
+    }
+
+    public int size() {
+        return mCities.length;
+    }
+
+    /**
+     * Returns every city starting with the given prefix, in dataset order.
+     */
+    public List<String> search(String prefix) {
+        return search(prefix, UNLIMITED);
+    }
+
+    /**
+     * Returns the first {@code limit} cities starting with the given prefix, in dataset order.
+     * Any search still running on this engine is cancelled first.
+     *
+     * @throws CancellationException if a newer search cancels this one before it finishes.
+     */
+    public List<String> search(String prefix, int limit) {
+        SearchToken token = new SearchToken();
+        SearchToken previous = mCurrentSearch.getAndSet(token);
+        if (previous != null) {
+            previous.cancel();
+        }
+
+        try {
+            if (prefix.isEmpty() || limit <= 0) {
+                return new ArrayList<>();
+            }
+
+            String lowerCasePrefix = prefix.toLowerCase(Locale.getDefault());
+            ShardTask root = new ShardTask(lowerCasePrefix, limit, token, 0, mCities.length, mShardCount);
+            List<String> result = mShardCount == 1 ? root.compute() : mPool.invoke(root);
+            if (token.isCancelled()) {
+                throw new CancellationException("Search for \"" + prefix + "\" was superseded");
+            }
+            return result;
+        } finally {
+            mCurrentSearch.compareAndSet(token, null);
+        }
+    }
+
+    /**
+     * Cancels the search currently running on this engine, if any.
+     */
+    public void cancel() {
+        SearchToken current = mCurrentSearch.getAndSet(null);
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    public void shutdown() {
+        cancel();
+        if (mPool != sSharedPool) {
+            mPool.shutdown();
+        }
+    }
+
+    private static synchronized ForkJoinPool sharedPool() {
+        if (sSharedPool == null) {
+            sSharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return sSharedPool;
+    }
+
+    static final class SearchToken {
+        private volatile boolean mCancelled;
+
+        void cancel() {
+            mCancelled = true;
+        }
+
+        boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    private final class ShardTask extends RecursiveTask<List<String>> {
+
+        private final String mPrefix;
+        private final int mLimit;
+        private final SearchToken mToken;
+        private final int mFrom;
+        private final int mTo;
+        private final int mShards;
+
+        ShardTask(String prefix, int limit, SearchToken token, int from, int to, int shards) {
+            mPrefix = prefix;
+            mLimit = limit;
+            mToken = token;
+            mFrom = from;
+            mTo = to;
+            mShards = shards;
+        }
+
+        @Override
+        protected List<String> compute() {
+            if (mShards <= 1) {
+                return scan();
+            }
+
+            int leftShards = mShards / 2;
+            int middle = mFrom + (int) ((long) (mTo - mFrom) * leftShards / mShards);
+            ShardTask left = new ShardTask(mPrefix, mLimit, mToken, mFrom, middle, leftShards);
+            ShardTask right = new ShardTask(mPrefix, mLimit, mToken, middle, mTo, mShards - leftShards);
+            right.fork();
+            List<String> leftResult = left.compute();
+            List<String> rightResult = right.join();
+            return merge(leftResult, rightResult);
+        }
+
+        private List<String> scan() {
+            List<String> matches = new ArrayList<>();
+            for (int i = mFrom; i < mTo; i++) {
+                if ((i - mFrom) % CANCELLATION_CHECK_INTERVAL == 0 && mToken.isCancelled()) {
+                    return Collections.emptyList();
+                }
+                if (mLowerCaseCities[i].startsWith(mPrefix)) {
+                    matches.add(mCities[i]);
+                    if (matches.size() >= mLimit) {
+                        break;
+                    }
+                }
+            }
+            return matches;
+        }
+
+        private List<String> merge(List<String> left, List<String> right) {
+            if (left.size() >= mLimit || right.isEmpty()) {
+                return left;
+            }
+            List<String> merged = new ArrayList<>(Math.min(mLimit, left.size() + right.size()));
+            merged.addAll(left);
+            int remaining = mLimit - left.size();
+            merged.addAll(right.size() > remaining ? right.subList(0, remaining) : right);
+            return merged;
+        }
+    }
+}
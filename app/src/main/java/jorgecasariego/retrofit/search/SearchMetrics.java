@@ -0,0 +1,98 @@
+package jorgecasariego.retrofit.search;
+
+/**
+ * Counters kept by a {@link SearchPipeline}.
+ *
+ * Latency is measured from the keystroke that produced a query until the screen shows its results,
+ * so it includes the debounce window, the search itself and the hop back to the UI thread.
+ */
+public class SearchMetrics {
+
+    private long mQueries;
+    private long mSearches;
+    private long mCancelledSearches;
+    private long mStaleResults;
+    private long mFailedSearches;
+    private long mRendered;
+    private long mTotalLatencyMillis;
+    private long mMaxLatencyMillis;
+    private long mLastLatencyMillis;
+
+    synchronized void onQuery() {
+        mQueries++;
+    }
+
+    synchronized void onSearchStarted() {
+        mSearches++;
+    }
+
+    synchronized void onSearchCancelled() {
+        mCancelledSearches++;
+    }
+
+    synchronized void onStaleResultDropped() {
+        mStaleResults++;
+    }
+
+    synchronized void onSearchFailed() {
+        mFailedSearches++;
+    }
+
+    synchronized void onRendered(long latencyMillis) {
+        mRendered++;
+        mTotalLatencyMillis += latencyMillis;
+        mLastLatencyMillis = latencyMillis;
+        mMaxLatencyMillis = Math.max(mMaxLatencyMillis, latencyMillis);
+    }
+
+    /** Every value that came into the pipeline, including the ones debounce swallowed. */
+    public synchronized long getQueryCount() {
+        return mQueries;
+    }
+
+    public synchronized long getSearchCount() {
+        return mSearches;
+    }
+
+    /** Searches that were still running when a newer query arrived. */
+    public synchronized long getCancelledSearchCount() {
+        return mCancelledSearches;
+    }
+
+    public synchronized long getStaleResultCount() {
+        return mStaleResults;
+    }
+
+    public synchronized long getFailedSearchCount() {
+        return mFailedSearches;
+    }
+
+    public synchronized long getRenderedCount() {
+        return mRendered;
+    }
+
+    public synchronized long getLastLatencyMillis() {
+        return mLastLatencyMillis;
+    }
+
+    public synchronized long getMaxLatencyMillis() {
+        return mMaxLatencyMillis;
+    }
+
+    public synchronized long getAverageLatencyMillis() {
+        return mRendered == 0 ? 0 : mTotalLatencyMillis / mRendered;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SearchMetrics{queries=" + mQueries
+                + ", searches=" + mSearches
+                + ", cancelled=" + mCancelledSearches
+                + ", stale=" + mStaleResults
+                + ", failed=" + mFailedSearches
+                + ", rendered=" + mRendered
+                + ", avgLatencyMs=" + getAverageLatencyMillis()
+                + ", maxLatencyMs=" + mMaxLatencyMillis
+                + "}";
+    }
+}
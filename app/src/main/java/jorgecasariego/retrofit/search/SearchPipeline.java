@@ -0,0 +1,189 @@
+package jorgecasariego.retrofit.search;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jorgecasariego.retrofit.rx.AdaptiveDebounce;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Func1;
+
+/**
+ * Turns a stream of search queries (usually one per keystroke) into a stream of results that are
+ * safe to render.
+ *
+ *  queries
+ *     |
+ *     V
+ *  stamp        --> remember when and in which order the query was typed
+ *     |
+ *     V
+ *  debounce     --> wait for the user to stop typing; the window adapts to the measured search
+ *                   latency and typing cadence, see AdaptiveDebounce
+ *     |
+ *     V
+ *  distinct     --> a query equal to the one searched just before is dropped: "ab", then
+ *                   "abc" deleted back to "ab" within one window, searches "ab" once. Only the
+ *                   previous query counts, "ab" -> "abc" -> "ab" with pauses searches three times
+ *     |
+ *     V
+ *  switchMap    --> a newer query unsubscribes from the search still in flight
+ *     |
+ *     V
+ *  observeOn
+ *     |
+ *     V
+ *  filter       --> anything older than the latest search that already sat in the observeOn
+ *                   queue is dropped, so results never go back in time
+ *
+ * Call {@link #onRendered(SearchResult)} once a result is on screen to feed the latency metrics.
+ */
+public class SearchPipeline {
+
+    private final Func1<String, Observable<List<String>>> mSearch;
+    private final AdaptiveDebounce<Query> mDebounce;
+    private final Scheduler mTimeScheduler;
+    private final Scheduler mResultScheduler;
+    private final SearchMetrics mMetrics = new SearchMetrics();
+    private final AtomicLong mSequence = new AtomicLong();
+    private volatile long mLatestSearch = -1;
+
+    /**
+     * @param search            runs one search; it is unsubscribed from when a newer query arrives.
+     * @param minDebounceMillis shortest wait for the user to stop typing, used when searches are fast.
+     * @param maxDebounceMillis longest wait for the user to stop typing, used when searches are slow.
+     * @param timeScheduler     scheduler used for the debounce timer and for timestamps.
+     * @param resultScheduler   scheduler results are delivered on, usually the main thread.
+     */
+    public SearchPipeline(Func1<String, Observable<List<String>>> search,
+                          long minDebounceMillis,
+                          long maxDebounceMillis,
+                          Scheduler timeScheduler,
+                          Scheduler resultScheduler) {
+        mSearch = search;
+        mDebounce = new AdaptiveDebounce<>(minDebounceMillis, maxDebounceMillis, timeScheduler);
+        mTimeScheduler = timeScheduler;
+        mResultScheduler = resultScheduler;
+    }
+
+    public Observable<SearchResult> results(Observable<String> queries) {
+        return queries
+                .map(new Func1<String, Query>() {
+                    @Override
+                    public Query call(String text) {
+                        mMetrics.onQuery();
+                        return new Query(text, mSequence.getAndIncrement(), mTimeScheduler.now());
+                    }
+                })
+                .lift(mDebounce)
+                .distinctUntilChanged(new Func1<Query, String>() {
+                    @Override
+                    public String call(Query query) {
+                        return query.mText;
+                    }
+                })
+                .switchMap(new Func1<Query, Observable<SearchResult>>() {
+                    @Override
+                    public Observable<SearchResult> call(Query query) {
+                        mLatestSearch = query.mSequence;
+                        return search(query);
+                    }
+                })
+                .observeOn(mResultScheduler)
+                .filter(new Func1<SearchResult, Boolean>() {
+                    @Override
+                    public Boolean call(SearchResult result) {
+                        if (result.mSequence != mLatestSearch) {
+                            mMetrics.onStaleResultDropped();
+                            return false;
+                        }
+                        return true;
+                    }
+                });
+    }
+
+    public void onRendered(SearchResult result) {
+        mMetrics.onRendered(mTimeScheduler.now() - result.mQueryTimeMillis);
+    }
+
+    public SearchMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    public long getDebounceWindowMillis() {
+        return mDebounce.getWindowMillis();
+    }
+
+    private Observable<SearchResult> search(final Query query) {
+        final AtomicBoolean finished = new AtomicBoolean();
+        final long startTime = mTimeScheduler.now();
+        mMetrics.onSearchStarted();
+        return mSearch.call(query.mText)
+                .map(new Func1<List<String>, SearchResult>() {
+                    @Override
+                    public SearchResult call(List<String> results) {
+                        mDebounce.recordLatency(mTimeScheduler.now() - startTime);
+                        return new SearchResult(query, results);
+                    }
+                })
+                .doOnTerminate(new Action0() {
+                    @Override
+                    public void call() {
+                        finished.set(true);
+                    }
+                })
+                .doOnUnsubscribe(new Action0() {
+                    @Override
+                    public void call() {
+                        if (!finished.get()) {
+                            mMetrics.onSearchCancelled();
+                        }
+                    }
+                })
+                // One failed search must not tear down the whole pipeline: the next keystroke
+                // should still get its results.
+                .onErrorResumeNext(new Func1<Throwable, Observable<SearchResult>>() {
+                    @Override
+                    public Observable<SearchResult> call(Throwable throwable) {
+                        mMetrics.onSearchFailed();
+                        return Observable.empty();
+                    }
+                });
+    }
+
+    private static final class Query {
+        final String mText;
+        final long mSequence;
+        final long mTimeMillis;
+
+        Query(String text, long sequence, long timeMillis) {
+            mText = text;
+            mSequence = sequence;
+            mTimeMillis = timeMillis;
+        }
+    }
+
+    public static final class SearchResult {
+        private final String mQuery;
+        private final List<String> mResults;
+        private final long mSequence;
+        private final long mQueryTimeMillis;
+
+        SearchResult(Query query, List<String> results) {
+            mQuery = query.mText;
+            mResults = results;
+            mSequence = query.mSequence;
+            mQueryTimeMillis = query.mTimeMillis;
+        }
+
+        public String getQuery() {
+            return mQuery;
+        }
+
+        public List<String> getResults() {
+            return mResults;
+        }
+    }
+}
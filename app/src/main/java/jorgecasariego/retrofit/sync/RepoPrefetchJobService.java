@@ -0,0 +1,145 @@
+package jorgecasariego.retrofit.sync;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.PersistableBundle;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jorgecasariego.retrofit.GitHubClient;
+import jorgecasariego.retrofit.ServiceGenerator;
+import jorgecasariego.retrofit.repository.RepoPrefetcher;
+import jorgecasariego.retrofit.rx.AppSchedulers;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+
+/**
+ * Refreshes the repo snapshots of the users the app follows (see RepoPrefetcher) while nobody is
+ * waiting for them: by default on an unmetered network, while the device charges and is idle,
+ * about twice a day. GithubActivity then opens on the snapshot instead of on an empty list.
+ *
+ * The system runs the job when the constraints hold, together with the other jobs waiting for
+ * the same conditions, so the radio is woken up once for all of them. All the users are fetched
+ * in the same run. If the constraints stop holding halfway, the calls are cancelled and the job
+ * is retried later; users whose snapshot was written by then are skipped.
+ */
+public class RepoPrefetchJobService extends JobService {
+
+    static final int JOB_ID = 1001;
+    static final String EXTRA_USERS = "users";
+
+    private Subscription mSubscription;
+
+    /**
+     * Schedules the job, unless it is already scheduled for the same users and constraints: the
+     * period would start over every time the app is opened. Persisted, so it survives reboots.
+     *
+     * @return false if JobScheduler refused it.
+     */
+    public static boolean schedule(Context context, String[] users, Constraints constraints) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        PersistableBundle extras = new PersistableBundle();
+        extras.putStringArray(EXTRA_USERS, users);
+        JobInfo job = constraints.applyTo(new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, RepoPrefetchJobService.class)))
+                .setExtras(extras)
+                .build();
+
+        for (JobInfo pending : jobScheduler.getAllPendingJobs()) {
+            if (pending.getId() == JOB_ID && isSameJob(pending, job)) {
+                return true;
+            }
+        }
+        return jobScheduler.schedule(job) == JobScheduler.RESULT_SUCCESS;
+    }
+
+    private static boolean isSameJob(JobInfo a, JobInfo b) {
+        return a.getNetworkType() == b.getNetworkType()
+                && a.isRequireCharging() == b.isRequireCharging()
+                && a.isRequireDeviceIdle() == b.isRequireDeviceIdle()
+                && a.getIntervalMillis() == b.getIntervalMillis()
+                && Arrays.equals(a.getExtras().getStringArray(EXTRA_USERS), b.getExtras().getStringArray(EXTRA_USERS));
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        String[] users = params.getExtras().getStringArray(EXTRA_USERS);
+        if (users == null || users.length == 0) {
+            return false;
+        }
+        GitHubClient client = ServiceGenerator.createService(GitHubClient.class);
+        RepoPrefetcher prefetcher = new RepoPrefetcher(client, RepoPrefetcher.snapshotDirectory(this),
+                RepoPrefetcher.DEFAULT_MAX_AGE_MILLIS, Schedulers.immediate());
+
+        // The snapshots are checked and written on the IO pool, jobFinished() can be called from
+        // any thread.
+        mSubscription = prefetcher.prefetch(Arrays.asList(users))
+                .toList()
+                .subscribeOn(AppSchedulers.io())
+                .subscribe(new Subscriber<List<Boolean>>() {
+                    @Override
+                    public void onCompleted() {
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        jobFinished(params, true);
+                    }
+
+                    @Override
+                    public void onNext(List<Boolean> refreshed) {
+                        // Users that failed are tried again with the system's backoff.
+                        jobFinished(params, refreshed.contains(false));
+                    }
+                });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (mSubscription != null) {
+            mSubscription.unsubscribe();
+        }
+        return true;
+    }
+
+    /**
+     * When the job may run. The default, OVERNIGHT, waits for all three conditions; every one of
+     * them can be dropped, e.g. for users who never leave their phone charging on Wi-Fi.
+     */
+    public static final class Constraints {
+
+        public static final long DEFAULT_PERIOD_MILLIS = TimeUnit.HOURS.toMillis(12);
+        public static final Constraints OVERNIGHT = new Constraints(true, true, true, DEFAULT_PERIOD_MILLIS);
+
+        private final boolean mUnmetered;
+        private final boolean mCharging;
+        private final boolean mIdle;
+        private final long mPeriodMillis;
+
+        /**
+         * @param unmetered false: any network will do.
+         */
+        public Constraints(boolean unmetered, boolean charging, boolean idle, long periodMillis) {
+            mUnmetered = unmetered;
+            mCharging = charging;
+            mIdle = idle;
+            mPeriodMillis = periodMillis;
+        }
+
+        JobInfo.Builder applyTo(JobInfo.Builder job) {
+            return job.setRequiredNetworkType(mUnmetered ? JobInfo.NETWORK_TYPE_UNMETERED : JobInfo.NETWORK_TYPE_ANY)
+                    .setRequiresCharging(mCharging)
+                    .setRequiresDeviceIdle(mIdle)
+                    .setPeriodic(mPeriodMillis)
+                    .setPersisted(true);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package jorgecasariego.retrofit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.*;
+
+public class DeadlineCallFactoryTest {
+
+    private final MockWebServer mServer = new MockWebServer();
+    private DeadlineCallFactory mFactory;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer.start();
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addNetworkInterceptor(new DeadlineInterceptor())
+                .build();
+        mFactory = new DeadlineCallFactory(client);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void aCallStillWaitingAtTheDeadlineFailsWithADeadlineError() throws Exception {
+        // The server reads the request and never answers.
+        mServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        long start = System.nanoTime();
+
+        IOException error = enqueue(request(Deadline.after(300, TimeUnit.MILLISECONDS)));
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(String.valueOf(error), error instanceof DeadlineExceededException);
+        assertTrue("failed after " + millis + "ms", millis < 2000);
+    }
+
+    @Test
+    public void theDeadlineIsNotSentToTheServer() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("[]"));
+
+        assertNull(enqueue(request(Deadline.after(10, TimeUnit.SECONDS))));
+
+        RecordedRequest recorded = mServer.takeRequest();
+        assertNull(recorded.getHeader(Deadline.HEADER));
+    }
+
+    @Test
+    public void aCallPastItsDeadlineIsNeverSent() throws Exception {
+        Deadline deadline = Deadline.after(0, TimeUnit.MILLISECONDS);
+
+        IOException error = enqueue(request(deadline));
+
+        assertTrue(error instanceof DeadlineExceededException);
+        assertEquals(0, mServer.getRequestCount());
+    }
+
+    @Test
+    public void noRedirectIsFollowedAfterTheDeadline() throws Exception {
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                Thread.sleep(300);
+                return new MockResponse().setResponseCode(302).setHeader("Location", "/moved");
+            }
+        });
+        // Without the factory's timer, only the interceptor stands between the slow redirect and
+        // a second request.
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addNetworkInterceptor(new DeadlineInterceptor())
+                .build();
+
+        try {
+            client.newCall(request(Deadline.after(200, TimeUnit.MILLISECONDS))).execute().close();
+            fail();
+        } catch (DeadlineExceededException expected) {
+        }
+
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void callsWithoutADeadlineAreLeftAlone() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("[]"));
+
+        assertNull(enqueue(new Request.Builder().url(mServer.url("/users/octocat/repos")).build()));
+    }
+
+    private Request request(Deadline deadline) {
+        return new Request.Builder()
+                .url(mServer.url("/users/octocat/repos"))
+                .header(Deadline.HEADER, deadline.toString())
+                .build();
+    }
+
+    /**
+     * @return the error the call failed with, or null if it got a response.
+     */
+    private IOException enqueue(Request request) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<IOException> error = new AtomicReference<>();
+        mFactory.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                error.set(e);
+                done.countDown();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                done.countDown();
+            }
+        });
+        assertTrue("no result", done.await(10, TimeUnit.SECONDS));
+        return error.get();
+    }
+}
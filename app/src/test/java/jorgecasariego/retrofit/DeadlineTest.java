@@ -0,0 +1,115 @@
+package jorgecasariego.retrofit;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.*;
+
+public class DeadlineTest {
+
+    private final TestScheduler mScheduler = new TestScheduler();
+
+    @Test
+    public void aStreamThatIsTooSlowEndsWithOneDeadlineError() {
+        Deadline deadline = Deadline.after(500, TimeUnit.MILLISECONDS, mScheduler);
+        final AtomicBoolean unsubscribed = new AtomicBoolean();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Observable.timer(1, TimeUnit.SECONDS, mScheduler)
+                .doOnUnsubscribe(new Action0() {
+                    @Override
+                    public void call() {
+                        unsubscribed.set(true);
+                    }
+                })
+                .compose(deadline.<Long>bound())
+                .subscribe(subscriber);
+        mScheduler.advanceTimeBy(499, TimeUnit.MILLISECONDS);
+        subscriber.assertNoTerminalEvent();
+
+        mScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+        subscriber.assertError(DeadlineExceededException.class);
+        assertTrue(unsubscribed.get());
+    }
+
+    @Test
+    public void itemsDoNotGiveTheStreamMoreTime() {
+        Deadline deadline = Deadline.after(500, TimeUnit.MILLISECONDS, mScheduler);
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Observable.interval(200, TimeUnit.MILLISECONDS, mScheduler)
+                .compose(deadline.<Long>bound())
+                .subscribe(subscriber);
+        mScheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+
+        subscriber.assertValues(0L, 1L);
+        subscriber.assertError(DeadlineExceededException.class);
+    }
+
+    @Test
+    public void aFastStreamIsNotTouched() {
+        Deadline deadline = Deadline.after(500, TimeUnit.MILLISECONDS, mScheduler);
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+
+        Observable.just(1, 2, 3).compose(deadline.<Integer>bound()).subscribe(subscriber);
+        mScheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+        subscriber.assertReceivedOnNext(Arrays.asList(1, 2, 3));
+        subscriber.assertCompleted();
+    }
+
+    @Test
+    public void laterStepsOnlyGetWhatIsLeft() {
+        Deadline deadline = Deadline.after(1, TimeUnit.SECONDS, mScheduler);
+        mScheduler.advanceTimeBy(700, TimeUnit.MILLISECONDS);
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        assertEquals(300, deadline.remainingMillis());
+        Observable.timer(400, TimeUnit.MILLISECONDS, mScheduler)
+                .compose(deadline.<Long>bound())
+                .subscribe(subscriber);
+        mScheduler.advanceTimeBy(300, TimeUnit.MILLISECONDS);
+
+        subscriber.assertError(DeadlineExceededException.class);
+    }
+
+    @Test
+    public void subscribingAfterTheDeadlineNeverStartsTheWork() {
+        Deadline deadline = Deadline.after(100, TimeUnit.MILLISECONDS, mScheduler);
+        mScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        final AtomicBoolean subscribed = new AtomicBoolean();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Observable.timer(1, TimeUnit.MILLISECONDS, mScheduler)
+                .doOnSubscribe(new Action0() {
+                    @Override
+                    public void call() {
+                        subscribed.set(true);
+                    }
+                })
+                .compose(deadline.<Long>bound())
+                .subscribe(subscriber);
+
+        subscriber.assertError(DeadlineExceededException.class);
+        assertFalse(subscribed.get());
+    }
+
+    @Test
+    public void theHeaderValueGivesTheSameDeadline() {
+        Deadline deadline = Deadline.after(10, TimeUnit.SECONDS);
+
+        Deadline sent = Deadline.fromHeader(deadline.toString());
+
+        assertTrue(Math.abs(sent.remainingMillis() - deadline.remainingMillis()) < 100);
+        assertNull(Deadline.fromHeader(null));
+    }
+}
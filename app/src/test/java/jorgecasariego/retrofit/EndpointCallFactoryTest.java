@@ -0,0 +1,261 @@
+package jorgecasariego.retrofit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the calls against several local servers standing in for replicas: a fast one, a slow one
+ * and a broken one.
+ */
+public class EndpointCallFactoryTest {
+
+    private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+    private final List<MockWebServer> mServers = new ArrayList<>();
+    private final OkHttpClient mClient = new OkHttpClient();
+
+    @After
+    public void tearDown() throws IOException {
+        for (MockWebServer server : mServers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void callsGoToTheFastestEndpoint() throws Exception {
+        MockWebServer slow = server(150, 200);
+        MockWebServer fast = server(0, 200);
+        EndpointCallFactory factory = factory(NEVER, slow, fast);
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals(200, execute(factory, get(slow)));
+        }
+
+        // Each got one probe to begin with, the fast one the rest.
+        assertEquals(1, slow.getRequestCount());
+        assertEquals(49, fast.getRequestCount());
+    }
+
+    @Test
+    public void aBrokenEndpointIsFailedOverWithoutAnError() throws Exception {
+        MockWebServer broken = server(0, 503);
+        MockWebServer healthy = server(20, 200);
+        EndpointSelector selector = new EndpointSelector(NEVER);
+        EndpointCallFactory factory = factory(selector, broken, healthy);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(200, execute(factory, get(broken)));
+        }
+
+        assertEquals(1, broken.getRequestCount());
+        assertTrue(selector.getEndpoints().get(0).getErrorRate() > 0);
+    }
+
+    @Test
+    public void anEndpointThatIsDownIsFailedOver() throws Exception {
+        MockWebServer down = new MockWebServer();
+        down.start();
+        HttpUrl downUrl = down.url("/");
+        down.shutdown();
+        MockWebServer up = server(0, 200);
+        EndpointSelector selector = new EndpointSelector(NEVER);
+        selector.setEndpoints(Arrays.asList(downUrl, up.url("/")));
+        EndpointCallFactory factory = new EndpointCallFactory(mClient, selector);
+
+        Request request = new Request.Builder().url(downUrl.resolve("/users/octocat/repos")).build();
+        assertEquals(200, enqueue(factory, request));
+        assertEquals(1, up.getRequestCount());
+    }
+
+    @Test
+    public void theOtherEndpointsAreProbed() throws Exception {
+        MockWebServer slow = server(100, 200);
+        MockWebServer fast = server(0, 200);
+        EndpointCallFactory factory = factory(200, slow, fast);
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (System.nanoTime() < end) {
+            execute(factory, get(slow));
+            Thread.sleep(10);
+        }
+
+        // A probe about every 200ms, everything else to the fast one.
+        assertTrue("probes " + slow.getRequestCount(), slow.getRequestCount() >= 3);
+        assertTrue(fast.getRequestCount() > slow.getRequestCount());
+    }
+
+    @Test
+    public void aSlowEndpointThatGotFastIsPickedAgain() throws Exception {
+        // The servers take their time on the fake clock, and don't sleep.
+        TestScheduler clock = new TestScheduler();
+        long[] firstDelay = {150};
+        MockWebServer first = server(firstDelay, clock);
+        MockWebServer second = server(new long[]{40}, clock);
+        EndpointCallFactory factory = factory(new EndpointSelector(200, clock), first, second);
+        for (int i = 0; i < 10; i++) {
+            execute(factory, get(first));
+        }
+        assertTrue(first.getRequestCount() < second.getRequestCount());
+
+        // Probed every 200ms, after a few probes its average is below the other one's.
+        firstDelay[0] = 0;
+        for (int i = 0; i < 30; i++) {
+            execute(factory, get(first));
+        }
+        int firstBefore = first.getRequestCount();
+        int secondBefore = second.getRequestCount();
+        for (int i = 0; i < 10; i++) {
+            execute(factory, get(first));
+        }
+
+        assertEquals(firstBefore + 10, first.getRequestCount());
+        assertEquals(secondBefore, second.getRequestCount());
+    }
+
+    @Test
+    public void aCallWithNoEndpointLeftFails() throws Exception {
+        MockWebServer replica = server(0, 200);
+        EndpointSelector selector = new EndpointSelector(NEVER);
+        EndpointCallFactory factory = factory(selector, replica);
+        Call call = factory.newCall(get(replica));
+
+        // Replaced between newCall() and execute().
+        selector.setEndpoints(Collections.<HttpUrl>emptyList());
+
+        try {
+            call.execute();
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(0, replica.getRequestCount());
+    }
+
+    @Test
+    public void postsAreNeverSentTwice() throws Exception {
+        MockWebServer broken = server(0, 503);
+        MockWebServer healthy = server(0, 200);
+        EndpointCallFactory factory = factory(NEVER, broken, healthy);
+
+        Request post = new Request.Builder()
+                .url(broken.url("/user/repos"))
+                .post(RequestBody.create(MediaType.parse("application/json"), "{}"))
+                .build();
+
+        assertEquals(503, execute(factory, post));
+        assertEquals(0, healthy.getRequestCount());
+    }
+
+    @Test
+    public void requestsToOtherHostsAreLeftAlone() throws Exception {
+        MockWebServer replica = server(0, 200);
+        MockWebServer elsewhere = server(0, 200);
+        EndpointCallFactory factory = factory(NEVER, replica);
+
+        execute(factory, get(elsewhere));
+
+        assertEquals(0, replica.getRequestCount());
+        assertEquals(1, elsewhere.getRequestCount());
+    }
+
+    private MockWebServer server(long delayMillis, int code) throws IOException {
+        return server(new long[]{delayMillis}, code);
+    }
+
+    private MockWebServer server(final long[] delayMillis, final int code) throws IOException {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                Thread.sleep(delayMillis[0]);
+                return new MockResponse().setResponseCode(code).setBody("[]");
+            }
+        });
+        server.start();
+        mServers.add(server);
+        return server;
+    }
+
+    private MockWebServer server(final long[] delayMillis, final TestScheduler clock) throws IOException {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                clock.advanceTimeBy(delayMillis[0], TimeUnit.MILLISECONDS);
+                return new MockResponse().setBody("[]");
+            }
+        });
+        server.start();
+        mServers.add(server);
+        return server;
+    }
+
+    private EndpointCallFactory factory(long probeIntervalMillis, MockWebServer... servers) {
+        return factory(new EndpointSelector(probeIntervalMillis), servers);
+    }
+
+    private EndpointCallFactory factory(EndpointSelector selector, MockWebServer... servers) {
+        List<HttpUrl> endpoints = new ArrayList<>();
+        for (MockWebServer server : servers) {
+            endpoints.add(server.url("/"));
+        }
+        selector.setEndpoints(endpoints);
+        return new EndpointCallFactory(mClient, selector);
+    }
+
+    private static Request get(MockWebServer server) {
+        return new Request.Builder().url(server.url("/users/octocat/repos")).build();
+    }
+
+    private static int execute(EndpointCallFactory factory, Request request) throws IOException {
+        Response response = factory.newCall(request).execute();
+        response.close();
+        return response.code();
+    }
+
+    private static int enqueue(EndpointCallFactory factory, Request request) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Object> result = new AtomicReference<>();
+        factory.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                result.set(e);
+                done.countDown();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                result.set(response.code());
+                done.countDown();
+            }
+        });
+        assertTrue("no result", done.await(10, TimeUnit.SECONDS));
+        assertTrue(String.valueOf(result.get()), result.get() instanceof Integer);
+        return (Integer) result.get();
+    }
+}
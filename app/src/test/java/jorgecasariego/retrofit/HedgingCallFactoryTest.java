@@ -0,0 +1,219 @@
+package jorgecasariego.retrofit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the calls against a local server that answers most requests at once and holds back the
+ * ones picked as stragglers.
+ */
+public class HedgingCallFactoryTest {
+
+    private static final long STRAGGLER_MILLIS = 2000;
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final List<String> mHedgeHeaders = Collections.synchronizedList(new ArrayList<String>());
+    private ScheduledExecutorService mTimer;
+    private volatile Straggling mStraggling = Straggling.NONE;
+
+    private enum Straggling {
+        NONE,
+        EVERY_TWENTIETH,
+        ALL
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int number = mRequests.incrementAndGet();
+                mHedgeHeaders.add(request.getHeader(HedgingCallFactory.HEADER));
+                if (mStraggling == Straggling.ALL
+                        || (mStraggling == Straggling.EVERY_TWENTIETH && number % 20 == 0)) {
+                    Thread.sleep(mStraggling == Straggling.ALL ? 100 : STRAGGLER_MILLIS);
+                }
+                return new MockResponse().setBody("[]");
+            }
+        });
+        mServer.start();
+        mTimer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mTimer.shutdownNow();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void stragglersAreHedgedAndTheFirstResponseWins() throws Exception {
+        HedgingCallFactory factory = factory(0.1);
+        warmUp(factory);
+        mStraggling = Straggling.EVERY_TWENTIETH;
+
+        int calls = 100;
+        long slowest = 0;
+        for (int i = 0; i < calls; i++) {
+            slowest = Math.max(slowest, get(factory, HedgingCallFactory.HEDGE_HEADER));
+        }
+
+        assertTrue("slowest call " + slowest + "ms", slowest < STRAGGLER_MILLIS / 2);
+        assertTrue(factory.getHedgedCount() > 0);
+        assertTrue(factory.getHedgeWinCount() > 0);
+    }
+
+    @Test
+    public void hedgesStayWithinTheBudget() throws Exception {
+        HedgingCallFactory factory = factory(HedgingCallFactory.DEFAULT_BUDGET_RATIO);
+        warmUp(factory);
+        // Now every request is slower than the percentile, each one would like a hedge.
+        mStraggling = Straggling.ALL;
+
+        int calls = 60;
+        for (int i = 0; i < calls; i++) {
+            get(factory, HedgingCallFactory.HEDGE_HEADER);
+        }
+
+        double allowed = (calls + HedgingCallFactory.MIN_SAMPLES) * HedgingCallFactory.DEFAULT_BUDGET_RATIO
+                + HedgingCallFactory.MAX_BUDGET;
+        assertTrue("hedged " + factory.getHedgedCount(), factory.getHedgedCount() > 0);
+        assertTrue("hedged " + factory.getHedgedCount(), factory.getHedgedCount() <= allowed);
+    }
+
+    @Test
+    public void onlyGetsThatOptInAreHedged() throws Exception {
+        HedgingCallFactory factory = factory(1);
+        warmUp(factory);
+        mStraggling = Straggling.ALL;
+        int requestsBefore = mRequests.get();
+
+        get(factory, null);
+        call(factory, new Request.Builder()
+                .url(mServer.url("/repos"))
+                .header(HedgingCallFactory.HEADER, "on")
+                .post(RequestBody.create(MediaType.parse("application/json"), "{}"))
+                .build());
+
+        assertEquals(0, factory.getHedgedCount());
+        assertEquals(requestsBefore + 2, mRequests.get());
+    }
+
+    @Test
+    public void nothingIsHedgedWhileHedgingIsOff() throws Exception {
+        HedgingCallFactory factory = factory(1);
+        warmUp(factory);
+        mStraggling = Straggling.ALL;
+        factory.setHedgingEnabled(false);
+        int requestsBefore = mRequests.get();
+
+        for (int i = 0; i < 5; i++) {
+            get(factory, HedgingCallFactory.HEDGE_HEADER);
+        }
+
+        assertEquals(0, factory.getHedgedCount());
+        assertEquals(requestsBefore + 5, mRequests.get());
+    }
+
+    @Test
+    public void theOptInHeaderIsNotSent() throws Exception {
+        get(factory(0.1), HedgingCallFactory.HEDGE_HEADER);
+
+        assertEquals(Collections.<String>singletonList(null), mHedgeHeaders);
+    }
+
+    @Test
+    public void nothingIsHedgedBeforeThereIsAPercentile() {
+        HedgingCallFactory factory = factory(0.1);
+
+        assertEquals(-1, factory.getHedgeDelayMillis());
+    }
+
+    @Test
+    public void theWindowGivesThePercentileOfTheLastLatencies() {
+        HedgingCallFactory.LatencyWindow window = new HedgingCallFactory.LatencyWindow(100);
+        for (int i = 1; i <= 300; i++) {
+            window.add(i);
+        }
+
+        assertEquals(295, window.percentile(95, 20));
+        assertEquals(201, window.percentile(1, 20));
+    }
+
+    private HedgingCallFactory factory(double budgetRatio) {
+        return new HedgingCallFactory(new OkHttpClient(), HedgingCallFactory.DEFAULT_PERCENTILE, 10,
+                budgetRatio, mTimer);
+    }
+
+    private void warmUp(HedgingCallFactory factory) throws Exception {
+        for (int i = 0; i < HedgingCallFactory.MIN_SAMPLES; i++) {
+            get(factory, HedgingCallFactory.HEDGE_HEADER);
+        }
+        assertTrue(factory.getHedgeDelayMillis() >= 0);
+    }
+
+    /**
+     * @return how long the call took, in milliseconds.
+     */
+    private long get(HedgingCallFactory factory, String hedgeHeader) throws Exception {
+        Request.Builder request = new Request.Builder().url(mServer.url("/users/octocat/repos"));
+        if (hedgeHeader != null) {
+            String[] header = hedgeHeader.split(": ");
+            request.header(header[0], header[1]);
+        }
+        return call(factory, request.build());
+    }
+
+    private long call(HedgingCallFactory factory, Request request) throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger results = new AtomicInteger();
+        long start = System.nanoTime();
+        factory.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                results.incrementAndGet();
+                done.countDown();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                assertEquals(200, response.code());
+                response.close();
+                results.incrementAndGet();
+                done.countDown();
+            }
+        });
+        assertTrue("no response", done.await(10, TimeUnit.SECONDS));
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // A loser that answers late must not be delivered too.
+        Thread.sleep(5);
+        assertEquals(1, results.get());
+        return millis;
+    }
+}
@@ -0,0 +1,138 @@
+package jorgecasariego.retrofit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import static org.junit.Assert.*;
+
+/**
+ * Robolectric runs the tests on the main thread, like a call made by mistake from an activity.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class MainThreadGuardTest {
+
+    private OkHttpClient mClient;
+
+    @Before
+    public void setUp() {
+        MainThreadGuard.setEnabled(true);
+        MainThreadGuard.clearViolations();
+        mClient = new OkHttpClient.Builder()
+                .addInterceptor(new MainThreadGuardInterceptor())
+                .addInterceptor(new CannedResponse())
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        MainThreadGuard.setFailFast(false);
+        MainThreadGuard.clearViolations();
+    }
+
+    @Test
+    public void executeOnTheMainThreadIsRecordedWithItsCaller() throws Exception {
+        mClient.newCall(new Request.Builder().url("https://api.github.com/users/x/repos").build()).execute();
+
+        List<MainThreadGuard.Violation> violations = MainThreadGuard.getViolations();
+        assertEquals(1, violations.size());
+        assertEquals("GET https://api.github.com/users/x/repos", violations.get(0).getCall());
+        assertTrue(violations.get(0).getDurationNanos() > 0);
+        assertTrue(calledFrom(violations.get(0), "executeOnTheMainThreadIsRecordedWithItsCaller"));
+    }
+
+    @Test
+    public void executeOnABackgroundThreadIsFine() throws Exception {
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        Thread background = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mClient.newCall(new Request.Builder().url("https://api.github.com/").build()).execute();
+                } catch (IOException e) {
+                    error.set(e);
+                }
+            }
+        });
+        background.start();
+        background.join();
+
+        assertNull(error.get());
+        assertTrue(MainThreadGuard.getViolations().isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failFastThrowsInsteadOfExecuting() throws Exception {
+        MainThreadGuard.setFailFast(true);
+
+        mClient.newCall(new Request.Builder().url("https://api.github.com/").build()).execute();
+    }
+
+    @Test
+    public void blockingRestClientCallsAreRecorded() {
+        new RestClient(RuntimeEnvironment.application).searchForCity("");
+
+        List<MainThreadGuard.Violation> violations = MainThreadGuard.getViolations();
+        assertEquals(1, violations.size());
+        assertEquals("RestClient.searchForCity()", violations.get(0).getCall());
+        assertTrue(violations.get(0).getDurationNanos() >= 500 * 1000000L);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failFastAppliesToRestClientToo() {
+        MainThreadGuard.setFailFast(true);
+
+        new RestClient(RuntimeEnvironment.application).getFavoriteTvShows();
+    }
+
+    @Test
+    public void disabledGuardRecordsNothing() throws Exception {
+        MainThreadGuard.setEnabled(false);
+
+        mClient.newCall(new Request.Builder().url("https://api.github.com/").build()).execute();
+
+        assertTrue(MainThreadGuard.getViolations().isEmpty());
+    }
+
+    private static boolean calledFrom(MainThreadGuard.Violation violation, String method) {
+        for (StackTraceElement frame : violation.getStack().getStackTrace()) {
+            if (frame.getMethodName().equals(method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Answers every request without touching the network.
+     */
+    private static final class CannedResponse implements Interceptor {
+        @Override
+        public Response intercept(Chain chain) {
+            return new Response.Builder()
+                    .request(chain.request())
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .message("OK")
+                    .body(ResponseBody.create(MediaType.parse("application/json"), "[]"))
+                    .build();
+        }
+    }
+}
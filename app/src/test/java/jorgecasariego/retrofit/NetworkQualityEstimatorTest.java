@@ -0,0 +1,148 @@
+package jorgecasariego.retrofit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Against a local server, as it is and throttled down to a slow mobile link.
+ */
+public class NetworkQualityEstimatorTest {
+
+    // About what GitHub sends for a repo, without the urls.
+    private static final int REPO_BYTES = 300;
+    // 20 KB/s, 160 kbps.
+    private static final int THROTTLE_BYTES = 1024;
+    private static final long THROTTLE_PERIOD_MILLIS = 50;
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final NetworkQualityEstimator mEstimator = new NetworkQualityEstimator();
+    private final OkHttpClient mClient = new OkHttpClient.Builder()
+            .addNetworkInterceptor(mEstimator)
+            .build();
+
+    @Before
+    public void setUp() throws IOException {
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void anUnthrottledLinkIsFast() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            mServer.enqueue(new MockResponse().setBody(repos(200)));
+            fetch();
+        }
+
+        assertEquals(mEstimator.toString(), NetworkQuality.FAST, mEstimator.getQuality());
+        assertEquals(100, mEstimator.getQuality().getPageSize());
+    }
+
+    @Test
+    public void aThrottledLinkIsSlowAndGetsSmallPagesSooner() throws Exception {
+        for (int i = 0; i < NetworkQualityEstimator.MIN_SAMPLES; i++) {
+            mServer.enqueue(throttled(repos(60)));
+            fetch();
+        }
+        assertEquals(mEstimator.toString(), NetworkQuality.SLOW, mEstimator.getQuality());
+        assertTrue(mEstimator.getBandwidthKbps() < NetworkQualityEstimator.SLOW_BANDWIDTH_KBPS);
+
+        // The first page on this link, at the page size it is given and at the one a fast link gets.
+        mServer.enqueue(throttled(repos(NetworkQuality.SLOW.getPageSize())));
+        long smallPageMillis = fetch();
+        mServer.enqueue(throttled(repos(NetworkQuality.FAST.getPageSize())));
+        long largePageMillis = fetch();
+
+        String pages = mEstimator + ": first page of " + NetworkQuality.SLOW.getPageSize() + " repos in "
+                + smallPageMillis + "ms, of " + NetworkQuality.FAST.getPageSize() + " in " + largePageMillis + "ms";
+        // The throttle alone makes the large page take this long.
+        long largePageMinMillis = NetworkQuality.FAST.getPageSize() * REPO_BYTES / THROTTLE_BYTES
+                * THROTTLE_PERIOD_MILLIS;
+        assertTrue(pages, largePageMillis >= largePageMinMillis);
+        assertTrue(pages, smallPageMillis * 2 < largePageMillis);
+    }
+
+    @Test
+    public void smallBodiesOnlyTellTheRoundTrip() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            mServer.enqueue(new MockResponse().setBody("[]"));
+            fetch();
+        }
+
+        assertEquals(-1, mEstimator.getBandwidthKbps());
+        assertTrue(mEstimator.getRttMillis() >= 0);
+        assertEquals(NetworkQuality.MODERATE, mEstimator.getQuality());
+    }
+
+    @Test
+    public void listenersHearOfChangesOnly() {
+        final List<NetworkQuality> changes = new ArrayList<>();
+        mEstimator.addListener(new NetworkQualityEstimator.Listener() {
+            @Override
+            public void onQualityChanged(NetworkQuality quality) {
+                changes.add(quality);
+            }
+        });
+
+        for (int i = 0; i < 5; i++) {
+            mEstimator.recordRtt(1500);
+        }
+        // The average comes down below a second after a few fast round trips.
+        for (int i = 0; i < 10; i++) {
+            mEstimator.recordRtt(100);
+        }
+
+        assertEquals(Arrays.asList(NetworkQuality.SLOW, NetworkQuality.MODERATE), changes);
+    }
+
+    private MockResponse throttled(String body) {
+        return new MockResponse()
+                .setBody(body)
+                .throttleBody(THROTTLE_BYTES, THROTTLE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return how long the whole response took.
+     */
+    private long fetch() throws IOException {
+        long start = System.nanoTime();
+        Response response = mClient.newCall(new Request.Builder().url(mServer.url("/users/octocat/repos")).build())
+                .execute();
+        response.body().string();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static String repos(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            int start = json.length();
+            json.append("{\"id\":").append(i).append(",\"name\":\"repo-").append(i).append("\",\"description\":\"");
+            while (json.length() - start < REPO_BYTES - 2) {
+                json.append('x');
+            }
+            json.append("\"}");
+        }
+        return json.append(']').toString();
+    }
+}
@@ -0,0 +1,182 @@
+package jorgecasariego.retrofit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import static org.junit.Assert.*;
+
+public class PriorityCallFactoryTest {
+
+    private final List<String> mStarted = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> mPriorityHeaders = Collections.synchronizedList(new ArrayList<String>());
+    private final Semaphore mStartedSignal = new Semaphore(0);
+    private final Semaphore mGate = new Semaphore(0);
+    private PriorityCallFactory mFactory;
+
+    @Before
+    public void setUp() {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        Request request = chain.request();
+                        mStarted.add(request.url().encodedPath());
+                        mPriorityHeaders.add(request.header(RequestPriority.HEADER));
+                        mStartedSignal.release();
+                        mGate.acquireUninterruptibly();
+                        return new Response.Builder()
+                                .request(request)
+                                .protocol(Protocol.HTTP_1_1)
+                                .code(200)
+                                .message("OK")
+                                .body(ResponseBody.create(MediaType.parse("text/plain"), "ok"))
+                                .build();
+                    }
+                })
+                .build();
+        mFactory = new PriorityCallFactory(client, 2, 1);
+    }
+
+    @After
+    public void tearDown() {
+        mGate.release(100);
+    }
+
+    @Test
+    public void userCallsGoBeforeQueuedBackgroundCalls() throws Exception {
+        enqueue("/background1", RequestPriority.BACKGROUND_HEADER);
+        enqueue("/background2", RequestPriority.BACKGROUND_HEADER);
+        enqueue("/user1", RequestPriority.USER_HEADER);
+        enqueue("/user2", RequestPriority.USER_HEADER);
+
+        // Two slots, and only one of them for background work.
+        awaitStarted(2);
+        // They run on two OkHttp threads, so either may have started first.
+        assertEquals(new HashSet<>(Arrays.asList("/background1", "/user1")), new HashSet<>(mStarted));
+        assertEquals(1, mFactory.getQueuedCount(RequestPriority.BACKGROUND));
+        assertEquals(1, mFactory.getQueuedCount(RequestPriority.USER));
+
+        mGate.release();
+        awaitStarted(1);
+        assertEquals("/user2", mStarted.get(2));
+
+        mGate.release(2);
+        awaitStarted(1);
+        assertEquals("/background2", mStarted.get(3));
+    }
+
+    @Test
+    public void backgroundCallsNeverTakeEverySlot() throws Exception {
+        enqueue("/background1", RequestPriority.BACKGROUND_HEADER);
+        enqueue("/background2", RequestPriority.BACKGROUND_HEADER);
+        enqueue("/background3", RequestPriority.BACKGROUND_HEADER);
+
+        awaitStarted(1);
+        assertFalse(mStartedSignal.tryAcquire(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, mFactory.getRunningCount());
+
+        enqueue("/default", null);
+        awaitStarted(1);
+        assertEquals("/default", mStarted.get(1));
+    }
+
+    @Test
+    public void raisingMaxCallsStartsQueuedCalls() throws Exception {
+        enqueue("/user1", RequestPriority.USER_HEADER);
+        enqueue("/user2", RequestPriority.USER_HEADER);
+        enqueue("/user3", RequestPriority.USER_HEADER);
+        awaitStarted(2);
+        assertFalse(mStartedSignal.tryAcquire(200, TimeUnit.MILLISECONDS));
+
+        mFactory.setMaxCalls(3);
+
+        awaitStarted(1);
+        assertEquals(3, mFactory.getRunningCount());
+    }
+
+    @Test
+    public void thePriorityHeaderIsNotSent() throws Exception {
+        enqueue("/user", RequestPriority.USER_HEADER);
+
+        awaitStarted(1);
+        assertEquals(Collections.<String>singletonList(null), mPriorityHeaders);
+    }
+
+    @Test
+    public void cancellingAQueuedCallFailsItWithoutSendingIt() throws Exception {
+        enqueue("/user1", RequestPriority.USER_HEADER);
+        enqueue("/user2", RequestPriority.USER_HEADER);
+        awaitStarted(2);
+
+        final CountDownLatch failed = new CountDownLatch(1);
+        final AtomicReference<IOException> error = new AtomicReference<>();
+        Call queued = mFactory.newCall(request("/user3", RequestPriority.USER_HEADER));
+        queued.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                error.set(e);
+                failed.countDown();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+            }
+        });
+        queued.cancel();
+
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        assertTrue(queued.isCanceled());
+        mGate.release(2);
+        assertFalse(mStartedSignal.tryAcquire(200, TimeUnit.MILLISECONDS));
+        assertFalse(mStarted.contains("/user3"));
+    }
+
+    private void enqueue(String path, String priorityHeader) {
+        mFactory.newCall(request(path, priorityHeader)).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+            }
+        });
+    }
+
+    private static Request request(String path, String priorityHeader) {
+        Request.Builder request = new Request.Builder().url("https://api.github.com" + path);
+        if (priorityHeader != null) {
+            String[] header = priorityHeader.split(": ");
+            request.header(header[0], header[1]);
+        }
+        return request.build();
+    }
+
+    private void awaitStarted(int calls) throws InterruptedException {
+        assertTrue("calls didn't start", mStartedSignal.tryAcquire(calls, 5, TimeUnit.SECONDS));
+    }
+}
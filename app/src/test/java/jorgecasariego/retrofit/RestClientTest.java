@@ -0,0 +1,88 @@
+package jorgecasariego.retrofit;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import rx.SingleSubscriber;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.*;
+
+public class RestClientTest {
+
+    @Test
+    public void getFavoriteTvShowsAsync_emitsAfterSimulatedLatency() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        RestClient restClient = new RestClient(null, scheduler);
+        TestSubscriber<List<String>> subscriber = new TestSubscriber<>();
+
+        restClient.getFavoriteTvShowsAsync().subscribe(subscriber);
+
+        scheduler.advanceTimeBy(4999, TimeUnit.MILLISECONDS);
+        subscriber.assertNoValues();
+
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        subscriber.assertValueCount(1);
+        subscriber.assertCompleted();
+        assertEquals(14, subscriber.getOnNextEvents().get(0).size());
+    }
+
+    @Test
+    public void getFavoriteTvShowsAsync_stopsOnUnsubscribe() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        RestClient restClient = new RestClient(null, scheduler);
+        TestSubscriber<List<String>> subscriber = new TestSubscriber<>();
+
+        restClient.getFavoriteTvShowsAsync().subscribe(subscriber);
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        subscriber.unsubscribe();
+        scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+
+        subscriber.assertNoValues();
+        subscriber.assertNoTerminalEvent();
+    }
+
+    @Test
+    public void getFavoriteTvShowsWithExceptionAsync_emitsError() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        RestClient restClient = new RestClient(null, scheduler);
+        TestSubscriber<List<String>> subscriber = new TestSubscriber<>();
+
+        restClient.getFavoriteTvShowsWithExceptionAsync().subscribe(subscriber);
+        scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+
+        subscriber.assertError(RuntimeException.class);
+    }
+
+    @Test
+    public void tenThousandConcurrentCalls_doNotCreateTenThousandThreads() throws Exception {
+        int calls = 10000;
+        RestClient restClient = new RestClient(null);
+        final CountDownLatch done = new CountDownLatch(calls);
+        int threadsBefore = Thread.activeCount();
+
+        for (int i = 0; i < calls; i++) {
+            restClient.getFavoriteTvShowsAsync().subscribe(new SingleSubscriber<List<String>>() {
+                @Override
+                public void onSuccess(List<String> tvShows) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    done.countDown();
+                }
+            });
+        }
+        int threadsWhilePending = Thread.activeCount();
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        int createdThreads = threadsWhilePending - threadsBefore;
+        // Computation event loops plus RxJava housekeeping threads, nowhere near one per call.
+        assertTrue(createdThreads < 100);
+    }
+}
@@ -0,0 +1,112 @@
+package jorgecasariego.retrofit.adapter;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jorgecasariego.retrofit.BuildConfig;
+import jorgecasariego.retrofit.model.GitHubRepo;
+import jorgecasariego.retrofit.repository.PagedList;
+import rx.Subscription;
+import rx.subscriptions.Subscriptions;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class GithubAdapterTest {
+
+    private static final int REPOS = 3000;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private int mInflations;
+    private GithubAdapter mAdapter;
+    private RecyclerView mRecyclerView;
+
+    @Before
+    public void setUp() {
+        mAdapter = new GithubAdapter(RuntimeEnvironment.application, createRepos(1000, REPOS)) {
+            @Override
+            public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+                mInflations++;
+                return super.onCreateViewHolder(parent, viewType);
+            }
+        };
+        mRecyclerView = new RecyclerView(RuntimeEnvironment.application);
+        mAdapter.attachTo(mRecyclerView, new LinearLayoutManager(RuntimeEnvironment.application));
+        layout();
+    }
+
+    @Test
+    public void scrollingThroughThousandsOfReposOnlyInflatesAScreenful() {
+        int inflationsForFirstScreen = mInflations;
+        assertTrue(inflationsForFirstScreen > 0);
+
+        for (int i = 0; i < 2000; i++) {
+            mRecyclerView.scrollBy(0, 100);
+        }
+        assertTrue(((LinearLayoutManager) mRecyclerView.getLayoutManager()).findFirstVisibleItemPosition() > 1000);
+
+        // A screen, the view cache and a little slack: never one per repo.
+        assertTrue("inflations: first screen=" + inflationsForFirstScreen + ", after scroll=" + mInflations,
+                mInflations < inflationsForFirstScreen + 20);
+    }
+
+    @Test
+    public void itemIdsAreRepoIds() {
+        assertTrue(mAdapter.hasStableIds());
+        assertEquals(1000L, mAdapter.getItemId(0));
+        assertEquals(1000L + REPOS - 1, mAdapter.getItemId(REPOS - 1));
+    }
+
+    @Test
+    public void idsOfAPagedListDoNotLoadItsPages() {
+        final List<Integer> loadedPages = new ArrayList<>();
+        PagedList<GitHubRepo> repos = new PagedList<>(new PagedList.PageLoader<GitHubRepo>() {
+            @Override
+            public Subscription loadPage(int page, int pageSize, boolean prefetch, PagedList.PageCallback<GitHubRepo> callback) {
+                loadedPages.add(page);
+                callback.onPageLoaded(createRepos(1000 + page * pageSize, pageSize), REPOS / pageSize);
+                return Subscriptions.empty();
+            }
+        }, 50, 7);
+        repos.loadInitial();
+        GithubAdapter adapter = new GithubAdapter(RuntimeEnvironment.application, repos);
+
+        assertEquals(1000L, adapter.getItemId(0));
+        // Not loaded: a placeholder id, and it stays that way.
+        assertEquals(-1L - 2000, adapter.getItemId(2000));
+        assertEquals(Collections.singletonList(0), loadedPages);
+    }
+
+    private void layout() {
+        mRecyclerView.measure(
+                View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mRecyclerView.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    private static List<GitHubRepo> createRepos(int firstId, int count) {
+        List<GitHubRepo> repos = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            GitHubRepo repo = new GitHubRepo();
+            repo.setId(firstId + i);
+            repo.setName("repo-" + i);
+            repos.add(repo);
+        }
+        return repos;
+    }
+}
@@ -0,0 +1,249 @@
+package jorgecasariego.retrofit.adapter;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowToast;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import jorgecasariego.retrofit.BuildConfig;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SimpleStringAdapterTest {
+
+    private static final int BINDS = 10000;
+    // Below the smallest object a bind could create, e.g. a listener capturing the position.
+    private static final int MAX_EXTRA_BYTES_PER_BIND = 16;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final List<String> mStrings = createStrings(BINDS);
+    // Diffs run when the test says so, see runDiffs().
+    private final Queue<Runnable> mDiffs = new ArrayDeque<>();
+    private final Executor mDiffExecutor = new Executor() {
+        @Override
+        public void execute(Runnable diff) {
+            mDiffs.add(diff);
+        }
+    };
+    private SimpleStringAdapter mAdapter;
+    private SimpleStringAdapter.ViewHolder mHolder;
+
+    @Before
+    public void setUp() {
+        mAdapter = new SimpleStringAdapter(RuntimeEnvironment.application, DIRECT);
+        mAdapter.setStrings(mStrings);
+        mHolder = mAdapter.onCreateViewHolder(new FrameLayout(RuntimeEnvironment.application), 0);
+    }
+
+    @Test
+    public void bindingKeepsTheSameClickListener() {
+        View.OnClickListener listener = Shadows.shadowOf(mHolder.itemView).getOnClickListener();
+        assertNotNull(listener);
+
+        for (int i = 0; i < BINDS; i++) {
+            mAdapter.onBindViewHolder(mHolder, i);
+            assertSame(listener, Shadows.shadowOf(mHolder.itemView).getOnClickListener());
+        }
+        assertEquals("City " + (BINDS - 1), mHolder.mColorDisplay.getText().toString());
+    }
+
+    @Test
+    public void bindingOnlyAllocatesWhatSetTextDoes() {
+        // Warm up, so class loading, first-time text setup and compilation don't count.
+        for (int i = 0; i < BINDS; i++) {
+            mAdapter.onBindViewHolder(mHolder, i);
+            mHolder.mColorDisplay.setText(mStrings.get(i));
+        }
+
+        // setText() itself allocates, more in Robolectric than on a device: it is the baseline.
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < BINDS; i++) {
+            mHolder.mColorDisplay.setText(mStrings.get(i));
+        }
+        long setTextBytes = allocatedBytes() - allocatedBefore;
+
+        allocatedBefore = allocatedBytes();
+        for (int i = 0; i < BINDS; i++) {
+            mAdapter.onBindViewHolder(mHolder, i);
+        }
+        long bindBytes = allocatedBytes() - allocatedBefore;
+
+        assumeTrue(allocatedBefore >= 0);
+        assertTrue("binds allocated " + bindBytes + " bytes, setText() alone " + setTextBytes,
+                bindBytes - setTextBytes < (long) BINDS * MAX_EXTRA_BYTES_PER_BIND);
+    }
+
+    @Test
+    public void clicksOnAnUnboundRowAreIgnored() {
+        // The holder was never bound, so it has no adapter position.
+        mHolder.itemView.performClick();
+
+        assertNull(ShadowToast.getLatestToast());
+    }
+
+    @Test
+    public void aClickOnARowShowsItsString() {
+        RecyclerView recyclerView = new RecyclerView(RuntimeEnvironment.application);
+        recyclerView.setLayoutManager(new LinearLayoutManager(RuntimeEnvironment.application));
+        recyclerView.setAdapter(mAdapter);
+        recyclerView.measure(
+                View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, 1080, 1920);
+
+        recyclerView.getChildAt(2).performClick();
+
+        assertEquals("City 2", ShadowToast.getTextOfLatestToast());
+    }
+
+    @Test
+    public void aDiffStillQueuedWhenANewerListArrivesIsThrownAway() {
+        SimpleStringAdapter adapter = new SimpleStringAdapter(RuntimeEnvironment.application, mDiffExecutor);
+        adapter.setStrings(createStrings(10));
+        List<String> events = recordUpdates(adapter);
+        ShadowLooper.pauseMainLooper();
+
+        adapter.submitStrings(withoutCity3());
+        adapter.submitStrings(withNewRowAt5());
+        runDiffs();
+        ShadowLooper.runUiThreadTasks();
+
+        assertEquals(Collections.singletonList("inserted 5 1"), events);
+        assertEquals("New", textAt(adapter, 5));
+    }
+
+    @Test
+    public void aDiffOvertakenOnItsWayToTheMainThreadIsThrownAway() {
+        SimpleStringAdapter adapter = new SimpleStringAdapter(RuntimeEnvironment.application, mDiffExecutor);
+        adapter.setStrings(createStrings(10));
+        List<String> events = recordUpdates(adapter);
+        ShadowLooper.pauseMainLooper();
+
+        adapter.submitStrings(withoutCity3());
+        runDiffs();
+        // The first result waits to be applied while the next list comes.
+        adapter.submitStrings(withNewRowAt5());
+        runDiffs();
+        ShadowLooper.runUiThreadTasks();
+
+        assertEquals(Collections.singletonList("inserted 5 1"), events);
+        assertEquals(11, adapter.getItemCount());
+        assertEquals("City 3", textAt(adapter, 3));
+    }
+
+    @Test
+    public void onlyTheRowsThatChangedAreNotified() {
+        SimpleStringAdapter adapter = new SimpleStringAdapter(RuntimeEnvironment.application, DIRECT);
+        adapter.setStrings(createStrings(10));
+        List<String> events = recordUpdates(adapter);
+
+        adapter.submitStrings(withoutCity3());
+        ShadowLooper.runUiThreadTasks();
+
+        assertEquals(Collections.singletonList("removed 3 1"), events);
+        assertEquals("City 4", textAt(adapter, 3));
+    }
+
+    private void runDiffs() {
+        Runnable diff;
+        while ((diff = mDiffs.poll()) != null) {
+            diff.run();
+        }
+    }
+
+    private static List<String> withoutCity3() {
+        List<String> strings = createStrings(10);
+        strings.remove(3);
+        return strings;
+    }
+
+    private static List<String> withNewRowAt5() {
+        List<String> strings = createStrings(10);
+        strings.add(5, "New");
+        return strings;
+    }
+
+    private String textAt(SimpleStringAdapter adapter, int position) {
+        adapter.onBindViewHolder(mHolder, position);
+        return mHolder.mColorDisplay.getText().toString();
+    }
+
+    private static List<String> recordUpdates(SimpleStringAdapter adapter) {
+        final List<String> events = new ArrayList<>();
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                events.add("changed");
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                events.add("changed " + positionStart + " " + itemCount);
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                events.add("inserted " + positionStart + " " + itemCount);
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                events.add("removed " + positionStart + " " + itemCount);
+            }
+
+            @Override
+            public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                events.add("moved " + fromPosition + " " + toPosition + " " + itemCount);
+            }
+        });
+        return events;
+    }
+
+    private static List<String> createStrings(int count) {
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add("City " + i);
+        }
+        return strings;
+    }
+
+    // -1 when the JVM can't tell.
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            if (sunThreads.isThreadAllocatedMemorySupported()) {
+                return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
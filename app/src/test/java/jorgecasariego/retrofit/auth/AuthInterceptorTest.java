@@ -0,0 +1,212 @@
+package jorgecasariego.retrofit.auth;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * 100 calls in parallel against a local server that checks the tokens, while the token they
+ * start with expires. The TokenManager and the server share a fake clock, moved by the test.
+ */
+public class AuthInterceptorTest {
+
+    private static final int CALLS = 100;
+    private static final long FIRST_TOKEN_MILLIS = 300;
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final AtomicLong mNow = new AtomicLong();
+    // What the server knows: every token it gave out, and when it expires.
+    private final Map<String, Long> mIssued = new ConcurrentHashMap<>();
+    private final AtomicInteger mFetches = new AtomicInteger();
+    private final AtomicInteger mUnauthorized = new AtomicInteger();
+    // Refreshes run right away, or wait for runRefreshes() while mHoldRefreshes.
+    private final Queue<Runnable> mRefreshes = new ConcurrentLinkedQueue<>();
+    private volatile boolean mHoldRefreshes;
+    private long mFirstTokenMillis = FIRST_TOKEN_MILLIS;
+    private volatile boolean mFirstTokenExpiresOnArrival;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer.setDispatcher(new okhttp3.mockwebserver.Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String authorization = request.getHeader(AuthInterceptor.HEADER);
+                if (authorization != null && authorization.startsWith("HMAC-SHA256 ")) {
+                    return new MockResponse().setBody("[]");
+                }
+                // The token is checked once the request is handled, not when it was sent.
+                if (mFirstTokenExpiresOnArrival && "Bearer token-1".equals(authorization)) {
+                    mNow.set(Math.max(mNow.get(), mIssued.get(authorization)));
+                }
+                Long expiresAt = authorization == null ? null : mIssued.get(authorization);
+                if (expiresAt == null || mNow.get() >= expiresAt) {
+                    mUnauthorized.incrementAndGet();
+                    return new MockResponse().setResponseCode(401);
+                }
+                return new MockResponse().setBody("[]");
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void callsCrossingAnExpiryRefreshTheTokenOnce() throws Exception {
+        TokenManager tokens = tokens(0);
+        AuthInterceptor interceptor = new AuthInterceptor(tokens);
+        tokens.getToken();
+        // Sent with the first token, checked by the server after it expired.
+        mFirstTokenExpiresOnArrival = true;
+
+        assertEquals(CALLS, runInParallel(interceptor, CALLS));
+
+        assertTrue(mUnauthorized.get() > 0);
+        assertEquals(2, mFetches.get());
+    }
+
+    @Test
+    public void withRefreshAheadNoCallIsRejected() throws Exception {
+        TokenManager tokens = tokens(250);
+        AuthInterceptor interceptor = new AuthInterceptor(tokens);
+        tokens.getToken();
+        mHoldRefreshes = true;
+        mNow.set(FIRST_TOKEN_MILLIS - 200);
+
+        // The first calls start the refresh and still go out with the first token, which is good
+        // for another 200ms; by the time it expires the second one is in.
+        assertEquals(CALLS, runInParallel(interceptor, CALLS));
+        assertEquals(1, runRefreshes());
+        mNow.set(FIRST_TOKEN_MILLIS);
+        assertEquals(CALLS, runInParallel(interceptor, CALLS));
+
+        assertEquals(0, mUnauthorized.get());
+        assertEquals(2, mFetches.get());
+    }
+
+    @Test
+    public void cacheableSignaturesAreComputedOncePerTokenAndUrl() throws Exception {
+        // Good for the whole test, a new token would need new signatures.
+        mFirstTokenMillis = TimeUnit.HOURS.toMillis(1);
+        AuthInterceptor interceptor = new AuthInterceptor(tokens(0), RequestSigner.HMAC_SHA256);
+        OkHttpClient client = client(interceptor);
+
+        for (int round = 0; round < 5; round++) {
+            for (int page = 1; page <= 10; page++) {
+                Request request = new Request.Builder()
+                        .url(mServer.url("/users/octocat/repos?page=" + page))
+                        .build();
+                client.newCall(request).execute().close();
+            }
+        }
+
+        assertEquals(10, interceptor.getSignatureCount());
+        assertTrue(mServer.takeRequest().getHeader(AuthInterceptor.HEADER).startsWith("HMAC-SHA256 "));
+    }
+
+    private TokenManager tokens(long refreshAheadMillis) {
+        return new TokenManager(new TokenManager.TokenSource() {
+            @Override
+            public AuthToken fetchToken() throws IOException {
+                int fetch = mFetches.incrementAndGet();
+                long lifetime = fetch == 1 ? mFirstTokenMillis : TimeUnit.MINUTES.toMillis(1);
+                AuthToken token = new AuthToken("token-" + fetch, mNow.get() + lifetime);
+                mIssued.put("Bearer " + token.getValue(), token.getExpiresAtMillis());
+                return token;
+            }
+        }, refreshAheadMillis, new Executor() {
+            @Override
+            public void execute(Runnable refresh) {
+                if (mHoldRefreshes) {
+                    mRefreshes.add(refresh);
+                } else {
+                    refresh.run();
+                }
+            }
+        }) {
+            @Override
+            long now() {
+                return mNow.get();
+            }
+        };
+    }
+
+    /**
+     * @return how many refreshes were waiting.
+     */
+    private int runRefreshes() {
+        int count = 0;
+        Runnable refresh;
+        while ((refresh = mRefreshes.poll()) != null) {
+            refresh.run();
+            count++;
+        }
+        return count;
+    }
+
+    private OkHttpClient client(AuthInterceptor interceptor) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(CALLS);
+        dispatcher.setMaxRequestsPerHost(CALLS);
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .addInterceptor(interceptor)
+                .authenticator(new TokenAuthenticator(interceptor))
+                .build();
+    }
+
+    /**
+     * @return how many of the calls got a 200.
+     */
+    private int runInParallel(AuthInterceptor interceptor, int calls) throws InterruptedException {
+        OkHttpClient client = client(interceptor);
+        final CountDownLatch done = new CountDownLatch(calls);
+        final AtomicInteger succeeded = new AtomicInteger();
+        for (int i = 0; i < calls; i++) {
+            Request request = new Request.Builder().url(mServer.url("/users/octocat/repos")).build();
+            client.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    if (response.code() == 200) {
+                        succeeded.incrementAndGet();
+                    }
+                    response.close();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue("calls didn't finish", done.await(20, TimeUnit.SECONDS));
+        return succeeded.get();
+    }
+}
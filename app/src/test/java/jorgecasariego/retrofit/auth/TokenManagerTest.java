@@ -0,0 +1,129 @@
+package jorgecasariego.retrofit.auth;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TokenManagerTest {
+
+    private final CountingSource mSource = new CountingSource();
+
+    @Test
+    public void aTokenAboutToExpireIsRefreshedInTheBackground() throws Exception {
+        mSource.mLifetimeMillis = 1000;
+        TokenManager tokens = new TokenManager(mSource, 900, Executors.newSingleThreadExecutor());
+        AuthToken first = tokens.getToken();
+        Thread.sleep(150);
+
+        mSource.mDelayMillis = 200;
+        mSource.mLifetimeMillis = 60000;
+        long start = System.nanoTime();
+        AuthToken stillFirst = tokens.getToken();
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertSame(first, stillFirst);
+        assertTrue("waited " + waitedMillis + "ms", waitedMillis < 100);
+        Thread.sleep(400);
+        assertNotSame(first, tokens.getToken());
+        assertEquals(2, mSource.mFetches.get());
+    }
+
+    @Test
+    public void aHundredCallersOfAnExpiredTokenShareOneRefresh() throws Exception {
+        mSource.mLifetimeMillis = 50;
+        TokenManager tokens = new TokenManager(mSource, 0, Executors.newSingleThreadExecutor());
+        tokens.getToken();
+        Thread.sleep(100);
+        mSource.mLifetimeMillis = 60000;
+        mSource.mDelayMillis = 100;
+
+        final int callers = 100;
+        final TokenManager manager = tokens;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(callers);
+        final AtomicInteger failures = new AtomicInteger();
+        ExecutorService threads = Executors.newFixedThreadPool(callers);
+        for (int i = 0; i < callers; i++) {
+            threads.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        manager.getToken();
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        start.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        threads.shutdown();
+        assertEquals(0, failures.get());
+        assertEquals(2, mSource.mFetches.get());
+        assertEquals(2, tokens.getRefreshCount());
+    }
+
+    @Test
+    public void aRejectedTokenIsOnlyReplacedOnce() throws Exception {
+        mSource.mLifetimeMillis = 60000;
+        TokenManager tokens = new TokenManager(mSource, 0, Executors.newSingleThreadExecutor());
+        AuthToken rejected = tokens.getToken();
+
+        AuthToken replaced = tokens.onTokenRejected(rejected);
+        // Another call that was sent with the same token finds it already replaced.
+        AuthToken again = tokens.onTokenRejected(rejected);
+
+        assertNotSame(rejected, replaced);
+        assertSame(replaced, again);
+        assertEquals(2, mSource.mFetches.get());
+    }
+
+    @Test
+    public void aFailedRefreshFailsTheWaitersAndTheNextCallTriesAgain() throws Exception {
+        TokenManager tokens = new TokenManager(mSource, 0, Executors.newSingleThreadExecutor());
+        mSource.mFail = true;
+        try {
+            tokens.getToken();
+            fail();
+        } catch (IOException expected) {
+        }
+
+        mSource.mFail = false;
+
+        assertNotNull(tokens.getToken());
+        assertEquals(2, mSource.mFetches.get());
+    }
+
+    private static final class CountingSource implements TokenManager.TokenSource {
+
+        final AtomicInteger mFetches = new AtomicInteger();
+        volatile long mLifetimeMillis = 60000;
+        volatile long mDelayMillis;
+        volatile boolean mFail;
+
+        @Override
+        public AuthToken fetchToken() throws IOException {
+            int fetch = mFetches.incrementAndGet();
+            try {
+                Thread.sleep(mDelayMillis);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (mFail) {
+                throw new IOException("Token server down");
+            }
+            return new AuthToken("token-" + fetch, System.currentTimeMillis() + mLifetimeMillis);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package jorgecasariego.retrofit.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import rx.Scheduler;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+
+/**
+ * Measures Rx pipelines the same way every time, so two runs (before and after a scheduler or
+ * operator change) can be compared.
+ *
+ *  - Latency: from subscribe() to the first value arriving on the main thread stand-in, over many
+ *    subscriptions after a warm up, reported as percentiles.
+ *  - Per item: the time and bytes it takes one value to go through a pipeline that is already
+ *    subscribed.
+ *  - Tasks: anything that isn't a pipeline, run and timed on the calling thread.
+ *  - Allocations: bytes allocated by every thread of the JVM during the measured runs, divided by
+ *    the number of runs (or items). Needs a HotSpot-compatible JVM, -1 otherwise.
+ */
+final class BenchmarkHarness {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private BenchmarkHarness() {
+    }
+
+    /**
+     * One subscription to the pipeline being measured.
+     */
+    interface Pipeline {
+        /**
+         * Subscribes and calls firstValue on the main thread stand-in when the first value arrives.
+         */
+        Subscription subscribe(Runnable firstValue);
+    }
+
+    /**
+     * A pipeline already subscribed to, fed one value at a time.
+     */
+    interface Stream {
+        /**
+         * Pushes count values in and calls lastValue on the main thread stand-in once all of them
+         * went through.
+         */
+        void push(int count, Runnable lastValue);
+    }
+
+    /**
+     * Work measured from start to end on the calling thread.
+     */
+    interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * Plays the part of Android's main thread: one thread, and a Scheduler that runs on it, used
+     * where the app uses AndroidSchedulers.mainThread().
+     */
+    static final class MainThread {
+
+        private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "main-stand-in");
+                thread.setDaemon(true);
+                mThread = thread;
+                return thread;
+            }
+        });
+        private final Scheduler mScheduler = Schedulers.from(mExecutor);
+        private volatile Thread mThread;
+
+        Scheduler scheduler() {
+            return mScheduler;
+        }
+
+        boolean isCurrentThread() {
+            return Thread.currentThread() == mThread;
+        }
+
+        void shutdown() {
+            mExecutor.shutdownNow();
+        }
+    }
+
+    static Result measureLatency(String name, int warmUp, int runs, Pipeline pipeline) throws InterruptedException {
+        for (int i = 0; i < warmUp; i++) {
+            subscribeOnce(pipeline);
+        }
+
+        long[] latencies = new long[runs];
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < runs; i++) {
+            latencies[i] = subscribeOnce(pipeline);
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+        return new Result(name, latencies, allocatedBefore < 0 ? -1 : allocated / runs);
+    }
+
+    static Result measurePerItem(String name, int warmUp, int items, int rounds, Stream stream)
+            throws InterruptedException {
+        pushOnce(stream, warmUp);
+
+        long[] perItem = new long[rounds];
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < rounds; i++) {
+            perItem[i] = pushOnce(stream, items) / items;
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+        return new Result(name, perItem, allocatedBefore < 0 ? -1 : allocated / ((long) items * rounds));
+    }
+
+    static Result measure(String name, int warmUp, int runs, Task task) throws Exception {
+        for (int i = 0; i < warmUp; i++) {
+            task.run();
+        }
+
+        long[] nanos = new long[runs];
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            task.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+        return new Result(name, nanos, allocatedBefore < 0 ? -1 : allocated / runs);
+    }
+
+    private static long subscribeOnce(Pipeline pipeline) throws InterruptedException {
+        final CountDownLatch firstValue = new CountDownLatch(1);
+        final long[] arrivedAt = new long[1];
+        long start = System.nanoTime();
+        Subscription subscription = pipeline.subscribe(new Runnable() {
+            @Override
+            public void run() {
+                arrivedAt[0] = System.nanoTime();
+                firstValue.countDown();
+            }
+        });
+        await(firstValue);
+        subscription.unsubscribe();
+        return arrivedAt[0] - start;
+    }
+
+    private static long pushOnce(Stream stream, int count) throws InterruptedException {
+        final CountDownLatch lastValue = new CountDownLatch(1);
+        final long[] arrivedAt = new long[1];
+        long start = System.nanoTime();
+        stream.push(count, new Runnable() {
+            @Override
+            public void run() {
+                arrivedAt[0] = System.nanoTime();
+                lastValue.countDown();
+            }
+        });
+        await(lastValue);
+        return arrivedAt[0] - start;
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new AssertionError("The pipeline never delivered");
+        }
+    }
+
+    // Summed over every live thread: the work of a pipeline is spread over several pools.
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+        if (!sunThreads.isThreadAllocatedMemorySupported()) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : sunThreads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    static final class Result {
+
+        private final String mName;
+        private final long[] mSortedNanos;
+        private final long mAllocatedBytes;
+
+        Result(String name, long[] nanos, long allocatedBytes) {
+            mName = name;
+            mSortedNanos = nanos.clone();
+            Arrays.sort(mSortedNanos);
+            mAllocatedBytes = allocatedBytes;
+        }
+
+        long percentileNanos(double percentile) {
+            int index = (int) Math.ceil(percentile / 100 * mSortedNanos.length) - 1;
+            return mSortedNanos[Math.max(0, Math.min(index, mSortedNanos.length - 1))];
+        }
+
+        long getAllocatedBytes() {
+            return mAllocatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-44s p50 %8.1f us  p90 %8.1f us  p99 %8.1f us  %7d bytes",
+                    mName,
+                    percentileNanos(50) / 1000.0,
+                    percentileNanos(90) / 1000.0,
+                    percentileNanos(99) / 1000.0,
+                    mAllocatedBytes);
+        }
+    }
+}
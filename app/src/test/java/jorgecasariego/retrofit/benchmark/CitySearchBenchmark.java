@@ -0,0 +1,58 @@
+package jorgecasariego.retrofit.benchmark;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import jorgecasariego.retrofit.search.CitySearchEngine;
+
+import static org.junit.Assert.*;
+
+/**
+ * How the sharded scan of CitySearchEngine scales from 1 to N cores, over 2 million cities.
+ * Results are printed:
+ *
+ *     ./gradlew :app:testDebugUnitTest --tests '*CitySearchBenchmark' -i
+ *
+ * The assertions only check that every parallelism finds the same cities, timings depend on the
+ * machine.
+ */
+public class CitySearchBenchmark {
+
+    private static final int CITIES = 2000000;
+    private static final int WARM_UP = 5;
+    private static final int RUNS = 20;
+
+    @Test
+    public void scalingAcrossCores() throws Exception {
+        String[] cities = new String[CITIES];
+        for (int i = 0; i < CITIES; i++) {
+            cities[i] = "City " + i;
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        List<String> expected = null;
+        for (int parallelism = 1; parallelism <= cores; parallelism *= 2) {
+            final CitySearchEngine engine = new CitySearchEngine(cities, new ForkJoinPool(parallelism), parallelism);
+            final List<List<String>> results = new ArrayList<>();
+            BenchmarkHarness.Result result = BenchmarkHarness.measure("parallelism " + parallelism, WARM_UP, RUNS,
+                    new BenchmarkHarness.Task() {
+                        @Override
+                        public void run() throws Exception {
+                            results.add(engine.search("city 1"));
+                        }
+                    });
+            engine.shutdown();
+
+            System.out.println(result);
+            if (expected == null) {
+                expected = results.get(0);
+            }
+            for (List<String> found : results) {
+                assertEquals(expected, found);
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package jorgecasariego.retrofit.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import jorgecasariego.retrofit.cache.RepoSnapshotReader;
+import jorgecasariego.retrofit.cache.RepoSnapshotWriter;
+import jorgecasariego.retrofit.model.GitHubRepo;
+
+import static org.junit.Assert.*;
+
+/**
+ * How long it takes to have the first screen of 5000 cached repos from disk: the repo list as
+ * JSON through Gson, and as a RepoSnapshot, raw and deflated.
+ *
+ * Every run opens the file again, like a cold start of the app would. The file stays in the page
+ * cache of the OS though, so flash reads aren't part of it: that is the decoding and mapping
+ * only. Results are printed, with the sizes of the files:
+ *
+ *     ./gradlew :app:testDebugUnitTest --tests '*RepoSnapshotBenchmark' -i
+ *
+ * The assertions only check that every format gives the same repos, timings depend on the machine.
+ */
+public class RepoSnapshotBenchmark {
+
+    private static final int REPOS = 5000;
+    private static final int FIRST_SCREEN = 20;
+    private static final int WARM_UP = 20;
+    private static final int RUNS = 100;
+
+    private static final Type REPO_LIST = new TypeToken<List<GitHubRepo>>() {
+    }.getType();
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final Gson mGson = new Gson();
+    private long mSink;
+
+    @Test
+    public void firstScreenFromDisk() throws Exception {
+        List<GitHubRepo> repos = repos();
+        File modelJson = mFolder.newFile("repos.json");
+        writeJson(modelJson, mGson.toJson(repos));
+        File githubJson = mFolder.newFile("github-repos.json");
+        writeJson(githubJson, githubJson(repos).toString());
+        File raw = new File(mFolder.getRoot(), "repos.snapshot");
+        RepoSnapshotWriter.write(raw, repos, false, RepoSnapshotWriter.DEFAULT_ITEMS_PER_BLOCK, 0);
+        File deflated = new File(mFolder.getRoot(), "repos-deflated.snapshot");
+        RepoSnapshotWriter.write(deflated, repos, true, RepoSnapshotWriter.DEFAULT_ITEMS_PER_BLOCK, 0);
+
+        List<BenchmarkHarness.Result> results = new ArrayList<>();
+        results.add(BenchmarkHarness.measure(name("Gson, GitHubRepo JSON", modelJson), WARM_UP, RUNS, gson(modelJson)));
+        results.add(BenchmarkHarness.measure(name("Gson, GitHub's JSON", githubJson), WARM_UP, RUNS, gson(githubJson)));
+        results.add(BenchmarkHarness.measure(name("RepoSnapshot raw", raw), WARM_UP, RUNS, snapshot(raw, FIRST_SCREEN)));
+        results.add(BenchmarkHarness.measure(name("RepoSnapshot deflate", deflated), WARM_UP, RUNS, snapshot(deflated, FIRST_SCREEN)));
+        results.add(BenchmarkHarness.measure(name("RepoSnapshot raw, every row", raw), WARM_UP, RUNS, snapshot(raw, REPOS)));
+        results.add(BenchmarkHarness.measure(name("RepoSnapshot deflate, every row", deflated), WARM_UP, RUNS, snapshot(deflated, REPOS)));
+
+        System.out.println("First screen (" + FIRST_SCREEN + " of " + REPOS + " repos) from disk, " + RUNS + " runs");
+        for (BenchmarkHarness.Result result : results) {
+            System.out.println(result);
+        }
+
+        List<GitHubRepo> fromJson = load(githubJson);
+        for (File file : new File[]{raw, deflated}) {
+            RepoSnapshotReader snapshot = RepoSnapshotReader.open(file);
+            assertEquals(REPOS, snapshot.size());
+            for (int i = 0; i < REPOS; i += 97) {
+                assertEquals(fromJson.get(i).getId(), snapshot.get(i).getId());
+                assertEquals(fromJson.get(i).getName(), snapshot.get(i).getName());
+            }
+        }
+        assertTrue(deflated.length() < raw.length());
+    }
+
+    private BenchmarkHarness.Task gson(final File file) {
+        return new BenchmarkHarness.Task() {
+            @Override
+            public void run() throws Exception {
+                // The whole file is parsed before the first row can be shown.
+                List<GitHubRepo> repos = load(file);
+                for (int i = 0; i < FIRST_SCREEN; i++) {
+                    mSink += repos.get(i).getId();
+                }
+            }
+        };
+    }
+
+    private BenchmarkHarness.Task snapshot(final File file, final int rows) {
+        return new BenchmarkHarness.Task() {
+            @Override
+            public void run() throws Exception {
+                RepoSnapshotReader repos = RepoSnapshotReader.open(file);
+                for (int i = 0; i < rows; i++) {
+                    mSink += repos.get(i).getId();
+                }
+            }
+        };
+    }
+
+    private List<GitHubRepo> load(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+        try {
+            return mGson.fromJson(reader, REPO_LIST);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String name(String format, File file) {
+        return format + " (" + file.length() / 1024 + " KB)";
+    }
+
+    private static List<GitHubRepo> repos() {
+        List<GitHubRepo> repos = new ArrayList<>();
+        for (int i = 0; i < REPOS; i++) {
+            GitHubRepo repo = new GitHubRepo();
+            repo.setId(10000000 + i);
+            repo.setName("repo-" + i + (i % 3 == 0 ? "-android" : "-server"));
+            repos.add(repo);
+        }
+        return repos;
+    }
+
+    // A cut down version of what GitHub answers for a repo: a cache of its responses holds this.
+    private static JsonArray githubJson(List<GitHubRepo> repos) {
+        JsonArray array = new JsonArray();
+        for (GitHubRepo repo : repos) {
+            JsonObject owner = new JsonObject();
+            owner.addProperty("login", "jorgecasariego");
+            owner.addProperty("id", 1234567);
+            owner.addProperty("avatar_url", "https://avatars.githubusercontent.com/u/1234567?v=3");
+            owner.addProperty("type", "User");
+            JsonObject json = new JsonObject();
+            json.addProperty("id", repo.getId());
+            json.addProperty("name", repo.getName());
+            json.addProperty("full_name", "jorgecasariego/" + repo.getName());
+            json.add("owner", owner);
+            json.addProperty("private", false);
+            json.addProperty("html_url", "https://github.com/jorgecasariego/" + repo.getName());
+            json.addProperty("description", "Sample project " + repo.getId());
+            json.addProperty("fork", false);
+            json.addProperty("url", "https://api.github.com/repos/jorgecasariego/" + repo.getName());
+            json.addProperty("created_at", "2017-03-21T10:00:00Z");
+            json.addProperty("updated_at", "2017-03-21T10:00:00Z");
+            json.addProperty("stargazers_count", repo.getId() % 100);
+            json.addProperty("language", "Java");
+            json.addProperty("default_branch", "master");
+            array.add(json);
+        }
+        return array;
+    }
+
+    private static void writeJson(File file, String json) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            writer.write(json);
+        } finally {
+            writer.close();
+        }
+    }
+}
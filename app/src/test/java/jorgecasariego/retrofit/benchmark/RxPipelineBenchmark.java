@@ -0,0 +1,233 @@
+package jorgecasariego.retrofit.benchmark;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jorgecasariego.retrofit.rx.AppSchedulers;
+import jorgecasariego.retrofit.search.SearchPipeline;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Single;
+import rx.SingleSubscriber;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+
+import static org.junit.Assert.*;
+
+/**
+ * Latency, per item overhead and allocations of the pipelines the examples teach, on the JVM.
+ *
+ * The pipelines are the ones of the activities, with the network replaced by an instant answer
+ * so only the Rx machinery (subscribing, scheduling, thread hops) is measured, and
+ * AndroidSchedulers.mainThread() replaced by a single thread stand-in. Results are printed, one
+ * line per pipeline:
+ *
+ *     ./gradlew :app:testDebugUnitTest --tests '*RxPipelineBenchmark' -i
+ *
+ * The assertions only check that values arrive where they should, timings depend on the machine.
+ */
+public class RxPipelineBenchmark {
+
+    private static final int WARM_UP = 500;
+    private static final int RUNS = 2000;
+    private static final int ITEMS = 10000;
+    private static final int ROUNDS = 20;
+
+    private static final List<String> TV_SHOWS = Arrays.asList("The Simpsons", "Futurama", "Archer");
+    private static final List<BenchmarkHarness.Result> sResults = new ArrayList<>();
+
+    private BenchmarkHarness.MainThread mMainThread;
+    private final AtomicInteger mOffMainDeliveries = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        mMainThread = new BenchmarkHarness.MainThread();
+    }
+
+    @After
+    public void tearDown() {
+        mMainThread.shutdown();
+        assertEquals("values delivered off the main thread", 0, mOffMainDeliveries.get());
+    }
+
+    @AfterClass
+    public static void printResults() {
+        System.out.println("Rx pipeline benchmark (" + RUNS + " subscriptions, " + ITEMS + " items x " + ROUNDS + ")");
+        for (BenchmarkHarness.Result result : sResults) {
+            System.out.println(result);
+        }
+    }
+
+    // Example2: fromCallable() + subscribeOn() + observeOn(mainThread())
+    @Test
+    public void fromCallableSubscribeOnObserveOn() throws Exception {
+        record(BenchmarkHarness.measureLatency("Example2 fromCallable, AppSchedulers.io()", WARM_UP, RUNS,
+                fromCallable(AppSchedulers.io())));
+        record(BenchmarkHarness.measureLatency("Example2 fromCallable, Schedulers.io()", WARM_UP, RUNS,
+                fromCallable(Schedulers.io())));
+    }
+
+    // Example3: a Single, subscribed to on a background thread and observed on the main thread.
+    @Test
+    public void single() throws Exception {
+        record(BenchmarkHarness.measureLatency("Example3 Single", WARM_UP, RUNS, new BenchmarkHarness.Pipeline() {
+            @Override
+            public Subscription subscribe(final Runnable firstValue) {
+                return Single.create(new Single.OnSubscribe<List<String>>() {
+                    @Override
+                    public void call(SingleSubscriber<? super List<String>> subscriber) {
+                        subscriber.onSuccess(TV_SHOWS);
+                    }
+                })
+                        .subscribeOn(AppSchedulers.io())
+                        .observeOn(mMainThread.scheduler())
+                        .subscribe(new SingleSubscriber<List<String>>() {
+                            @Override
+                            public void onSuccess(List<String> tvShows) {
+                                onMain(firstValue);
+                            }
+
+                            @Override
+                            public void onError(Throwable error) {
+                                throw new AssertionError(error);
+                            }
+                        });
+            }
+        }));
+    }
+
+    // Example4: values pushed into a PublishSubject from another thread, shown on the main thread.
+    @Test
+    public void publishSubject() throws Exception {
+        final PublishSubject<Integer> subject = PublishSubject.create();
+        final AtomicInteger received = new AtomicInteger();
+        final Runnable[] lastValue = new Runnable[1];
+        final int[] expected = new int[1];
+        Subscription subscription = subject
+                .onBackpressureBuffer()
+                .observeOn(mMainThread.scheduler())
+                .subscribe(new Subscriber<Integer>() {
+                    @Override
+                    public void onNext(Integer value) {
+                        if (received.incrementAndGet() == expected[0]) {
+                            onMain(lastValue[0]);
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        throw new AssertionError(e);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                    }
+                });
+
+        record(BenchmarkHarness.measurePerItem("Example4 PublishSubject, per item", ITEMS, ITEMS, ROUNDS,
+                new BenchmarkHarness.Stream() {
+                    @Override
+                    public void push(int count, Runnable last) {
+                        received.set(0);
+                        expected[0] = count;
+                        lastValue[0] = last;
+                        for (int i = 0; i < count; i++) {
+                            subject.onNext(i);
+                        }
+                    }
+                }));
+        subscription.unsubscribe();
+    }
+
+    // Example6: the search pipeline, with no debounce window so only its operators are measured.
+    @Test
+    public void searchPipeline() throws Exception {
+        final SearchPipeline pipeline = new SearchPipeline(new Func1<String, Observable<List<String>>>() {
+            @Override
+            public Observable<List<String>> call(String query) {
+                return Observable.just(TV_SHOWS).subscribeOn(AppSchedulers.cpu());
+            }
+        }, 0, 0, AppSchedulers.cpu(), mMainThread.scheduler());
+
+        final AtomicInteger queries = new AtomicInteger();
+        record(BenchmarkHarness.measureLatency("Example6 search, keystroke to result", WARM_UP, RUNS,
+                new BenchmarkHarness.Pipeline() {
+                    @Override
+                    public Subscription subscribe(final Runnable firstValue) {
+                        PublishSubject<String> keystrokes = PublishSubject.create();
+                        Subscription subscription = pipeline.results(keystrokes)
+                                .subscribe(new Subscriber<SearchPipeline.SearchResult>() {
+                                    @Override
+                                    public void onNext(SearchPipeline.SearchResult result) {
+                                        onMain(firstValue);
+                                    }
+
+                                    @Override
+                                    public void onError(Throwable e) {
+                                        throw new AssertionError(e);
+                                    }
+
+                                    @Override
+                                    public void onCompleted() {
+                                    }
+                                });
+                        keystrokes.onNext("query " + queries.incrementAndGet());
+                        return subscription;
+                    }
+                }));
+    }
+
+    private BenchmarkHarness.Pipeline fromCallable(final Scheduler io) {
+        return new BenchmarkHarness.Pipeline() {
+            @Override
+            public Subscription subscribe(final Runnable firstValue) {
+                return Observable.fromCallable(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() {
+                        return TV_SHOWS;
+                    }
+                })
+                        .subscribeOn(io)
+                        .observeOn(mMainThread.scheduler())
+                        .subscribe(new Subscriber<List<String>>() {
+                            @Override
+                            public void onNext(List<String> tvShows) {
+                                onMain(firstValue);
+                            }
+
+                            @Override
+                            public void onError(Throwable e) {
+                                throw new AssertionError(e);
+                            }
+
+                            @Override
+                            public void onCompleted() {
+                            }
+                        });
+            }
+        };
+    }
+
+    private void onMain(Runnable callback) {
+        if (!mMainThread.isCurrentThread()) {
+            mOffMainDeliveries.incrementAndGet();
+        }
+        callback.run();
+    }
+
+    private static void record(BenchmarkHarness.Result result) {
+        sResults.add(result);
+        assertTrue(result.percentileNanos(50) > 0);
+    }
+}
@@ -0,0 +1,82 @@
+package jorgecasariego.retrofit.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import jorgecasariego.retrofit.model.GitHubRepo;
+import jorgecasariego.retrofit.model.StringPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Heap kept by 50 refreshes of the repos of an org with 5000 of them, decoded by Gson as it is
+ * and through a StringPool, the way ServiceGenerator's converter does.
+ *
+ * Every refresh is kept, as if each of them was still held by some page, snapshot or screen:
+ * the worst case. The heap is measured after a few System.gc(), so it is an estimate. Results
+ * are printed:
+ *
+ *     ./gradlew :app:testDebugUnitTest --tests '*StringPoolBenchmark' -i
+ */
+public class StringPoolBenchmark {
+
+    private static final int REPOS = 5000;
+    private static final int REFRESHES = 50;
+
+    @Test
+    public void retainedHeapAfterRefreshes() throws Exception {
+        String json = orgReposJson();
+
+        long plain = retainedBytes(new Gson(), json);
+        StringPool pool = new StringPool(StringPool.DEFAULT_MAX_SIZE);
+        long pooled = retainedBytes(
+                new GsonBuilder().registerTypeAdapter(String.class, pool.typeAdapter()).create(), json);
+
+        System.out.println(String.format(Locale.US,
+                "%d refreshes of %d repos: %.1f MB kept with plain Gson, %.1f MB through a StringPool (%d strings, %d hits)",
+                REFRESHES, REPOS, plain / 1048576.0, pooled / 1048576.0, pool.size(), pool.getHitCount()));
+        assertEquals((long) REPOS * (REFRESHES - 1), pool.getHitCount());
+        assertTrue(pooled < plain);
+    }
+
+    private static long retainedBytes(Gson gson, String json) throws InterruptedException {
+        long before = usedHeapAfterGc();
+        List<GitHubRepo[]> refreshes = new ArrayList<>();
+        for (int i = 0; i < REFRESHES; i++) {
+            refreshes.add(gson.fromJson(json, GitHubRepo[].class));
+        }
+        long retained = usedHeapAfterGc() - before;
+        assertEquals(REFRESHES, refreshes.size());
+        return retained;
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    private static String orgReposJson() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < REPOS; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(20000000 + i)
+                    .append(",\"name\":\"service-").append(i).append("\"")
+                    .append(",\"owner\":{\"login\":\"big-org\"},\"language\":\"Java\"}");
+        }
+        return json.append(']').toString();
+    }
+}
@@ -0,0 +1,133 @@
+package jorgecasariego.retrofit.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jorgecasariego.retrofit.model.GitHubRepo;
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.*;
+
+public class RepoSnapshotTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void everyRepoComesBackRawOrDeflated() throws Exception {
+        List<GitHubRepo> repos = repos(1000, "repo-");
+        repos.get(10).setName(null);
+        repos.get(20).setName("ñandú-日本");
+
+        for (boolean compress : new boolean[]{false, true}) {
+            File file = new File(mFolder.getRoot(), "repos-" + compress);
+            RepoSnapshotWriter.write(file, repos, compress, 64, 42);
+            RepoSnapshotReader snapshot = RepoSnapshotReader.open(file);
+
+            assertEquals(1000, snapshot.size());
+            assertEquals(42, snapshot.getCreatedAtMillis());
+            // Backwards, so the blocks are read out of order.
+            for (int i = repos.size() - 1; i >= 0; i--) {
+                assertEquals(repos.get(i).getId(), snapshot.get(i).getId());
+                assertEquals(repos.get(i).getName(), snapshot.get(i).getName());
+            }
+        }
+        assertTrue(new File(mFolder.getRoot(), "repos-true").length()
+                < new File(mFolder.getRoot(), "repos-false").length());
+    }
+
+    @Test
+    public void anEmptyListIsASnapshotToo() throws Exception {
+        File file = new File(mFolder.getRoot(), "repos");
+        RepoSnapshotWriter.write(file, Collections.<GitHubRepo>emptyList(), true, 64, 0);
+
+        assertTrue(RepoSnapshotReader.open(file).isEmpty());
+    }
+
+    @Test
+    public void anotherVersionIsNotRead() throws Exception {
+        File file = new File(mFolder.getRoot(), "repos");
+        RepoSnapshotWriter.write(file, repos(10, "repo-"), false, 64, 0);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.seek(4);
+        randomAccessFile.writeInt(RepoSnapshot.VERSION + 1);
+        randomAccessFile.close();
+
+        try {
+            RepoSnapshotReader.open(file);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void aTruncatedFileIsNotRead() throws Exception {
+        File file = new File(mFolder.getRoot(), "repos");
+        RepoSnapshotWriter.write(file, repos(1000, "repo-"), false, 64, 0);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(file.length() / 2);
+        randomAccessFile.close();
+
+        try {
+            RepoSnapshotReader.open(file);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void savesWaitingForTheWriterOnlyWriteTheLatestList() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        File file = new File(mFolder.getRoot(), "repos");
+        RepoSnapshotWriter writer = new RepoSnapshotWriter(file, true, scheduler);
+
+        writer.save(repos(10, "first-"));
+        writer.save(repos(20, "second-"));
+        writer.save(repos(30, "third-"));
+        assertFalse(file.exists());
+        scheduler.triggerActions();
+
+        assertEquals(1, writer.getWriteCount());
+        assertNull(writer.getLastError());
+        RepoSnapshotReader snapshot = RepoSnapshotReader.open(file);
+        assertEquals(30, snapshot.size());
+        assertEquals("third-29", snapshot.get(29).getName());
+    }
+
+    @Test
+    public void aReaderKeepsTheSnapshotItOpenedWhenANewOneIsWritten() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        File file = new File(mFolder.getRoot(), "repos");
+        RepoSnapshotWriter writer = new RepoSnapshotWriter(file, false, scheduler);
+        writer.save(repos(100, "old-"));
+        scheduler.triggerActions();
+        RepoSnapshotReader old = RepoSnapshotReader.open(file);
+
+        writer.save(repos(50, "new-"));
+        scheduler.triggerActions();
+
+        assertEquals(100, old.size());
+        assertEquals("old-99", old.get(99).getName());
+        assertEquals("new-49", RepoSnapshotReader.open(file).get(49).getName());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    private static List<GitHubRepo> repos(int count, String prefix) {
+        List<GitHubRepo> repos = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            GitHubRepo repo = new GitHubRepo();
+            repo.setId(i);
+            repo.setName(prefix + i);
+            repos.add(repo);
+        }
+        return repos;
+    }
+}
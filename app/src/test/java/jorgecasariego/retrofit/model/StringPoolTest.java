@@ -0,0 +1,117 @@
+package jorgecasariego.retrofit.model;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StringPoolTest {
+
+    private final StringPool mPool = new StringPool(100);
+
+    @Test
+    public void equalStringsGiveTheFirstInstance() {
+        String first = new String("jorgecasariego/Retrofit-RxJava");
+        String second = new String("jorgecasariego/Retrofit-RxJava");
+
+        assertSame(first, mPool.intern(first));
+        assertSame(first, mPool.intern(second));
+        assertEquals(1, mPool.getHitCount());
+        assertEquals(1, mPool.size());
+    }
+
+    @Test
+    public void bytesAreOnlyDecodedForStringsThePoolDoesNotHave() {
+        for (String name : new String[]{"retrofit", "ñandú", "日本語", "emoji 🚀", ""}) {
+            String pooled = mPool.intern(new String(name));
+            byte[] utf8 = ("xx" + name + "yy").getBytes(StandardCharsets.UTF_8);
+            int length = name.getBytes(StandardCharsets.UTF_8).length;
+
+            assertSame(name, pooled, mPool.intern(ByteBuffer.wrap(utf8), 2, length));
+            // Not backed by an array, like a mapped file.
+            ByteBuffer direct = ByteBuffer.allocateDirect(utf8.length);
+            direct.put(utf8);
+            assertSame(name, pooled, mPool.intern(direct, 2, length));
+        }
+        assertEquals(10, mPool.getHitCount());
+
+        String decoded = mPool.intern(ByteBuffer.wrap("new".getBytes(StandardCharsets.UTF_8)), 0, 3);
+        assertEquals("new", decoded);
+        assertSame(decoded, mPool.intern(new String("new")));
+    }
+
+    @Test
+    public void malformedBytesDecodeLikeNewString() {
+        byte[] malformed = {'a', (byte) 0xc3, 'b'};
+
+        String decoded = mPool.intern(ByteBuffer.wrap(malformed), 0, malformed.length);
+
+        assertEquals(new String(malformed, StandardCharsets.UTF_8), decoded);
+        assertSame(decoded, mPool.intern(ByteBuffer.wrap(malformed), 0, malformed.length));
+    }
+
+    @Test
+    public void theSizeIsBounded() {
+        StringPool pool = new StringPool(10);
+        // Kept, so none of them is collected.
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            names.add(pool.intern("repo-" + i));
+        }
+        // A full pool hands strings back as they are.
+        String late = new String("repo-99");
+
+        assertEquals(10, pool.size());
+        assertSame(late, pool.intern(late));
+        assertSame(names.get(0), pool.intern(new String("repo-0")));
+    }
+
+    @Test
+    public void longStringsAreNotPooled() {
+        StringBuilder description = new StringBuilder();
+        while (description.length() <= StringPool.MAX_LENGTH) {
+            description.append("a long description ");
+        }
+        String first = description.toString();
+
+        mPool.intern(first);
+
+        assertNotSame(first, mPool.intern(new String(first)));
+        assertEquals(0, mPool.size());
+    }
+
+    @Test
+    public void unusedStringsAreCollected() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            mPool.intern("repo-" + i);
+        }
+        assertEquals(50, mPool.size());
+
+        for (int i = 0; i < 20 && mPool.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+
+        assertEquals(0, mPool.size());
+    }
+
+    @Test
+    public void gsonDecodesEveryStringThroughThePool() {
+        Gson gson = new GsonBuilder().registerTypeAdapter(String.class, mPool.typeAdapter()).create();
+        String json = "[{\"id\":1,\"name\":\"retrofit\"},{\"id\":2,\"name\":null}]";
+
+        GitHubRepo[] first = gson.fromJson(json, GitHubRepo[].class);
+        GitHubRepo[] second = gson.fromJson(json, GitHubRepo[].class);
+
+        assertSame(first[0].getName(), second[0].getName());
+        assertNull(second[1].getName());
+        assertEquals("{\"id\":1,\"name\":\"retrofit\"}", gson.toJson(second[0]));
+    }
+}
@@ -0,0 +1,299 @@
+package jorgecasariego.retrofit.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+
+import static org.junit.Assert.*;
+
+public class PagedListTest {
+
+    private static final int PAGE_SIZE = 20;
+    private static final int MAX_PAGES = 5;
+
+    private FakeLoader mLoader;
+    private PagedList<String> mList;
+
+    @Before
+    public void setUp() {
+        mLoader = new FakeLoader(100000, true);
+        mList = new PagedList<>(mLoader, PAGE_SIZE, MAX_PAGES);
+    }
+
+    @Test
+    public void firstPageGivesTheSizeWithPlaceholders() {
+        mList.loadInitial();
+        assertEquals(0, mList.size());
+
+        mLoader.deliverAll();
+
+        assertEquals(100000, mList.size());
+        assertEquals("item 0", mList.get(0));
+        assertNull(mList.get(PAGE_SIZE * 10));
+    }
+
+    @Test
+    public void scrollingThroughEverythingKeepsABoundedWindow() {
+        mList.loadInitial();
+        mLoader.deliverAll();
+
+        int maxLoadedPages = 0;
+        for (int position = 0; position < mList.size(); position += PAGE_SIZE / 2) {
+            mList.get(position);
+            mLoader.deliverAll();
+            assertEquals("item " + position, mList.get(position));
+            maxLoadedPages = Math.max(maxLoadedPages, mList.getLoadedPageCount());
+        }
+
+        assertTrue("loaded pages " + maxLoadedPages, maxLoadedPages <= MAX_PAGES);
+    }
+
+    @Test
+    public void droppedPagesAreLoadedAgain() {
+        mList.loadInitial();
+        mLoader.deliverAll();
+        mList.get(0);
+        mLoader.deliverAll();
+
+        mList.get(PAGE_SIZE * 100);
+        mLoader.deliverAll();
+        assertFalse(mList.isLoaded(0));
+
+        int loadsBefore = mList.getLoadCount();
+        assertNull(mList.get(0));
+        mLoader.deliverAll();
+
+        assertEquals("item 0", mList.get(0));
+        assertTrue(mList.getLoadCount() > loadsBefore);
+    }
+
+    @Test
+    public void pagesArrivingAfterTheUserScrolledAwayAreNotKept() {
+        mList.loadInitial();
+        mLoader.deliverAll();
+
+        mList.get(PAGE_SIZE * 50);
+        mList.get(PAGE_SIZE * 500);
+        mLoader.deliverAll();
+
+        assertFalse(mList.isLoaded(PAGE_SIZE * 50));
+        assertTrue(mList.isLoaded(PAGE_SIZE * 500));
+    }
+
+    @Test
+    public void withoutAPageCountTheListGrowsAPageAtATime() {
+        mLoader = new FakeLoader(PAGE_SIZE * 3 + 5, false);
+        mList = new PagedList<>(mLoader, PAGE_SIZE, MAX_PAGES);
+        mList.loadInitial();
+        mLoader.deliverAll();
+        assertEquals(PAGE_SIZE * 2, mList.size());
+
+        for (int position = 0; position < mList.size(); position++) {
+            mList.get(position);
+            mLoader.deliverAll();
+        }
+
+        assertEquals(PAGE_SIZE * 3 + 5, mList.size());
+        assertEquals("item " + (PAGE_SIZE * 3 + 4), mList.get(PAGE_SIZE * 3 + 4));
+    }
+
+    @Test
+    public void failedPagesAreRetriedOnTheNextRead() {
+        mList.loadInitial();
+        mLoader.deliverAll();
+
+        mLoader.mFail = true;
+        mList.get(PAGE_SIZE * 10);
+        mLoader.deliverAll();
+        assertFalse(mList.isLoaded(PAGE_SIZE * 10));
+
+        mLoader.mFail = false;
+        mList.get(PAGE_SIZE * 10);
+        mLoader.deliverAll();
+        assertEquals("item " + (PAGE_SIZE * 10), mList.get(PAGE_SIZE * 10));
+    }
+
+    @Test
+    public void onlyTheNeighboursOfTheReadPageAreLoadedAsPrefetches() {
+        mList.loadInitial();
+        mLoader.deliverAll();
+        assertTrue(mLoader.mPrefetched.isEmpty());
+
+        mList.get(PAGE_SIZE * 10);
+
+        assertEquals(Arrays.asList(9, 11), mLoader.mPrefetched);
+    }
+
+    @Test
+    public void peekingLoadsNothing() {
+        mList.loadInitial();
+        mLoader.deliverAll();
+        int loadsBefore = mList.getLoadCount();
+
+        assertEquals("item 1", mList.peek(1));
+        assertNull(mList.peek(PAGE_SIZE * 100));
+
+        assertEquals(loadsBefore, mList.getLoadCount());
+        assertTrue(mLoader.mPrefetched.isEmpty());
+    }
+
+    @Test
+    public void aPageStillBeingPrefetchedIsLoadedAgainOnceRead() {
+        mList.loadInitial();
+        mLoader.deliverAll();
+        mList.get(PAGE_SIZE * 10);
+        assertEquals(Arrays.asList(9, 11), mLoader.mPrefetched);
+
+        mList.get(PAGE_SIZE * 11);
+
+        assertEquals(Collections.singletonList(11), mLoader.mCancelled);
+        assertEquals(Arrays.asList(0, 10, 11), mLoader.mLoaded);
+        // 10 is already loading for the user, only 12 is new.
+        assertEquals(Arrays.asList(9, 11, 12), mLoader.mPrefetched);
+
+        // Both answers for 11 arrive: the prefetch is ignored, the page is loaded once.
+        List<Integer> changed = new ArrayList<>();
+        mList.setListener(new RecordingListener(changed));
+        mLoader.deliverAll();
+
+        assertEquals("item " + (PAGE_SIZE * 11), mList.get(PAGE_SIZE * 11));
+        assertEquals(1, Collections.frequency(changed, PAGE_SIZE * 11));
+
+        // Reading it again starts nothing more.
+        int loads = mList.getLoadCount();
+        mList.get(PAGE_SIZE * 11);
+        assertEquals(loads, mList.getLoadCount());
+    }
+
+    @Test
+    public void cancellingStopsEveryPageStillLoading() {
+        mList.loadInitial();
+        mLoader.deliverAll();
+        mList.get(PAGE_SIZE * 10);
+        List<Integer> changed = new ArrayList<>();
+        mList.setListener(new RecordingListener(changed));
+
+        mList.cancel();
+
+        List<Integer> cancelled = new ArrayList<>(mLoader.mCancelled);
+        Collections.sort(cancelled);
+        assertEquals(Arrays.asList(9, 10, 11), cancelled);
+
+        // The answers that were on their way are dropped, nobody hears of them.
+        mLoader.deliverAll();
+        assertTrue(changed.isEmpty());
+        assertFalse(mList.isLoaded(PAGE_SIZE * 10));
+        assertTrue(mList.isLoaded(0));
+
+        int loads = mList.getLoadCount();
+        mList.get(PAGE_SIZE * 10);
+        assertTrue(mList.getLoadCount() > loads);
+    }
+
+    @Test
+    public void thePrefetchDistanceIsKeptInsideTheWindow() {
+        mList.loadInitial();
+        mLoader.deliverAll();
+
+        mList.setPrefetchDistance(0);
+        mList.get(PAGE_SIZE * 10);
+        assertTrue(mLoader.mPrefetched.isEmpty());
+
+        // 5 pages in memory: 2 on each side of the one read.
+        mList.setPrefetchDistance(3);
+        mList.get(PAGE_SIZE * 20);
+        assertEquals(Arrays.asList(19, 21, 18, 22), mLoader.mPrefetched);
+    }
+
+    /**
+     * Holds the callbacks until deliverAll(), like responses arriving on a later main thread
+     * message.
+     */
+    private static final class FakeLoader implements PagedList.PageLoader<String> {
+
+        private final int mItemCount;
+        private final boolean mTellsPageCount;
+        private final Queue<Runnable> mPending = new LinkedList<>();
+        final List<Integer> mPrefetched = new ArrayList<>();
+        final List<Integer> mLoaded = new ArrayList<>();
+        final List<Integer> mCancelled = new ArrayList<>();
+        boolean mFail;
+
+        FakeLoader(int itemCount, boolean tellsPageCount) {
+            mItemCount = itemCount;
+            mTellsPageCount = tellsPageCount;
+        }
+
+        @Override
+        public Subscription loadPage(final int page, final int pageSize, boolean prefetch,
+                                     final PagedList.PageCallback<String> callback) {
+            final boolean fail = mFail;
+            (prefetch ? mPrefetched : mLoaded).add(page);
+            mPending.add(new Runnable() {
+                @Override
+                public void run() {
+                    if (fail) {
+                        callback.onError(new RuntimeException("offline"));
+                        return;
+                    }
+                    List<String> items = new ArrayList<>();
+                    for (int i = page * pageSize; i < Math.min(mItemCount, (page + 1) * pageSize); i++) {
+                        items.add("item " + i);
+                    }
+                    int pageCount = (mItemCount + pageSize - 1) / pageSize;
+                    callback.onPageLoaded(items, mTellsPageCount ? pageCount : -1);
+                }
+            });
+            // Still delivered once cancelled, like a response already on its way.
+            return Subscriptions.create(new Action0() {
+                @Override
+                public void call() {
+                    mCancelled.add(page);
+                }
+            });
+        }
+
+        void deliverAll() {
+            Runnable next;
+            while ((next = mPending.poll()) != null) {
+                next.run();
+            }
+        }
+    }
+
+    private static final class RecordingListener implements PagedList.Listener {
+
+        private final List<Integer> mChangedStarts;
+
+        RecordingListener(List<Integer> changedStarts) {
+            mChangedStarts = changedStarts;
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            mChangedStarts.add(positionStart);
+        }
+
+        @Override
+        public void onLoadError(int page, Throwable t) {
+        }
+    }
+}
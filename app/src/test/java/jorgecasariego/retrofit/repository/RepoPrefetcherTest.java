@@ -0,0 +1,147 @@
+package jorgecasariego.retrofit.repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jorgecasariego.retrofit.GitHubClient;
+import jorgecasariego.retrofit.cache.RepoSnapshotReader;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.*;
+
+public class RepoPrefetcherTest {
+
+    private static final long MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final Pattern PATH = Pattern.compile("/users/([^/]+)/repos\\?page=(\\d+)&per_page=(\\d+)");
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final MockWebServer mServer = new MockWebServer();
+    // The fake clock: only its now() is used.
+    private final TestScheduler mClock = new TestScheduler();
+    private RepoPrefetcher mPrefetcher;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                Matcher matcher = PATH.matcher(request.getPath());
+                if (!matcher.matches() || matcher.group(1).equals("broken")) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                // "big" has 250 repos, the others 3.
+                int total = matcher.group(1).equals("big") ? 250 : 3;
+                int page = Integer.parseInt(matcher.group(2));
+                int perPage = Integer.parseInt(matcher.group(3));
+                int pageCount = (total + perPage - 1) / perPage;
+                MockResponse response = new MockResponse().setBody(reposJson(matcher.group(1),
+                        (page - 1) * perPage, Math.min(total, page * perPage)));
+                if (page < pageCount) {
+                    response.setHeader("Link", "<https://api.github.com/user/1/repos?page=" + (page + 1) + ">; rel=\"next\", "
+                            + "<https://api.github.com/user/1/repos?page=" + pageCount + ">; rel=\"last\"");
+                }
+                return response;
+            }
+        });
+        mServer.start();
+        GitHubClient client = new Retrofit.Builder()
+                .baseUrl(mServer.url("/"))
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(GitHubClient.class);
+        mPrefetcher = new RepoPrefetcher(client, mFolder.getRoot(), MAX_AGE_MILLIS, mClock);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void everyPageOfAUserGoesIntoItsSnapshot() throws Exception {
+        mClock.advanceTimeBy(5, TimeUnit.MINUTES);
+
+        assertEquals(Collections.singletonList(true), prefetch("big"));
+
+        assertEquals(3, mServer.getRequestCount());
+        RepoSnapshotReader snapshot = RepoSnapshotReader.open(
+                RepoPrefetcher.snapshotFile(mFolder.getRoot(), "big"));
+        assertEquals(250, snapshot.size());
+        assertEquals("big-0", snapshot.get(0).getName());
+        assertEquals("big-249", snapshot.get(249).getName());
+        assertEquals(TimeUnit.MINUTES.toMillis(5), snapshot.getCreatedAtMillis());
+    }
+
+    @Test
+    public void freshSnapshotsAreNotFetchedAgain() throws Exception {
+        prefetch("jorgecasariego", "square");
+        assertEquals(2, mServer.getRequestCount());
+
+        mClock.advanceTimeBy(MAX_AGE_MILLIS - 1, TimeUnit.MILLISECONDS);
+        assertEquals(Collections.<Boolean>emptyList(), prefetch("jorgecasariego", "square"));
+        assertEquals(2, mServer.getRequestCount());
+
+        mClock.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList(true, true), prefetch("jorgecasariego", "square"));
+        assertEquals(4, mServer.getRequestCount());
+    }
+
+    @Test
+    public void aFailingUserDoesNotStopTheOthers() throws Exception {
+        // The order of the results is the order the users finish in.
+        assertEquals(2, Collections.frequency(prefetch("jorgecasariego", "broken", "square"), true));
+
+        assertTrue(RepoPrefetcher.snapshotFile(mFolder.getRoot(), "jorgecasariego").exists());
+        assertTrue(RepoPrefetcher.snapshotFile(mFolder.getRoot(), "square").exists());
+        assertFalse(RepoPrefetcher.snapshotFile(mFolder.getRoot(), "broken").exists());
+        // Still stale: the next run tries it again.
+        assertEquals(Collections.singletonList(false), prefetch("jorgecasariego", "broken", "square"));
+    }
+
+    @Test
+    public void aSnapshotThatCannotBeReadIsFetchedAgain() throws Exception {
+        assertTrue(mFolder.newFile("repos-square.snapshot").exists());
+
+        assertEquals(Collections.singletonList(true), prefetch("square"));
+        assertEquals(3, RepoSnapshotReader.open(RepoPrefetcher.snapshotFile(mFolder.getRoot(), "square")).size());
+    }
+
+    private List<Boolean> prefetch(String... users) {
+        TestSubscriber<List<Boolean>> subscriber = new TestSubscriber<>();
+        mPrefetcher.prefetch(Arrays.asList(users)).toList().subscribe(subscriber);
+        subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        subscriber.assertNoErrors();
+        return subscriber.getOnNextEvents().get(0);
+    }
+
+    private static String reposJson(String user, int from, int to) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(i + 1).append(",\"name\":\"").append(user).append('-').append(i).append("\"}");
+        }
+        return json.append(']').toString();
+    }
+}
@@ -0,0 +1,118 @@
+package jorgecasariego.retrofit.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Single;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.*;
+
+public class TvShowRepositoryTest {
+
+    private static final long TTL_MILLIS = 60000;
+    private static final long FETCH_MILLIS = 5000;
+
+    private TestScheduler mScheduler;
+    private AtomicInteger mFetchCount;
+    private boolean mFailNextFetch;
+    private TvShowRepository mRepository;
+
+    @Before
+    public void setUp() {
+        mScheduler = new TestScheduler();
+        mFetchCount = new AtomicInteger();
+        Single<List<String>> fetch = Single.fromCallable(new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws Exception {
+                mFetchCount.incrementAndGet();
+                if (mFailNextFetch) {
+                    mFailNextFetch = false;
+                    throw new RuntimeException("Failed to load");
+                }
+                return Arrays.asList("Futurama", "Archer");
+            }
+        }).toObservable().delay(FETCH_MILLIS, TimeUnit.MILLISECONDS, mScheduler).toSingle();
+        mRepository = new TvShowRepository(fetch, TTL_MILLIS, mScheduler);
+    }
+
+    @Test
+    public void concurrentSubscribersShareOneFetch() {
+        TestSubscriber<List<String>> first = subscribe();
+        TestSubscriber<List<String>> second = subscribe();
+        mScheduler.advanceTimeBy(FETCH_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, mFetchCount.get());
+        first.assertValueCount(1);
+        second.assertValueCount(1);
+    }
+
+    @Test
+    public void resultIsReplayedUntilTtlExpires() {
+        subscribe();
+        mScheduler.advanceTimeBy(FETCH_MILLIS, TimeUnit.MILLISECONDS);
+
+        mScheduler.advanceTimeBy(TTL_MILLIS - 1, TimeUnit.MILLISECONDS);
+        TestSubscriber<List<String>> cached = subscribe();
+        cached.assertValueCount(1);
+        assertEquals(1, mFetchCount.get());
+
+        mScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        subscribe();
+        assertEquals(2, mFetchCount.get());
+    }
+
+    @Test
+    public void unsubscribingMidFetchDoesNotRefetch() {
+        // An activity is destroyed by a rotation while the fetch is in flight...
+        TestSubscriber<List<String>> destroyed = subscribe();
+        mScheduler.advanceTimeBy(FETCH_MILLIS / 2, TimeUnit.MILLISECONDS);
+        destroyed.unsubscribe();
+
+        // ...and the recreated one subscribes again.
+        TestSubscriber<List<String>> recreated = subscribe();
+        mScheduler.advanceTimeBy(FETCH_MILLIS / 2, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, mFetchCount.get());
+        recreated.assertValueCount(1);
+        destroyed.assertNoValues();
+    }
+
+    @Test
+    public void failedFetchIsNotCached() {
+        mFailNextFetch = true;
+        TestSubscriber<List<String>> failed = subscribe();
+        mScheduler.advanceTimeBy(FETCH_MILLIS, TimeUnit.MILLISECONDS);
+        failed.assertError(RuntimeException.class);
+
+        TestSubscriber<List<String>> retried = subscribe();
+        mScheduler.advanceTimeBy(FETCH_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertEquals(2, mFetchCount.get());
+        retried.assertValueCount(1);
+    }
+
+    @Test
+    public void invalidateForcesRefetch() {
+        subscribe();
+        mScheduler.advanceTimeBy(FETCH_MILLIS, TimeUnit.MILLISECONDS);
+
+        mRepository.invalidate();
+        subscribe();
+
+        assertEquals(2, mFetchCount.get());
+    }
+
+    private TestSubscriber<List<String>> subscribe() {
+        TestSubscriber<List<String>> subscriber = new TestSubscriber<>();
+        mRepository.getFavoriteTvShows().subscribe(subscriber);
+        return subscriber;
+    }
+}
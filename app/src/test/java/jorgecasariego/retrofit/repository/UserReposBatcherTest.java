@@ -0,0 +1,225 @@
+package jorgecasariego.retrofit.repository;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jorgecasariego.retrofit.GitHubGraphQLClient;
+import jorgecasariego.retrofit.model.GitHubRepo;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.*;
+
+/**
+ * Against a local stand-in for the GraphQL endpoint, which answers every alias of a query with
+ * two repos, and null for the user "ghost". "norepos" comes back without its repositories, and
+ * the repos of "noids" without their databaseId.
+ */
+public class UserReposBatcherTest {
+
+    private static final Pattern USER = Pattern.compile("(u\\d+): user\\(login: \"([^\"]+)\"\\)");
+
+    private final MockWebServer mServer = new MockWebServer();
+    // Reading a RecordedRequest's body empties it, so the dispatcher keeps the queries here.
+    private final List<String> mQueries = Collections.synchronizedList(new ArrayList<String>());
+    private volatile int mResponseCode = 200;
+    private GitHubGraphQLClient mClient;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (mResponseCode != 200) {
+                    return new MockResponse().setResponseCode(mResponseCode);
+                }
+                String query = new JsonParser().parse(request.getBody().readUtf8())
+                        .getAsJsonObject().get("query").getAsString();
+                mQueries.add(query);
+                return new MockResponse().setBody(answer(query).toString());
+            }
+        });
+        mServer.start();
+        mClient = new Retrofit.Builder()
+                .baseUrl(mServer.url("/"))
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(GitHubGraphQLClient.class);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void lookupsWithinTheWindowGoOutTogether() {
+        UserReposBatcher batcher = new UserReposBatcher(mClient, 50, 20, Schedulers.computation());
+        int lookups = 50;
+
+        List<TestSubscriber<List<GitHubRepo>>> subscribers = new ArrayList<>();
+        for (int i = 0; i < lookups; i++) {
+            TestSubscriber<List<GitHubRepo>> subscriber = new TestSubscriber<>();
+            batcher.reposForUser("user" + i).subscribe(subscriber);
+            subscribers.add(subscriber);
+        }
+
+        for (int i = 0; i < lookups; i++) {
+            TestSubscriber<List<GitHubRepo>> subscriber = subscribers.get(i);
+            subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+            subscriber.assertNoErrors();
+            List<GitHubRepo> repos = subscriber.getOnNextEvents().get(0);
+            assertEquals("user" + i + "/first", repos.get(0).getName());
+            assertEquals(2, repos.size());
+        }
+        // 20 + 20 sent as soon as they were full, the last 10 at the end of the window.
+        assertEquals(3, batcher.getRoundTripCount());
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void aUserAskedForTwiceIsOnlyInTheQueryOnce() {
+        UserReposBatcher batcher = new UserReposBatcher(mClient, 50, 20, Schedulers.computation());
+        TestSubscriber<List<GitHubRepo>> first = new TestSubscriber<>();
+        TestSubscriber<List<GitHubRepo>> second = new TestSubscriber<>();
+
+        batcher.reposForUser("octocat").subscribe(first);
+        batcher.reposForUser("octocat").subscribe(second);
+        first.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        second.awaitTerminalEvent(5, TimeUnit.SECONDS);
+
+        assertEquals(first.getOnNextEvents(), second.getOnNextEvents());
+        assertEquals(1, mQueries.size());
+        assertEquals(1, mQueries.get(0).split("user\\(login").length - 1);
+    }
+
+    @Test
+    public void anUnknownUserOnlyFailsItsOwnLookup() {
+        UserReposBatcher batcher = new UserReposBatcher(mClient, 50, 20, Schedulers.computation());
+        TestSubscriber<List<GitHubRepo>> ghost = new TestSubscriber<>();
+        TestSubscriber<List<GitHubRepo>> octocat = new TestSubscriber<>();
+
+        batcher.reposForUser("ghost").subscribe(ghost);
+        batcher.reposForUser("octocat").subscribe(octocat);
+        ghost.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        octocat.awaitTerminalEvent(5, TimeUnit.SECONDS);
+
+        ghost.assertError(IllegalStateException.class);
+        assertEquals("Could not resolve to a User with the login of 'ghost'.",
+                ghost.getOnErrorEvents().get(0).getMessage());
+        octocat.assertNoErrors();
+        assertEquals(1, batcher.getRoundTripCount());
+    }
+
+    @Test
+    public void aUserThatCannotBeParsedOnlyFailsItsOwnLookup() {
+        UserReposBatcher batcher = new UserReposBatcher(mClient, 50, 20, Schedulers.computation());
+        List<TestSubscriber<List<GitHubRepo>>> subscribers = new ArrayList<>();
+
+        for (String user : Arrays.asList("norepos", "noids", "octocat")) {
+            TestSubscriber<List<GitHubRepo>> subscriber = new TestSubscriber<>();
+            batcher.reposForUser(user).subscribe(subscriber);
+            subscribers.add(subscriber);
+        }
+        for (TestSubscriber<List<GitHubRepo>> subscriber : subscribers) {
+            subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, subscribers.get(0).getOnErrorEvents().size());
+        assertEquals(1, subscribers.get(1).getOnErrorEvents().size());
+        subscribers.get(2).assertNoErrors();
+        subscribers.get(2).assertCompleted();
+        assertEquals(2, subscribers.get(2).getOnNextEvents().get(0).size());
+        assertEquals(1, batcher.getRoundTripCount());
+    }
+
+    @Test
+    public void aFailedRequestFailsEveryLookupOfTheBatch() {
+        mResponseCode = 502;
+        UserReposBatcher batcher = new UserReposBatcher(mClient, 50, 20, Schedulers.computation());
+        List<TestSubscriber<List<GitHubRepo>>> subscribers = new ArrayList<>();
+
+        for (String user : Arrays.asList("a", "b", "c")) {
+            TestSubscriber<List<GitHubRepo>> subscriber = new TestSubscriber<>();
+            batcher.reposForUser(user).subscribe(subscriber);
+            subscribers.add(subscriber);
+        }
+
+        for (TestSubscriber<List<GitHubRepo>> subscriber : subscribers) {
+            subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+            subscriber.assertError(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    public void loginsAreEscapedInTheQuery() {
+        String query = UserReposBatcher.buildQuery(Arrays.asList("a\"b"));
+
+        assertTrue(query, query.contains("login: \"a\\\"b\""));
+    }
+
+    private static JsonObject answer(String query) {
+        JsonObject data = new JsonObject();
+        JsonArray errors = new JsonArray();
+        Matcher matcher = USER.matcher(query);
+        int id = 0;
+        while (matcher.find()) {
+            String alias = matcher.group(1);
+            String login = matcher.group(2);
+            if (login.equals("ghost")) {
+                data.add(alias, JsonNull.INSTANCE);
+                JsonObject error = new JsonObject();
+                JsonArray path = new JsonArray();
+                path.add(alias);
+                error.add("path", path);
+                error.addProperty("message", "Could not resolve to a User with the login of 'ghost'.");
+                errors.add(error);
+                continue;
+            }
+            JsonObject user = new JsonObject();
+            if (login.equals("norepos")) {
+                data.add(alias, user);
+                continue;
+            }
+            JsonArray nodes = new JsonArray();
+            for (String name : Arrays.asList("first", "second")) {
+                JsonObject node = new JsonObject();
+                node.add("databaseId", login.equals("noids") ? JsonNull.INSTANCE : new JsonPrimitive(++id));
+                node.addProperty("name", login + "/" + name);
+                nodes.add(node);
+            }
+            JsonObject repositories = new JsonObject();
+            repositories.add("nodes", nodes);
+            user.add("repositories", repositories);
+            data.add(alias, user);
+        }
+        JsonObject body = new JsonObject();
+        body.add("data", data);
+        if (errors.size() > 0) {
+            body.add("errors", errors);
+        }
+        return body;
+    }
+}
@@ -0,0 +1,119 @@
+package jorgecasariego.retrofit.rx;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveDebounceTest {
+
+    private TestScheduler mScheduler;
+    private PublishSubject<String> mInput;
+    private AdaptiveDebounce<String> mDebounce;
+    private TestSubscriber<String> mSubscriber;
+
+    @Before
+    public void setUp() {
+        mScheduler = new TestScheduler();
+        mInput = PublishSubject.create();
+        mDebounce = new AdaptiveDebounce<>(50, 800, mScheduler);
+        mSubscriber = new TestSubscriber<>();
+        mInput.lift(mDebounce).subscribe(mSubscriber);
+    }
+
+    @Test
+    public void startsAtMaxWindowUntilLatencyIsKnown() {
+        assertEquals(800, mDebounce.getWindowMillis());
+
+        mInput.onNext("a");
+        mScheduler.advanceTimeBy(799, TimeUnit.MILLISECONDS);
+        mSubscriber.assertNoValues();
+
+        mScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        mSubscriber.assertValues("a");
+    }
+
+    @Test
+    public void fastWorkShrinksWindowToMinimum() {
+        for (int i = 0; i < 10; i++) {
+            mDebounce.recordLatency(5);
+        }
+        assertEquals(50, mDebounce.getWindowMillis());
+
+        mInput.onNext("a");
+        mScheduler.advanceTimeBy(49, TimeUnit.MILLISECONDS);
+        mSubscriber.assertNoValues();
+
+        mScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        mSubscriber.assertValues("a");
+    }
+
+    @Test
+    public void slowWorkWaitsForAPauseInTyping() {
+        mDebounce.recordLatency(2000);
+
+        // Typing a key every 100ms: the window follows the cadence (100ms * 1.5) instead of the
+        // backend latency, and nothing is emitted while the user keeps typing.
+        typeEvery(100, "s", "se", "sea", "sear");
+        mSubscriber.assertNoValues();
+        assertEquals(150, mDebounce.getWindowMillis());
+
+        mScheduler.advanceTimeBy(149, TimeUnit.MILLISECONDS);
+        mSubscriber.assertNoValues();
+
+        mScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        mSubscriber.assertValues("sear");
+    }
+
+    @Test
+    public void windowNeverExceedsBounds() {
+        for (int i = 0; i < 20; i++) {
+            mDebounce.recordLatency(60000);
+        }
+        assertEquals(800, mDebounce.getWindowMillis());
+
+        for (int i = 0; i < 20; i++) {
+            mDebounce.recordLatency(0);
+        }
+        assertEquals(50, mDebounce.getWindowMillis());
+    }
+
+    @Test
+    public void longPausesDoNotCountAsTypingCadence() {
+        mDebounce.recordLatency(2000);
+
+        mInput.onNext("a");
+        mScheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        mInput.onNext("ab");
+
+        // A 10s gap is not typing, so the window still follows the (slow) latency.
+        assertEquals(800, mDebounce.getWindowMillis());
+        mScheduler.advanceTimeBy(800, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList("a", "ab"), mSubscriber.getOnNextEvents());
+    }
+
+    @Test
+    public void completionFlushesPendingValue() {
+        mInput.onNext("a");
+        mInput.onCompleted();
+
+        mSubscriber.assertValues("a");
+        mSubscriber.assertCompleted();
+    }
+
+    private void typeEvery(long intervalMillis, String... values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                mScheduler.advanceTimeBy(intervalMillis, TimeUnit.MILLISECONDS);
+            }
+            mInput.onNext(values[i]);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package jorgecasariego.retrofit.rx;
+
+import android.view.Choreographer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jorgecasariego.retrofit.BuildConfig;
+import rx.Subscriber;
+
+import static org.junit.Assert.*;
+
+/**
+ * The main looper is paused and the frames are run by hand, e.g. in the order a terminal event
+ * arriving while a frame runs lines them up.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class FrameConflateTest {
+
+    private final List<String> mEvents = new ArrayList<>();
+    // Not a SafeSubscriber: nothing unsubscribes it when it completes, like an unsafeSubscribe()d
+    // or lifted child.
+    private final Subscriber<Integer> mChild = new Subscriber<Integer>() {
+        @Override
+        public void onNext(Integer value) {
+            mEvents.add("onNext " + value);
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            mEvents.add("onError");
+        }
+
+        @Override
+        public void onCompleted() {
+            mEvents.add("onCompleted");
+        }
+    };
+
+    @Before
+    public void setUp() {
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @Test
+    public void onlyTheLatestValueOfAFrameIsDelivered() {
+        FrameConflate<Integer> conflate = FrameConflate.create();
+        Subscriber<? super Integer> parent = conflate.call(mChild);
+
+        parent.onNext(1);
+        parent.onNext(2);
+        frame(parent);
+
+        assertEquals(1, conflate.getDroppedCount());
+        assertEquals("onNext 2", mEvents.get(mEvents.size() - 1));
+    }
+
+    @Test
+    public void theTerminalEventIsDeliveredOnce() {
+        Subscriber<? super Integer> parent = FrameConflate.<Integer>create().call(mChild);
+
+        parent.onNext(1);
+        parent.onCompleted();
+        frame(parent);
+        // The frame onCompleted() scheduled after the one above had already seen it.
+        frame(parent);
+
+        assertEquals(1, count("onCompleted"));
+        assertEquals(1, count("onNext 1"));
+    }
+
+    @Test
+    public void anErrorIsDeliveredOnce() {
+        Subscriber<? super Integer> parent = FrameConflate.<Integer>create().call(mChild);
+
+        parent.onError(new RuntimeException());
+        frame(parent);
+        frame(parent);
+
+        assertEquals(1, count("onError"));
+    }
+
+    private static void frame(Subscriber<? super Integer> parent) {
+        ((Choreographer.FrameCallback) parent).doFrame(System.nanoTime());
+    }
+
+    private int count(String event) {
+        int count = 0;
+        for (String e : mEvents) {
+            if (e.equals(event)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,95 @@
+package jorgecasariego.retrofit.rx;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class InstrumentedExecutorTest {
+
+    @Test
+    public void saturatedPoolRejectsInsteadOfGrowing() throws Exception {
+        InstrumentedExecutor executor = new InstrumentedExecutor("test", 2, 3, null);
+        CountDownLatch release = new CountDownLatch(1);
+
+        for (int i = 0; i < 5; i++) {
+            executor.execute(block(release));
+        }
+        try {
+            executor.execute(block(release));
+            fail("Expected the sixth task to be rejected");
+        } catch (RejectedExecutionException expected) {
+        }
+
+        InstrumentedExecutor.Metrics metrics = executor.getMetrics();
+        assertEquals(2, metrics.mPoolSize);
+        assertEquals(3, metrics.mQueueDepth);
+        assertEquals(1, metrics.mRejectedTasks);
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(5, executor.getMetrics().mCompletedTasks);
+    }
+
+    @Test
+    public void recordsWaitAndRunTime() throws Exception {
+        InstrumentedExecutor executor = new InstrumentedExecutor("test", 1, 10, null);
+
+        executor.execute(sleep(50));
+        executor.execute(sleep(50));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        InstrumentedExecutor.Metrics metrics = executor.getMetrics();
+        assertEquals(2, metrics.mCompletedTasks);
+        // The second task waited for the first one to finish.
+        assertTrue(metrics.mMaxWaitNanos >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertTrue(metrics.mMaxRunNanos >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    public void customPolicyIsApplied() throws Exception {
+        InstrumentedExecutor executor = new InstrumentedExecutor(
+                "test", 1, 1, new ThreadPoolExecutor.DiscardPolicy());
+        CountDownLatch release = new CountDownLatch(1);
+
+        executor.execute(block(release));
+        executor.execute(block(release));
+        executor.execute(block(release));
+
+        assertEquals(1, executor.getMetrics().mRejectedTasks);
+        release.countDown();
+        executor.shutdown();
+    }
+
+    private static Runnable block(final CountDownLatch release) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private static Runnable sleep(final long millis) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(millis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,151 @@
+package jorgecasariego.retrofit.rx;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.internal.operators.OperatorObserveOn;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.*;
+
+/**
+ * The profiler isn't registered with RxJavaPlugins here (that can only happen once per process,
+ * before Observable is first used): the tests call its hook methods the way Observable would.
+ */
+public class RxProfilerTest {
+
+    private static final int VALUES = 20;
+    private static final long FAST_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private RxProfiler mProfiler;
+
+    @Before
+    public void setUp() {
+        mProfiler = new RxProfiler();
+    }
+
+    @Test
+    public void operatorTimeExcludesTheOperatorsAfterIt() {
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        Observable.range(0, VALUES)
+                .lift(mProfiler.onLift(new FastOperator()))
+                .lift(mProfiler.onLift(new SlowOperator()))
+                .subscribe(subscriber);
+
+        subscriber.assertValueCount(VALUES);
+        RxProfiler.OperatorStats fast = mProfiler.getOperatorStats().get(FastOperator.class.getName());
+        RxProfiler.OperatorStats slow = mProfiler.getOperatorStats().get(SlowOperator.class.getName());
+        assertEquals(VALUES, fast.getValueCount());
+        assertEquals(VALUES, slow.getValueCount());
+        assertTrue(fast.getAverageSelfNanos() >= FAST_NANOS);
+        // Without subtracting its child, the fast operator would be charged for the slow one too.
+        assertTrue(fast.getAverageSelfNanos() < SLOW_NANOS);
+        assertTrue(slow.getAverageSelfNanos() >= SLOW_NANOS);
+        assertEquals(0, fast.getThreadHopCount());
+        assertTrue(mProfiler.report().contains(SlowOperator.class.getName()));
+    }
+
+    @Test
+    public void observeOnCountsAThreadHopPerValue() {
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        Observable.range(0, VALUES)
+                .lift(mProfiler.onLift(new OperatorObserveOn<Integer>(Schedulers.newThread())))
+                .subscribe(subscriber);
+
+        subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        subscriber.assertValueCount(VALUES);
+        RxProfiler.OperatorStats observeOn = mProfiler.getOperatorStats().get(OperatorObserveOn.class.getName());
+        assertEquals(VALUES, observeOn.getThreadHopCount());
+    }
+
+    @Test
+    public void liveSubscriptionsAreListedByOwnerWithTheirStack() {
+        final Object owner = new Object();
+        mProfiler.setOwnerResolver(new RxProfiler.OwnerResolver() {
+            @Override
+            public Object resolveOwner(StackTraceElement[] stack) {
+                return owner;
+            }
+        });
+
+        Subscription subscription = mProfiler.onSubscribeReturn(Observable.never().subscribe());
+
+        assertEquals(1, mProfiler.getLiveSubscriptions(owner).size());
+        assertEquals(0, mProfiler.getLiveSubscriptions(new Object()).size());
+        boolean subscribedFromThisTest = false;
+        for (StackTraceElement frame : mProfiler.getLiveSubscriptions(owner).get(0).getStack()) {
+            subscribedFromThisTest |= frame.getMethodName().equals("liveSubscriptionsAreListedByOwnerWithTheirStack");
+        }
+        assertTrue(subscribedFromThisTest);
+
+        subscription.unsubscribe();
+
+        assertEquals(0, mProfiler.getLiveSubscriptions(owner).size());
+        assertEquals(0, mProfiler.getLiveSubscriptionCount());
+    }
+
+    @Test
+    public void innerSubscriptionsAreNotTracked() {
+        Subscriber<Object> inner = new TestSubscriber<>();
+
+        mProfiler.onSubscribeReturn(inner);
+
+        assertEquals(0, mProfiler.getLiveSubscriptionCount());
+    }
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            // busy wait, sleep() is too coarse
+        }
+    }
+
+    private static class SpinningOperator implements Observable.Operator<Integer, Integer> {
+
+        private final long mNanos;
+
+        SpinningOperator(long nanos) {
+            mNanos = nanos;
+        }
+
+        @Override
+        public Subscriber<? super Integer> call(final Subscriber<? super Integer> child) {
+            return new Subscriber<Integer>(child) {
+                @Override
+                public void onNext(Integer value) {
+                    spin(mNanos);
+                    child.onNext(value);
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    child.onError(e);
+                }
+
+                @Override
+                public void onCompleted() {
+                    child.onCompleted();
+                }
+            };
+        }
+    }
+
+    private static final class FastOperator extends SpinningOperator {
+        FastOperator() {
+            super(FAST_NANOS);
+        }
+    }
+
+    private static final class SlowOperator extends SpinningOperator {
+        SlowOperator() {
+            super(SLOW_NANOS);
+        }
+    }
+}
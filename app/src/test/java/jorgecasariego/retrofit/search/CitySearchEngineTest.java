@@ -0,0 +1,121 @@
+package jorgecasariego.retrofit.search;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class CitySearchEngineTest {
+
+    private static final String[] CITIES = {
+            "Aberdeen", "Abilene", "Akron", "Albany", "Boston", "Boulder", "Austin", "abbotsford"
+    };
+
+    private final List<ForkJoinPool> mPools = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (ForkJoinPool pool : mPools) {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void search_returnsMatchesInDatasetOrder() throws Exception {
+        CitySearchEngine engine = new CitySearchEngine(CITIES, pool(2), 2);
+
+        assertEquals(Arrays.asList("Aberdeen", "Abilene", "abbotsford"), engine.search("ab"));
+        assertEquals(Arrays.asList("Boston", "Boulder"), engine.search("BO"));
+        assertTrue(engine.search("").isEmpty());
+        assertTrue(engine.search("zzz").isEmpty());
+    }
+
+    @Test
+    public void search_shardedResultsMatchSequentialScan() throws Exception {
+        String[] cities = generateCities(100000);
+        CitySearchEngine sequential = new CitySearchEngine(cities, pool(1), 1);
+        CitySearchEngine sharded = new CitySearchEngine(cities, pool(4), 16);
+
+        for (String prefix : new String[]{"a", "city 1", "city 99", "nope"}) {
+            assertEquals(sequential.search(prefix), sharded.search(prefix));
+        }
+    }
+
+    @Test
+    public void search_limitKeepsFirstMatchesAcrossShards() throws Exception {
+        String[] cities = generateCities(100000);
+        CitySearchEngine sequential = new CitySearchEngine(cities, pool(1), 1);
+        CitySearchEngine sharded = new CitySearchEngine(cities, pool(4), 16);
+
+        List<String> expected = sequential.search("city 4").subList(0, 25);
+        assertEquals(expected, sharded.search("city 4", 25));
+    }
+
+    @Test
+    public void search_newerQueryCancelsRunningOne() throws Exception {
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch secondDone = new CountDownLatch(1);
+        // Holds the first search, after it got its token, until the second one is done.
+        ForkJoinPool pool = new ForkJoinPool(2) {
+            private final AtomicBoolean mFirst = new AtomicBoolean(true);
+
+            @Override
+            public <T> T invoke(ForkJoinTask<T> task) {
+                if (mFirst.getAndSet(false)) {
+                    firstStarted.countDown();
+                    try {
+                        secondDone.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return super.invoke(task);
+            }
+        };
+        mPools.add(pool);
+        final CitySearchEngine engine = new CitySearchEngine(generateCities(10000), pool, 2);
+        final AtomicReference<Throwable> firstError = new AtomicReference<>();
+
+        Thread first = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    engine.search("city");
+                } catch (Throwable t) {
+                    firstError.set(t);
+                }
+            }
+        });
+        first.start();
+        firstStarted.await();
+        assertEquals(Arrays.asList("City 1"), engine.search("city 1", 1));
+        secondDone.countDown();
+        first.join();
+
+        assertTrue(String.valueOf(firstError.get()), firstError.get() instanceof CancellationException);
+    }
+
+    private ForkJoinPool pool(int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        mPools.add(pool);
+        return pool;
+    }
+
+    private static String[] generateCities(int count) {
+        List<String> cities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            cities.add("City " + i);
+        }
+        return cities.toArray(new String[count]);
+    }
+}
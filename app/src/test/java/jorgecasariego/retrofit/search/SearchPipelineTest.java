@@ -0,0 +1,140 @@
+package jorgecasariego.retrofit.search;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import static org.junit.Assert.*;
+
+public class SearchPipelineTest {
+
+    // min == max: the window doesn't adapt, see AdaptiveDebounceTest for that.
+    private static final long WINDOW_MILLIS = 100;
+
+    private final TestScheduler mTime = new TestScheduler();
+    // Triggered separately, so results can be kept waiting in the observeOn queue.
+    private final TestScheduler mResults = new TestScheduler();
+    private final PublishSubject<String> mQueries = PublishSubject.create();
+    // One search per query text, finished by the test.
+    private final Map<String, PublishSubject<List<String>>> mSearches = new HashMap<>();
+    private final List<String> mSearched = new ArrayList<>();
+    private final TestSubscriber<SearchPipeline.SearchResult> mSubscriber = new TestSubscriber<>();
+    private SearchPipeline mPipeline;
+
+    @Before
+    public void setUp() {
+        mPipeline = new SearchPipeline(new Func1<String, Observable<List<String>>>() {
+            @Override
+            public Observable<List<String>> call(String query) {
+                mSearched.add(query);
+                PublishSubject<List<String>> search = PublishSubject.create();
+                mSearches.put(query, search);
+                return search;
+            }
+        }, WINDOW_MILLIS, WINDOW_MILLIS, mTime, mResults);
+        mPipeline.results(mQueries).subscribe(mSubscriber);
+    }
+
+    @Test
+    public void onlyTheQueryTypedBeforeAPauseIsSearched() {
+        type("a", "ab", "abc");
+        assertTrue(mSearched.isEmpty());
+
+        mTime.advanceTimeBy(WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertEquals(Collections.singletonList("abc"), mSearched);
+        assertEquals(3, mPipeline.getMetrics().getQueryCount());
+    }
+
+    @Test
+    public void theSameQueryTwiceInARowIsSearchedOnce() {
+        type("ab");
+        mTime.advanceTimeBy(WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        type("abc", "ab");
+        mTime.advanceTimeBy(WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertEquals(Collections.singletonList("ab"), mSearched);
+
+        // Not consecutive: searched again.
+        type("abc");
+        mTime.advanceTimeBy(WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        type("ab");
+        mTime.advanceTimeBy(WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertEquals(Arrays.asList("ab", "abc", "ab"), mSearched);
+    }
+
+    @Test
+    public void aNewerQueryCancelsTheSearchInFlight() {
+        search("a");
+        search("ab");
+
+        assertFalse(mSearches.get("a").hasObservers());
+        assertEquals(1, mPipeline.getMetrics().getCancelledSearchCount());
+
+        mSearches.get("ab").onNext(Collections.singletonList("Abilene"));
+        mResults.triggerActions();
+
+        mSubscriber.assertValueCount(1);
+        assertEquals("ab", mSubscriber.getOnNextEvents().get(0).getQuery());
+    }
+
+    @Test
+    public void aResultOvertakenByANewerSearchIsDropped() {
+        search("a");
+        // Waits in the observeOn queue...
+        mSearches.get("a").onNext(Collections.singletonList("Akron"));
+        // ...while the next search starts.
+        search("b");
+        mResults.triggerActions();
+
+        mSubscriber.assertNoValues();
+        assertEquals(1, mPipeline.getMetrics().getStaleResultCount());
+
+        mSearches.get("b").onNext(Collections.singletonList("Boston"));
+        mResults.triggerActions();
+
+        mSubscriber.assertValueCount(1);
+        assertEquals(Collections.singletonList("Boston"), mSubscriber.getOnNextEvents().get(0).getResults());
+    }
+
+    @Test
+    public void aFailedSearchDoesNotEndThePipeline() {
+        search("a");
+        mSearches.get("a").onError(new RuntimeException("offline"));
+        search("ab");
+        mSearches.get("ab").onNext(Collections.singletonList("Abilene"));
+        mResults.triggerActions();
+
+        mSubscriber.assertNoErrors();
+        mSubscriber.assertValueCount(1);
+        assertEquals(1, mPipeline.getMetrics().getFailedSearchCount());
+    }
+
+    // Keystrokes 10ms apart, well within the window.
+    private void type(String... queries) {
+        for (String query : queries) {
+            mQueries.onNext(query);
+            mTime.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void search(String query) {
+        mQueries.onNext(query);
+        mTime.advanceTimeBy(WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(query, mSearched.get(mSearched.size() - 1));
+    }
+}
@@ -0,0 +1,84 @@
+package jorgecasariego.retrofit.sync;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jorgecasariego.retrofit.BuildConfig;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class RepoPrefetchJobServiceTest {
+
+    private static final String[] USERS = {"jorgecasariego", "square"};
+
+    private JobScheduler mJobScheduler;
+
+    @Before
+    public void setUp() {
+        mJobScheduler = (JobScheduler) RuntimeEnvironment.application.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    }
+
+    @Test
+    public void theJobWaitsForTheConstraints() {
+        assertTrue(RepoPrefetchJobService.schedule(RuntimeEnvironment.application, USERS,
+                RepoPrefetchJobService.Constraints.OVERNIGHT));
+
+        JobInfo job = onlyPendingJob();
+        assertEquals(RepoPrefetchJobService.JOB_ID, job.getId());
+        assertEquals(JobInfo.NETWORK_TYPE_UNMETERED, job.getNetworkType());
+        assertTrue(job.isRequireCharging());
+        assertTrue(job.isRequireDeviceIdle());
+        assertTrue(job.isPeriodic());
+        assertEquals(RepoPrefetchJobService.Constraints.DEFAULT_PERIOD_MILLIS, job.getIntervalMillis());
+        assertTrue(job.isPersisted());
+        assertArrayEquals(USERS, job.getExtras().getStringArray(RepoPrefetchJobService.EXTRA_USERS));
+    }
+
+    @Test
+    public void everyConstraintCanBeDropped() {
+        RepoPrefetchJobService.schedule(RuntimeEnvironment.application, USERS,
+                new RepoPrefetchJobService.Constraints(false, false, false, TimeUnit.HOURS.toMillis(1)));
+
+        JobInfo job = onlyPendingJob();
+        assertEquals(JobInfo.NETWORK_TYPE_ANY, job.getNetworkType());
+        assertFalse(job.isRequireCharging());
+        assertFalse(job.isRequireDeviceIdle());
+        assertEquals(TimeUnit.HOURS.toMillis(1), job.getIntervalMillis());
+    }
+
+    @Test
+    public void schedulingTheSameJobAgainKeepsThePendingOne() {
+        RepoPrefetchJobService.schedule(RuntimeEnvironment.application, USERS,
+                RepoPrefetchJobService.Constraints.OVERNIGHT);
+        JobInfo first = onlyPendingJob();
+
+        RepoPrefetchJobService.schedule(RuntimeEnvironment.application, USERS,
+                RepoPrefetchJobService.Constraints.OVERNIGHT);
+        assertSame(first, onlyPendingJob());
+
+        // Other users: replaced.
+        RepoPrefetchJobService.schedule(RuntimeEnvironment.application, new String[]{"square"},
+                RepoPrefetchJobService.Constraints.OVERNIGHT);
+        assertArrayEquals(new String[]{"square"},
+                onlyPendingJob().getExtras().getStringArray(RepoPrefetchJobService.EXTRA_USERS));
+    }
+
+    private JobInfo onlyPendingJob() {
+        List<JobInfo> pending = mJobScheduler.getAllPendingJobs();
+        assertEquals(1, pending.size());
+        return pending.get(0);
+    }
+}